@@ -0,0 +1,145 @@
+/* 
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.core.util.kernels;
+
+/**
+ * Dense linear algebra kernels over primitive arrays. Vectors are given as
+ * array-offset pairs and matrices are stored in row-major order with an
+ * explicit leading dimension (stride between consecutive rows).
+ * <p>
+ * Implementations are expected to be stateless and thread-safe. The
+ * implementation in use is obtained through {@link Kernels}.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public interface DenseKernels {
+
+    /**
+     * Inner product of two vectors.
+     *
+     * @param x first vector
+     * @param xOff offset of the first vector
+     * @param y second vector
+     * @param yOff offset of the second vector
+     * @param n length of the vectors
+     * @return inner product
+     */
+    double dot(double[] x, int xOff, double[] y, int yOff, int n);
+
+    /**
+     * Inner product of two vectors.
+     *
+     * @param x first vector
+     * @param xOff offset of the first vector
+     * @param y second vector
+     * @param yOff offset of the second vector
+     * @param n length of the vectors
+     * @return inner product
+     */
+    float dot(float[] x, int xOff, float[] y, int yOff, int n);
+
+    /**
+     * Updates y = a * x + y.
+     *
+     * @param a scalar
+     * @param x vector to be scaled
+     * @param xOff offset of x
+     * @param y vector to be updated
+     * @param yOff offset of y
+     * @param n length of the vectors
+     */
+    void axpy(double a, double[] x, int xOff, double[] y, int yOff, int n);
+
+    /**
+     * Updates y = a * x + y.
+     *
+     * @param a scalar
+     * @param x vector to be scaled
+     * @param xOff offset of x
+     * @param y vector to be updated
+     * @param yOff offset of y
+     * @param n length of the vectors
+     */
+    void axpy(float a, float[] x, int xOff, float[] y, int yOff, int n);
+
+    /**
+     * Matrix-vector product y = A * x.
+     *
+     * @param rows number of rows of A
+     * @param cols number of columns of A
+     * @param a row-major matrix A
+     * @param aOff offset of A
+     * @param lda leading dimension of A
+     * @param x vector
+     * @param xOff offset of x
+     * @param y output vector of length rows
+     * @param yOff offset of y
+     */
+    void gemv(int rows, int cols, double[] a, int aOff, int lda, double[] x, int xOff, double[] y, int yOff);
+
+    /**
+     * Matrix-vector product y = A * x.
+     *
+     * @param rows number of rows of A
+     * @param cols number of columns of A
+     * @param a row-major matrix A
+     * @param aOff offset of A
+     * @param lda leading dimension of A
+     * @param x vector
+     * @param xOff offset of x
+     * @param y output vector of length rows
+     * @param yOff offset of y
+     */
+    void gemv(int rows, int cols, float[] a, int aOff, int lda, float[] x, int xOff, float[] y, int yOff);
+
+    /**
+     * Matrix-matrix product C = A * B^T, where the rows of both A and B have
+     * length k. It computes the inner products of every row of A with every
+     * row of B.
+     *
+     * @param m number of rows of A
+     * @param n number of rows of B
+     * @param k number of columns of A and B
+     * @param a row-major matrix A
+     * @param aOff offset of A
+     * @param lda leading dimension of A
+     * @param b row-major matrix B
+     * @param bOff offset of B
+     * @param ldb leading dimension of B
+     * @param c output row-major matrix C of m rows and n columns
+     * @param cOff offset of C
+     * @param ldc leading dimension of C
+     */
+    void gemm(int m, int n, int k, double[] a, int aOff, int lda, double[] b, int bOff, int ldb, double[] c, int cOff, int ldc);
+
+    /**
+     * Inner product of a sparse vector and a dense vector.
+     *
+     * @param idxs indices of the non-zero values of the sparse vector
+     * @param vs non-zero values of the sparse vector
+     * @param off offset of idxs and vs
+     * @param n number of non-zero values
+     * @param y dense vector
+     * @param yOff offset of y
+     * @return inner product
+     */
+    double gatherDot(int[] idxs, double[] vs, int off, int n, double[] y, int yOff);
+
+    /**
+     * Inner product of a sparse vector and a dense vector.
+     *
+     * @param idxs indices of the non-zero values of the sparse vector
+     * @param vs non-zero values of the sparse vector
+     * @param off offset of idxs and vs
+     * @param n number of non-zero values
+     * @param y dense vector
+     * @param yOff offset of y
+     * @return inner product
+     */
+    float gatherDot(int[] idxs, float[] vs, int off, int n, float[] y, int yOff);
+}
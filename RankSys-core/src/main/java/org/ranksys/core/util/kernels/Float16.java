@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.core.util.kernels;
+
+/**
+ * Conversions between single precision floats and IEEE 754 half precision
+ * floats (binary16) stored in shorts, rounding to nearest even.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public final class Float16 {
+
+    private Float16() {
+    }
+
+    /**
+     * Converts a float to half precision.
+     *
+     * @param f float value
+     * @return bits of the half precision value
+     */
+    public static short fromFloat(float f) {
+        int bits = Float.floatToRawIntBits(f);
+        int sign = (bits >>> 16) & 0x8000;
+        int abs = bits & 0x7fffffff;
+
+        // infinity and NaN
+        if (abs >= 0x7f800000) {
+            return (short) (sign | 0x7c00 | (abs > 0x7f800000 ? 0x200 : 0));
+        }
+        // overflow: 65520 and above round to infinity
+        if (abs >= 0x477ff000) {
+            return (short) (sign | 0x7c00);
+        }
+        // subnormal half precision values, multiples of 2^-24
+        if (abs < 0x38800000) {
+            return (short) (sign | (int) Math.rint(Math.abs((double) f) * 0x1p24));
+        }
+
+        int h = (((abs >>> 23) - 112) << 10) | ((abs & 0x7fffff) >>> 13);
+        int rem = abs & 0x1fff;
+        if (rem > 0x1000 || (rem == 0x1000 && (h & 1) != 0)) {
+            h++;
+        }
+
+        return (short) (sign | h);
+    }
+
+    /**
+     * Converts a half precision value to float.
+     *
+     * @param h bits of the half precision value
+     * @return float value
+     */
+    public static float toFloat(short h) {
+        int bits = h & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exp = (bits >>> 10) & 0x1f;
+        int mant = bits & 0x3ff;
+
+        if (exp == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mant << 13));
+        }
+        if (exp == 0) {
+            float f = mant * 0x1p-24f;
+            return sign == 0 ? f : -f;
+        }
+
+        return Float.intBitsToFloat(sign | ((exp + 112) << 23) | (mant << 13));
+    }
+}
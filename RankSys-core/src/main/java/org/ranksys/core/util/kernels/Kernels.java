@@ -0,0 +1,194 @@
+/* 
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.core.util.kernels;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Access point to the dense kernels. The implementation is selected once, at
+ * class loading time: by default {@link ScalarDenseKernels}, unless the system
+ * property {@value #KERNELS_PROPERTY} names another implementation of
+ * {@link DenseKernels} (for instance, one based on the Vector API of newer
+ * JVMs) available in the classpath.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class Kernels {
+
+    private static final Logger LOG = Logger.getLogger(Kernels.class.getName());
+
+    /**
+     * System property with the class name of the kernels implementation.
+     */
+    public static final String KERNELS_PROPERTY = "ranksys.kernels";
+
+    private static final DenseKernels KERNELS = load();
+
+    private static DenseKernels load() {
+        String className = System.getProperty(KERNELS_PROPERTY);
+        if (className != null) {
+            try {
+                return (DenseKernels) Class.forName(className).newInstance();
+            } catch (ReflectiveOperationException | ClassCastException | LinkageError ex) {
+                LOG.log(Level.WARNING, "kernels " + className + " not available, using scalar kernels", ex);
+            }
+        }
+
+        return new ScalarDenseKernels();
+    }
+
+    /**
+     * Returns the kernels implementation in use.
+     *
+     * @return kernels implementation
+     */
+    public static DenseKernels get() {
+        return KERNELS;
+    }
+
+    /**
+     * See {@link DenseKernels#dot(double[], int, double[], int, int)}.
+     *
+     * @param x first vector
+     * @param xOff offset of the first vector
+     * @param y second vector
+     * @param yOff offset of the second vector
+     * @param n length of the vectors
+     * @return inner product
+     */
+    public static double dot(double[] x, int xOff, double[] y, int yOff, int n) {
+        return KERNELS.dot(x, xOff, y, yOff, n);
+    }
+
+    /**
+     * See {@link DenseKernels#dot(float[], int, float[], int, int)}.
+     *
+     * @param x first vector
+     * @param xOff offset of the first vector
+     * @param y second vector
+     * @param yOff offset of the second vector
+     * @param n length of the vectors
+     * @return inner product
+     */
+    public static float dot(float[] x, int xOff, float[] y, int yOff, int n) {
+        return KERNELS.dot(x, xOff, y, yOff, n);
+    }
+
+    /**
+     * See {@link DenseKernels#axpy(double, double[], int, double[], int, int)}.
+     *
+     * @param a scalar
+     * @param x vector to be scaled
+     * @param xOff offset of x
+     * @param y vector to be updated
+     * @param yOff offset of y
+     * @param n length of the vectors
+     */
+    public static void axpy(double a, double[] x, int xOff, double[] y, int yOff, int n) {
+        KERNELS.axpy(a, x, xOff, y, yOff, n);
+    }
+
+    /**
+     * See {@link DenseKernels#axpy(float, float[], int, float[], int, int)}.
+     *
+     * @param a scalar
+     * @param x vector to be scaled
+     * @param xOff offset of x
+     * @param y vector to be updated
+     * @param yOff offset of y
+     * @param n length of the vectors
+     */
+    public static void axpy(float a, float[] x, int xOff, float[] y, int yOff, int n) {
+        KERNELS.axpy(a, x, xOff, y, yOff, n);
+    }
+
+    /**
+     * See {@link DenseKernels#gemv(int, int, double[], int, int, double[], int, double[], int)}.
+     *
+     * @param rows number of rows of A
+     * @param cols number of columns of A
+     * @param a row-major matrix A
+     * @param aOff offset of A
+     * @param lda leading dimension of A
+     * @param x vector
+     * @param xOff offset of x
+     * @param y output vector of length rows
+     * @param yOff offset of y
+     */
+    public static void gemv(int rows, int cols, double[] a, int aOff, int lda, double[] x, int xOff, double[] y, int yOff) {
+        KERNELS.gemv(rows, cols, a, aOff, lda, x, xOff, y, yOff);
+    }
+
+    /**
+     * See {@link DenseKernels#gemv(int, int, float[], int, int, float[], int, float[], int)}.
+     *
+     * @param rows number of rows of A
+     * @param cols number of columns of A
+     * @param a row-major matrix A
+     * @param aOff offset of A
+     * @param lda leading dimension of A
+     * @param x vector
+     * @param xOff offset of x
+     * @param y output vector of length rows
+     * @param yOff offset of y
+     */
+    public static void gemv(int rows, int cols, float[] a, int aOff, int lda, float[] x, int xOff, float[] y, int yOff) {
+        KERNELS.gemv(rows, cols, a, aOff, lda, x, xOff, y, yOff);
+    }
+
+    /**
+     * See {@link DenseKernels#gemm(int, int, int, double[], int, int, double[], int, int, double[], int, int)}.
+     *
+     * @param m number of rows of A
+     * @param n number of rows of B
+     * @param k number of columns of A and B
+     * @param a row-major matrix A
+     * @param aOff offset of A
+     * @param lda leading dimension of A
+     * @param b row-major matrix B
+     * @param bOff offset of B
+     * @param ldb leading dimension of B
+     * @param c output row-major matrix C of m rows and n columns
+     * @param cOff offset of C
+     * @param ldc leading dimension of C
+     */
+    public static void gemm(int m, int n, int k, double[] a, int aOff, int lda, double[] b, int bOff, int ldb, double[] c, int cOff, int ldc) {
+        KERNELS.gemm(m, n, k, a, aOff, lda, b, bOff, ldb, c, cOff, ldc);
+    }
+
+    /**
+     * See {@link DenseKernels#gatherDot(int[], double[], int, int, double[], int)}.
+     *
+     * @param idxs indices of the non-zero values of the sparse vector
+     * @param vs non-zero values of the sparse vector
+     * @param off offset of idxs and vs
+     * @param n number of non-zero values
+     * @param y dense vector
+     * @param yOff offset of y
+     * @return inner product
+     */
+    public static double gatherDot(int[] idxs, double[] vs, int off, int n, double[] y, int yOff) {
+        return KERNELS.gatherDot(idxs, vs, off, n, y, yOff);
+    }
+
+    /**
+     * See {@link DenseKernels#gatherDot(int[], float[], int, int, float[], int)}.
+     *
+     * @param idxs indices of the non-zero values of the sparse vector
+     * @param vs non-zero values of the sparse vector
+     * @param off offset of idxs and vs
+     * @param n number of non-zero values
+     * @param y dense vector
+     * @param yOff offset of y
+     * @return inner product
+     */
+    public static float gatherDot(int[] idxs, float[] vs, int off, int n, float[] y, int yOff) {
+        return KERNELS.gatherDot(idxs, vs, off, n, y, yOff);
+    }
+}
@@ -0,0 +1,164 @@
+/* 
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.core.util.kernels;
+
+/**
+ * Scalar implementation of the dense kernels. Reductions are unrolled with
+ * independent accumulators and element-wise loops are kept simple, so that
+ * the JIT compiler can pipeline and auto-vectorise them.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class ScalarDenseKernels implements DenseKernels {
+
+    private static final int GEMM_BLOCK_ROWS = 64;
+
+    @Override
+    public double dot(double[] x, int xOff, double[] y, int yOff, int n) {
+        double s0 = 0.0;
+        double s1 = 0.0;
+        double s2 = 0.0;
+        double s3 = 0.0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            s0 += x[xOff + i] * y[yOff + i];
+            s1 += x[xOff + i + 1] * y[yOff + i + 1];
+            s2 += x[xOff + i + 2] * y[yOff + i + 2];
+            s3 += x[xOff + i + 3] * y[yOff + i + 3];
+        }
+        for (; i < n; i++) {
+            s0 += x[xOff + i] * y[yOff + i];
+        }
+
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float dot(float[] x, int xOff, float[] y, int yOff, int n) {
+        float s0 = 0.0f;
+        float s1 = 0.0f;
+        float s2 = 0.0f;
+        float s3 = 0.0f;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            s0 += x[xOff + i] * y[yOff + i];
+            s1 += x[xOff + i + 1] * y[yOff + i + 1];
+            s2 += x[xOff + i + 2] * y[yOff + i + 2];
+            s3 += x[xOff + i + 3] * y[yOff + i + 3];
+        }
+        for (; i < n; i++) {
+            s0 += x[xOff + i] * y[yOff + i];
+        }
+
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public void axpy(double a, double[] x, int xOff, double[] y, int yOff, int n) {
+        for (int i = 0; i < n; i++) {
+            y[yOff + i] += a * x[xOff + i];
+        }
+    }
+
+    @Override
+    public void axpy(float a, float[] x, int xOff, float[] y, int yOff, int n) {
+        for (int i = 0; i < n; i++) {
+            y[yOff + i] += a * x[xOff + i];
+        }
+    }
+
+    @Override
+    public void gemv(int rows, int cols, double[] a, int aOff, int lda, double[] x, int xOff, double[] y, int yOff) {
+        for (int r = 0; r < rows; r++) {
+            y[yOff + r] = dot(a, aOff + r * lda, x, xOff, cols);
+        }
+    }
+
+    @Override
+    public void gemv(int rows, int cols, float[] a, int aOff, int lda, float[] x, int xOff, float[] y, int yOff) {
+        for (int r = 0; r < rows; r++) {
+            y[yOff + r] = dot(a, aOff + r * lda, x, xOff, cols);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The rows of B are processed in blocks that fit in cache, and each row
+     * of a block is multiplied with four rows of A at a time.
+     */
+    @Override
+    public void gemm(int m, int n, int k, double[] a, int aOff, int lda, double[] b, int bOff, int ldb, double[] c, int cOff, int ldc) {
+        for (int j0 = 0; j0 < n; j0 += GEMM_BLOCK_ROWS) {
+            int j1 = Math.min(n, j0 + GEMM_BLOCK_ROWS);
+            int i = 0;
+            for (; i + 3 < m; i += 4) {
+                int a0 = aOff + i * lda;
+                int a1 = a0 + lda;
+                int a2 = a1 + lda;
+                int a3 = a2 + lda;
+                int c0 = cOff + i * ldc;
+                for (int j = j0; j < j1; j++) {
+                    int bj = bOff + j * ldb;
+                    double s0 = 0.0;
+                    double s1 = 0.0;
+                    double s2 = 0.0;
+                    double s3 = 0.0;
+                    for (int l = 0; l < k; l++) {
+                        double bl = b[bj + l];
+                        s0 += a[a0 + l] * bl;
+                        s1 += a[a1 + l] * bl;
+                        s2 += a[a2 + l] * bl;
+                        s3 += a[a3 + l] * bl;
+                    }
+                    c[c0 + j] = s0;
+                    c[c0 + ldc + j] = s1;
+                    c[c0 + 2 * ldc + j] = s2;
+                    c[c0 + 3 * ldc + j] = s3;
+                }
+            }
+            for (; i < m; i++) {
+                for (int j = j0; j < j1; j++) {
+                    c[cOff + i * ldc + j] = dot(a, aOff + i * lda, b, bOff + j * ldb, k);
+                }
+            }
+        }
+    }
+
+    @Override
+    public double gatherDot(int[] idxs, double[] vs, int off, int n, double[] y, int yOff) {
+        double s0 = 0.0;
+        double s1 = 0.0;
+        int i = 0;
+        for (; i + 1 < n; i += 2) {
+            s0 += vs[off + i] * y[yOff + idxs[off + i]];
+            s1 += vs[off + i + 1] * y[yOff + idxs[off + i + 1]];
+        }
+        for (; i < n; i++) {
+            s0 += vs[off + i] * y[yOff + idxs[off + i]];
+        }
+
+        return s0 + s1;
+    }
+
+    @Override
+    public float gatherDot(int[] idxs, float[] vs, int off, int n, float[] y, int yOff) {
+        float s0 = 0.0f;
+        float s1 = 0.0f;
+        int i = 0;
+        for (; i + 1 < n; i += 2) {
+            s0 += vs[off + i] * y[yOff + idxs[off + i]];
+            s1 += vs[off + i + 1] * y[yOff + idxs[off + i + 1]];
+        }
+        for (; i < n; i++) {
+            s0 += vs[off + i] * y[yOff + idxs[off + i]];
+        }
+
+        return s0 + s1;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.core.util.kernels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test for Float16.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class Float16Test {
+
+    private static void assertHalf(int expected, float f) {
+        assertEquals(Integer.toHexString(expected), Integer.toHexString(Float16.fromFloat(f) & 0xffff));
+    }
+
+    /**
+     * Tests the conversion of normal values, with rounding to nearest even.
+     */
+    @Test
+    public void testNormal() {
+        assertHalf(0x3c00, 1.0f);
+        assertHalf(0xc000, -2.0f);
+        assertHalf(0x3555, 1.0f / 3);
+        assertHalf(0x0400, 0x1p-14f);
+        assertHalf(0x7bff, 65504.0f);
+
+        // halfway between 1 and 1 + 2^-10 rounds down to the even mantissa, and up from 1 + 2^-10
+        assertHalf(0x3c00, 1.0f + 0x1p-11f);
+        assertHalf(0x3c02, 1.0f + 3 * 0x1p-11f);
+        assertHalf(0x3c01, 1.0f + 0x1p-11f + 0x1p-20f);
+    }
+
+    /**
+     * Tests the conversion of subnormal half precision values and of the
+     * values that underflow to zero.
+     */
+    @Test
+    public void testSubnormal() {
+        assertHalf(0x0001, 0x1p-24f);
+        assertHalf(0x8001, -0x1p-24f);
+        assertHalf(0x03ff, 1023 * 0x1p-24f);
+        assertHalf(0x0002, 1.5f * 0x1p-24f);
+        assertHalf(0x0000, 0x1p-25f);
+        assertHalf(0x0001, 0x1p-25f + 0x1p-30f);
+        assertHalf(0x0000, 0x1p-30f);
+        assertHalf(0x8000, -0.0f);
+
+        assertEquals(0x1p-24f, Float16.toFloat((short) 0x0001), 0.0f);
+        assertEquals(-1023 * 0x1p-24f, Float16.toFloat((short) 0x83ff), 0.0f);
+        assertEquals(Float.floatToIntBits(-0.0f), Float.floatToIntBits(Float16.toFloat((short) 0x8000)));
+    }
+
+    /**
+     * Tests the overflow to infinity from 65520 upwards, and the conversion
+     * of infinities and NaN.
+     */
+    @Test
+    public void testOverflow() {
+        assertHalf(0x7bff, 65519.0f);
+        assertHalf(0x7c00, 65520.0f);
+        assertHalf(0xfc00, -65520.0f);
+        assertHalf(0x7c00, 1e10f);
+        assertHalf(0x7c00, Float.POSITIVE_INFINITY);
+        assertHalf(0xfc00, Float.NEGATIVE_INFINITY);
+
+        short nan = Float16.fromFloat(Float.NaN);
+        assertEquals(0x7c00, nan & 0x7c00);
+        assertTrue((nan & 0x3ff) != 0);
+        assertTrue(Float.isNaN(Float16.toFloat(nan)));
+        assertEquals(Float.POSITIVE_INFINITY, Float16.toFloat((short) 0x7c00), 0.0f);
+        assertEquals(Float.NEGATIVE_INFINITY, Float16.toFloat((short) 0xfc00), 0.0f);
+    }
+
+    /**
+     * Tests that every half precision value but NaN survives the round trip
+     * through float.
+     */
+    @Test
+    public void testRoundTrip() {
+        for (int h = 0; h < 0x10000; h++) {
+            float f = Float16.toFloat((short) h);
+            if (Float.isNaN(f)) {
+                continue;
+            }
+            assertEquals(h, Float16.fromFloat(f) & 0xffff);
+        }
+    }
+}
@@ -8,13 +8,12 @@
 package org.ranksys.diversity.intentaware;
 
 import cern.colt.matrix.DoubleMatrix1D;
-import cern.colt.matrix.DoubleMatrix2D;
-import cern.jet.math.Functions;
 import es.uam.eps.ir.ranksys.diversity.intentaware.AspectModel;
 import es.uam.eps.ir.ranksys.diversity.intentaware.IntentModel;
 import es.uam.eps.ir.ranksys.fast.feature.FastFeatureData;
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
 import org.ranksys.core.util.tuples.Tuple2od;
+import org.ranksys.mf.FlatDoubleMatrix2D;
 import org.ranksys.mf.plsa.CPLSAFactorizer;
 
 import java.util.HashSet;
@@ -76,12 +75,20 @@ public class CPLSAIAFactorizationModelFactory<U, I, F> extends IAFactorizationMo
          * @param pu_z normalized matrix of p(z|u)
          */
         @Override
-        protected void normalizePuz(DoubleMatrix2D pu_z) {
+        protected void normalizePuz(FlatDoubleMatrix2D pu_z) {
+            final int K = pu_z.columns();
+            final double[] pu_za = pu_z.elements();
+
             for (int u = 0; u < pu_z.rows(); u++) {
-                DoubleMatrix1D tmp = pu_z.viewRow(u);
-                double norm = tmp.aggregate(Functions.plus, Functions.identity);
+                int pu = pu_z.offset(u);
+                double norm = 0.0;
+                for (int z = 0; z < K; z++) {
+                    norm += pu_za[pu + z];
+                }
                 if (norm != 0.0) {
-                    tmp.assign(Functions.mult(1 / norm));
+                    for (int z = 0; z < K; z++) {
+                        pu_za[pu + z] /= norm;
+                    }
                 }
             }
         }
@@ -92,12 +99,23 @@ public class CPLSAIAFactorizationModelFactory<U, I, F> extends IAFactorizationMo
          * @param piz normalized matrix of p(i|z)
          */
         @Override
-        protected void normalizePiz(DoubleMatrix2D piz) {
-            for (int i = 0; i < piz.columns(); i++) {
-                DoubleMatrix1D tmp = piz.viewColumn(i);
-                double norm = tmp.aggregate(Functions.plus, Functions.identity);
-                if (norm != 0.0) {
-                    tmp.assign(Functions.mult(1 / norm));
+        protected void normalizePiz(FlatDoubleMatrix2D piz) {
+            final int K = piz.columns();
+            final double[] piza = piz.elements();
+
+            double[] norms = new double[K];
+            for (int i = 0; i < piz.rows(); i++) {
+                int pi = piz.offset(i);
+                for (int z = 0; z < K; z++) {
+                    norms[z] += piza[pi + z];
+                }
+            }
+            for (int i = 0; i < piz.rows(); i++) {
+                int pi = piz.offset(i);
+                for (int z = 0; z < K; z++) {
+                    if (norms[z] != 0.0) {
+                        piza[pi + z] /= norms[z];
+                    }
                 }
             }
         }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.examples;
+
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.mf.Factorization;
+import es.uam.eps.ir.ranksys.mf.rec.MFRecommender;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.ranksys.core.util.tuples.Tuple2id;
+import org.ranksys.mf.FlatDoubleMatrix2D;
+import org.ranksys.mf.QuantizedMatrix;
+
+/**
+ * Benchmark of the quantized scoring of MFRecommender: recall@k of the
+ * recommendations with respect to exact scoring, and time per user, for
+ * each precision and oversampling ratio.
+ * <br>
+ * The factorization is synthetic: gaussian factors, with log-normal item
+ * norms to mimic the skew of trained item vectors. Arguments (all optional):
+ * number of items, number of factors, number of users, cutoff k and seed.
+ * The defaults (50000, 64, 300, 10, 1) are the setting in which quantized
+ * scoring was evaluated.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class QuantizedMFExample {
+
+    public static void main(String[] args) {
+        int numItems = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int K = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int numUsers = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+        int k = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1L;
+
+        // SYNTHETIC FACTORIZATION
+        Random random = new Random(seed);
+        FastUserIndex<Integer> users = SimpleFastUserIndex.load(IntStream.range(0, numUsers).boxed());
+        FastItemIndex<Integer> items = SimpleFastItemIndex.load(IntStream.range(0, numItems).boxed());
+        Factorization<Integer, Integer> factorization = new Factorization<>(users, items, K, x -> random.nextGaussian());
+        FlatDoubleMatrix2D q = factorization.getItemMatrix();
+        for (int iidx = 0; iidx < numItems; iidx++) {
+            double norm = Math.exp(0.3 * random.nextGaussian());
+            for (int z = 0; z < K; z++) {
+                q.elements()[q.offset(iidx) + z] *= norm;
+            }
+        }
+        factorization.markModified();
+
+        // EXACT RECOMMENDATIONS
+        MFRecommender<Integer, Integer> exact = new MFRecommender<>(users, items, factorization);
+        IntSet[] truth = new IntSet[numUsers];
+        long time0 = System.nanoTime();
+        for (int uidx = 0; uidx < numUsers; uidx++) {
+            truth[uidx] = new IntOpenHashSet();
+            for (Tuple2id iv : exact.getRecommendation(uidx, k, iidx -> true).getIidxs()) {
+                truth[uidx].add(iv.v1);
+            }
+        }
+        System.out.println(String.format("exact\t%.2f ms/user", (System.nanoTime() - time0) / 1e6 / numUsers));
+
+        // QUANTIZED RECOMMENDATIONS
+        for (QuantizedMatrix.Precision precision : QuantizedMatrix.Precision.values()) {
+            for (double oversampling : new double[]{1.0, 2.0, 4.0}) {
+                MFRecommender<Integer, Integer> quantized = new MFRecommender<>(users, items, factorization, precision, oversampling);
+
+                // warm-up
+                for (int uidx = 0; uidx < Math.min(30, numUsers); uidx++) {
+                    quantized.getRecommendation(uidx, k, iidx -> true);
+                }
+
+                int hits = 0;
+                long time1 = System.nanoTime();
+                for (int uidx = 0; uidx < numUsers; uidx++) {
+                    for (Tuple2id iv : quantized.getRecommendation(uidx, k, iidx -> true).getIidxs()) {
+                        if (truth[uidx].contains(iv.v1)) {
+                            hits++;
+                        }
+                    }
+                }
+                long time2 = System.nanoTime() - time1;
+
+                System.out.println(String.format("%s\tos=%.0f\trecall@%d=%.4f\t%.2f ms/user", precision, oversampling, k, hits / (double) (numUsers * k), time2 / 1e6 / numUsers));
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ public class FastRecommendation {
 
     private final int uidx;
     private final List<Tuple2id> iidxs;
+    private final boolean partial;
 
     /**
      * Constructor.
@@ -28,8 +29,21 @@ public class FastRecommendation {
      * @param iidxs list of item-score pairs identified by index.
      */
     public FastRecommendation(int uidx, List<Tuple2id> iidxs) {
+        this(uidx, iidxs, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param uidx index of the user
+     * @param iidxs list of item-score pairs identified by index.
+     * @param partial whether the recommendation was issued before all items
+     * were scored
+     */
+    public FastRecommendation(int uidx, List<Tuple2id> iidxs, boolean partial) {
         this.uidx = uidx;
         this.iidxs = iidxs;
+        this.partial = partial;
     }
 
     /**
@@ -49,4 +63,15 @@ public class FastRecommendation {
     public List<Tuple2id> getIidxs() {
         return iidxs;
     }
+
+    /**
+     * Returns whether the recommendation was issued before all items were
+     * scored, for instance because the time budget of the recommender was
+     * exhausted.
+     *
+     * @return true if the recommendation is partial, false otherwise
+     */
+    public boolean isPartial() {
+        return partial;
+    }
 }
@@ -14,6 +14,7 @@ import static org.ranksys.core.util.tuples.Tuples.tuple;
 
 /**
  * Bounded min-heap to keep just the top-n greatest integer-double pairs according to the value of the double.
+ * Pairs are stored in primitive arrays and can be added without boxing.
  *
  * @author Saúl Vargas (saul.vargas@uam.es)
  */
@@ -41,7 +42,73 @@ public class IntDoubleTopN extends AbstractTopN<Tuple2id> {
      * @return true if the pair was added to the heap, false otherwise
      */
     public boolean add(int key, double value) {
-        return add(tuple(key, value));
+        if (size < capacity) {
+            int i = size;
+            keys[i] = key;
+            values[i] = value;
+            int j = (i - 1) / 2;
+            while (i > 0 && compare(j, i) > 0) {
+                swap(i, j);
+                i = j;
+                j = (i - 1) / 2;
+            }
+            size++;
+
+            return true;
+        } else {
+            int c = Double.compare(values[0], value);
+            if (c > 0 || (c == 0 && keys[0] >= key)) {
+                return false;
+            }
+            keys[0] = key;
+            values[0] = value;
+            int i = 0;
+            int j = minChild(i);
+            while (j != -1 && compare(i, j) > 0) {
+                swap(i, j);
+                i = j;
+                j = minChild(i);
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Returns the integer of the i-th pair in the heap, in ascending order
+     * after sorting.
+     *
+     * @param i index of the pair
+     * @return integer of the pair
+     */
+    public int getKey(int i) {
+        return keys[i];
+    }
+
+    /**
+     * Returns the double of the i-th pair in the heap, in ascending order
+     * after sorting.
+     *
+     * @param i index of the pair
+     * @return double of the pair
+     */
+    public double getValue(int i) {
+        return values[i];
+    }
+
+    private int minChild(int i) {
+        int l = 2 * i + 1;
+        int r = l + 1;
+
+        if (l >= capacity) {
+            return -1;
+        }
+
+        if (r >= size) {
+            return l;
+        }
+
+        return compare(l, r) < 0 ? l : r;
     }
 
     @Override
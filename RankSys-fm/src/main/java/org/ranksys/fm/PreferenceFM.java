@@ -16,8 +16,17 @@ import java.util.stream.Stream;
 import org.ranksys.javafm.FM;
 import org.ranksys.javafm.FMInstance;
 
+import static org.ranksys.core.util.kernels.Kernels.dot;
+import static org.ranksys.core.util.kernels.Kernels.gemv;
+
 /**
  * Wraps a factorisation machine to work with RankSys user-preference pairs.
+ * <p>
+ * For the two features of a user-item pair, the prediction of the machine
+ * reduces to b + w_u + w_i + &lt;m_u, m_i&gt;. Users and items are therefore also
+ * kept as vectors of K + 2 dimensions, [m_u, 1, b + w_u] and [m_i, w_i, 1],
+ * whose inner product is the prediction, so that they can be scored as in a
+ * matrix factorisation without building FM instances.
  *
  * @author Saúl Vargas (Saul@VargasSandoval.es)
  * @param <U> type of users
@@ -31,6 +40,9 @@ public class PreferenceFM<U, I> implements FastUserIndex<U>, FastItemIndex<I> {
     private final FastItemIndex<I> ii;
     private final FM fm;
     private final Function<IdPref<I>, IdxPref> uPrefFun;
+    private int dim;
+    private double[] userVectors;
+    private double[] itemVectors;
 
     /**
      * Constructor with default converter to IdxPref.
@@ -56,6 +68,102 @@ public class PreferenceFM<U, I> implements FastUserIndex<U>, FastItemIndex<I> {
         this.ii = items;
         this.fm = fm;
         this.uPrefFun = uPrefFun;
+        update();
+    }
+
+    /**
+     * Recomputes the user and item vectors from the parameters of the
+     * enclosed factorisation machine. It has to be called whenever the
+     * machine is modified outside of a {@link org.ranksys.fm.learner.PreferenceFMLearner}.
+     */
+    public final void update() {
+        int nu = numUsers();
+        int ni = numItems();
+        double b = fm.getB();
+        double[] w = fm.getW();
+        double[][] m = fm.getM();
+        int K = m.length == 0 ? 0 : m[0].length;
+
+        int d = K + 2;
+        double[] uv = new double[nu * d];
+        for (int uidx = 0; uidx < nu; uidx++) {
+            System.arraycopy(m[uidx], 0, uv, uidx * d, K);
+            uv[uidx * d + K] = 1.0;
+            uv[uidx * d + K + 1] = b + w[uidx];
+        }
+        double[] iv = new double[ni * d];
+        for (int iidx = 0; iidx < ni; iidx++) {
+            System.arraycopy(m[nu + iidx], 0, iv, iidx * d, K);
+            iv[iidx * d + K] = w[nu + iidx];
+            iv[iidx * d + K + 1] = 1.0;
+        }
+
+        this.dim = d;
+        this.userVectors = uv;
+        this.itemVectors = iv;
+    }
+
+    /**
+     * Returns the dimension of the user and item vectors, K + 2.
+     *
+     * @return dimension of the user and item vectors
+     */
+    public int getVectorDimension() {
+        return dim;
+    }
+
+    /**
+     * Returns the user vectors, stored consecutively in a row-major array.
+     *
+     * @return user vectors
+     */
+    public double[] getUserVectors() {
+        return userVectors;
+    }
+
+    /**
+     * Returns the item vectors, stored consecutively in a row-major array.
+     *
+     * @return item vectors
+     */
+    public double[] getItemVectors() {
+        return itemVectors;
+    }
+
+    /**
+     * Predicts the preference of a user for an item by the inner product of
+     * their vectors.
+     *
+     * @param uidx user
+     * @param iidx item
+     * @return predicted score
+     */
+    public double score(int uidx, int iidx) {
+        return dot(userVectors, uidx * dim, itemVectors, iidx * dim, dim);
+    }
+
+    /**
+     * Predicts the preferences of a user for all items.
+     *
+     * @param uidx user
+     * @param scores output array of the scores, indexed by item
+     */
+    public void scores(int uidx, double[] scores) {
+        gemv(numItems(), dim, itemVectors, 0, dim, userVectors, uidx * dim, scores, 0);
+    }
+
+    /**
+     * Predicts the preferences of a user for some items.
+     *
+     * @param uidx user
+     * @param iidxs items
+     * @param scores output array of the scores, in the order of iidxs
+     */
+    public void scores(int uidx, int[] iidxs, double[] scores) {
+        int uOff = uidx * dim;
+        for (int j = 0; j < iidxs.length; j++) {
+            scores[j] = dot(userVectors, uOff, itemVectors, iidxs[j] * dim, dim);
+        }
     }
 
     /**
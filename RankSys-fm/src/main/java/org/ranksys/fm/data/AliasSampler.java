@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.fm.data;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples indices in proportion to fixed non-negative weights in constant
+ * time by the alias method, after a linear time construction.
+ *
+ * M. D. Vose. A Linear Algorithm for Generating Random Numbers with a Given
+ * Distribution. IEEE Transactions on Software Engineering, 1991.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class AliasSampler {
+
+    private final double[] prob;
+    private final int[] alias;
+
+    /**
+     * Constructor.
+     *
+     * @param weights non-negative weights of the indices, not all zero
+     */
+    public AliasSampler(double[] weights) {
+        int n = weights.length;
+        double sum = 0.0;
+        for (double w : weights) {
+            sum += w;
+        }
+        if (n == 0 || !(sum > 0.0)) {
+            throw new IllegalArgumentException("weights must have a positive sum");
+        }
+
+        this.prob = new double[n];
+        this.alias = new int[n];
+
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int ns = 0;
+        int nl = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / sum;
+            if (scaled[i] < 1.0) {
+                small[ns++] = i;
+            } else {
+                large[nl++] = i;
+            }
+        }
+
+        while (ns > 0 && nl > 0) {
+            int s = small[--ns];
+            int l = large[--nl];
+            prob[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+            if (scaled[l] < 1.0) {
+                small[ns++] = l;
+            } else {
+                large[nl++] = l;
+            }
+        }
+        while (nl > 0) {
+            prob[large[--nl]] = 1.0;
+        }
+        // only reached by rounding errors
+        while (ns > 0) {
+            prob[small[--ns]] = 1.0;
+        }
+    }
+
+    /**
+     * Returns the number of indices.
+     *
+     * @return number of indices
+     */
+    public int size() {
+        return prob.length;
+    }
+
+    /**
+     * Samples an index.
+     *
+     * @param rnd random number generator
+     * @return sampled index
+     */
+    public int sample(SplittableRandom rnd) {
+        int i = rnd.nextInt(prob.length);
+        return rnd.nextDouble() < prob[i] ? i : alias[i];
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.fm.data;
+
+import org.ranksys.javafm.FM;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples items for which a user has no preference, the negative items of
+ * pairwise losses such as BPR. Samplers are called concurrently by the
+ * training threads, each with its own random number generator.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+@FunctionalInterface
+public interface NegativeSampler {
+
+    /**
+     * Samples a negative item for a user.
+     *
+     * @param fm factorisation machine being trained, whose features are the
+     * users followed by the items
+     * @param uidx index of the user
+     * @param rnd random number generator of the calling thread
+     * @return index of the item, or -1 if there is no negative item for the
+     * user
+     */
+    int sample(FM fm, int uidx, SplittableRandom rnd);
+}
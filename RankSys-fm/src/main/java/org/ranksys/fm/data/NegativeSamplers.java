@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.fm.data;
+
+import java.util.function.Function;
+
+import static java.lang.Math.pow;
+import static org.ranksys.core.util.kernels.Kernels.dot;
+
+/**
+ * Negative samplers. Each one is given as a function of the sampler of the
+ * training preferences, so that learners can build them when the training
+ * data is known.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class NegativeSamplers {
+
+    private static final int MAX_REJECTIONS = 64;
+
+    /**
+     * Samples uniformly among the items with preferences.
+     *
+     * @return uniform negative sampler
+     */
+    public static Function<PreferenceSampler, NegativeSampler> uniform() {
+        return prefs -> (fm, uidx, rnd) -> prefs.sampleNegative(uidx, rnd);
+    }
+
+    /**
+     * Samples items in proportion to their number of preferences raised to
+     * an exponent. Popular items are harder negatives than uniformly sampled
+     * ones when popularity is skewed. Falls back to uniform sampling for
+     * users with a preference for most of the popular items.
+     *
+     * @param exponent exponent of the popularity, 1 for proportional and 0
+     * for uniform sampling
+     * @return popularity-based negative sampler
+     * @throws IllegalArgumentException if the exponent is not finite
+     */
+    public static Function<PreferenceSampler, NegativeSampler> popularity(double exponent) {
+        if (!Double.isFinite(exponent)) {
+            throw new IllegalArgumentException("exponent must be finite");
+        }
+
+        return prefs -> {
+            int[] counts = new int[prefs.numItems()];
+            for (int p = 0; p < prefs.numPreferences(); p++) {
+                counts[prefs.iidx(p)]++;
+            }
+            double[] weights = new double[counts.length];
+            for (int iidx = 0; iidx < counts.length; iidx++) {
+                weights[iidx] = counts[iidx] == 0 ? 0.0 : pow(counts[iidx], exponent);
+            }
+            AliasSampler items = new AliasSampler(weights);
+
+            return (fm, uidx, rnd) -> {
+                if (!prefs.hasNegatives(uidx)) {
+                    return -1;
+                }
+                for (int r = 0; r < MAX_REJECTIONS; r++) {
+                    int jidx = items.sample(rnd);
+                    if (!prefs.isPositive(uidx, jidx)) {
+                        return jidx;
+                    }
+                }
+                return prefs.sampleNegative(uidx, rnd);
+            };
+        };
+    }
+
+    /**
+     * Rank-aware adaptive sampling: draws a number of candidates from
+     * another sampler and returns the one scored highest for the user by the
+     * current model, so that negatives get harder as the training progresses
+     * and fewer steps are wasted on pairs that are already well ranked.
+     *
+     * W. Zhang, T. Chen, J. Wang and Y. Yu. Optimizing Top-N Collaborative
+     * Filtering via Dynamic Negative Item Sampling. SIGIR 2013.
+     *
+     * @param base sampler of the candidates
+     * @param numCandidates number of candidates per sampled negative, at
+     * least 1
+     * @return adaptive negative sampler
+     * @throws IllegalArgumentException if numCandidates is less than 1
+     */
+    public static Function<PreferenceSampler, NegativeSampler> adaptive(Function<PreferenceSampler, NegativeSampler> base, int numCandidates) {
+        if (numCandidates < 1) {
+            throw new IllegalArgumentException("at least one candidate is needed");
+        }
+
+        return prefs -> {
+            NegativeSampler candidates = base.apply(prefs);
+            int nu = prefs.numUsers();
+
+            return (fm, uidx, rnd) -> {
+                double[] w = fm.getW();
+                double[][] m = fm.getM();
+                double[] mu = m[uidx];
+                int K = mu.length;
+
+                int best = -1;
+                double bestScore = Double.NEGATIVE_INFINITY;
+                for (int c = 0; c < numCandidates; c++) {
+                    int jidx = candidates.sample(fm, uidx, rnd);
+                    if (jidx < 0) {
+                        return -1;
+                    }
+                    double s = w[nu + jidx] + dot(mu, 0, m[nu + jidx], 0, K);
+                    if (s > bestScore) {
+                        best = jidx;
+                        bestScore = s;
+                    }
+                }
+
+                return best;
+            };
+        };
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.fm.data;
+
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Samples user-item preferences and negative items for the stochastic
+ * gradient descent of preference FMs. The preferences are copied into flat
+ * arrays, the items of every user sorted, so that sampling a (user, positive
+ * item, negative item) triple allocates nothing and testing whether an item
+ * is a positive one is a binary search. The sampler is immutable and can be
+ * shared by threads, each with its own random number generator.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class PreferenceSampler {
+
+    private final int numUsers;
+    private final int numItems;
+    private final int[] offsets;
+    private final int[] prefUidxs;
+    private final int[] prefIidxs;
+    private final int[] candidates;
+
+    /**
+     * Constructor. Negative items are sampled among the items with
+     * preferences.
+     *
+     * @param prefs preference data
+     */
+    public PreferenceSampler(FastPreferenceData<?, ?> prefs) {
+        this.numUsers = prefs.numUsers();
+        this.numItems = prefs.numItems();
+        this.offsets = new int[numUsers + 1];
+        this.prefUidxs = new int[prefs.numPreferences()];
+        this.prefIidxs = new int[prefs.numPreferences()];
+
+        int p = 0;
+        for (int uidx = 0; uidx < numUsers; uidx++) {
+            offsets[uidx] = p;
+            IntIterator iidxs = prefs.getUidxIidxs(uidx);
+            while (iidxs.hasNext()) {
+                prefUidxs[p] = uidx;
+                prefIidxs[p] = iidxs.nextInt();
+                p++;
+            }
+            Arrays.sort(prefIidxs, offsets[uidx], p);
+        }
+        offsets[numUsers] = p;
+
+        this.candidates = prefs.getIidxWithPreferences().toArray();
+    }
+
+    /**
+     * Returns the number of users of the preference data.
+     *
+     * @return number of users
+     */
+    public int numUsers() {
+        return numUsers;
+    }
+
+    /**
+     * Returns the number of items of the preference data.
+     *
+     * @return number of items
+     */
+    public int numItems() {
+        return numItems;
+    }
+
+    /**
+     * Returns the number of preferences.
+     *
+     * @return number of preferences
+     */
+    public int numPreferences() {
+        return prefIidxs.length;
+    }
+
+    /**
+     * Samples a preference uniformly, so that users are sampled in
+     * proportion to their number of preferences.
+     *
+     * @param rnd random number generator
+     * @return index of the preference
+     */
+    public int samplePreference(SplittableRandom rnd) {
+        return rnd.nextInt(prefIidxs.length);
+    }
+
+    /**
+     * Returns the user of a preference.
+     *
+     * @param p index of the preference
+     * @return index of the user
+     */
+    public int uidx(int p) {
+        return prefUidxs[p];
+    }
+
+    /**
+     * Returns the item of a preference.
+     *
+     * @param p index of the preference
+     * @return index of the item
+     */
+    public int iidx(int p) {
+        return prefIidxs[p];
+    }
+
+    /**
+     * Samples uniformly an item for which the user has no preference.
+     *
+     * @param uidx index of the user
+     * @param rnd random number generator
+     * @return index of the item, or -1 if the user has a preference for all
+     * the candidate items
+     */
+    public int sampleNegative(int uidx, SplittableRandom rnd) {
+        if (!hasNegatives(uidx)) {
+            return -1;
+        }
+
+        int jidx;
+        do {
+            jidx = candidates[rnd.nextInt(candidates.length)];
+        } while (isPositive(uidx, jidx));
+
+        return jidx;
+    }
+
+    /**
+     * Checks whether there are candidate items for which a user has no
+     * preference.
+     *
+     * @param uidx index of the user
+     * @return true if negative items can be sampled for the user
+     */
+    public boolean hasNegatives(int uidx) {
+        return offsets[uidx + 1] - offsets[uidx] < candidates.length;
+    }
+
+    /**
+     * Checks whether a user has a preference for an item.
+     *
+     * @param uidx index of the user
+     * @param iidx index of the item
+     * @return true if the user has a preference for the item
+     */
+    public boolean isPositive(int uidx, int iidx) {
+        return Arrays.binarySearch(prefIidxs, offsets[uidx], offsets[uidx + 1], iidx) >= 0;
+    }
+}
@@ -9,26 +9,32 @@ package org.ranksys.fm.learner;
 
 import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
 import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
-import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
-import org.ranksys.fm.data.BPRPreferenceFMData;
-import org.ranksys.javafm.data.FMData;
-import org.ranksys.javafm.learner.FMLearner;
-import org.ranksys.javafm.learner.gd.BPR;
+import org.ranksys.fm.data.NegativeSampler;
+import org.ranksys.fm.data.NegativeSamplers;
+import org.ranksys.fm.data.PreferenceSampler;
+import org.ranksys.javafm.FM;
+
+import java.util.SplittableRandom;
+import java.util.function.Function;
+
+import static java.lang.Math.exp;
+import static java.lang.Math.log1p;
 
 /**
- * Learner for PreferenceFMs using Bayesian Probabilistic Ranking.
+ * Learner for PreferenceFMs using Bayesian Probabilistic Ranking. Every
+ * instance is a preference of a user for an item and an item sampled among
+ * those without a preference of the user by a negative sampler.
  *
  * @author Saúl Vargas (Saul@VargasSandoval.es)
  */
-public class BPRLearner<U, I> extends PreferenceFMLearner<U, I> {
+public class BPRLearner<U, I> extends HogwildLearner<U, I> {
 
-    private final double learnRate;
-    private final int numIter;
     private final double[] regW;
     private final double[] regM;
+    private final Function<PreferenceSampler, NegativeSampler> negatives;
 
     /**
-     * Constructor.
+     * Constructor. Negative items are sampled uniformly.
      *
      * @param learnRate    learning rate (shrinkage)
      * @param numIter      number of iterations
@@ -38,21 +44,90 @@ public class BPRLearner<U, I> extends PreferenceFMLearner<U, I> {
      * @param items        item index
      */
     public BPRLearner(double learnRate, int numIter, double regW, double regM, FastUserIndex<U> users, FastItemIndex<I> items) {
-        super(users, items);
-        this.learnRate = learnRate;
-        this.numIter = numIter;
+        this(learnRate, numIter, regW, regM, NegativeSamplers.uniform(), users, items);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param learnRate    learning rate (shrinkage)
+     * @param numIter      number of iterations
+     * @param regW         regularisation parameter for the feature biase
+     * @param regM         regularisation parameter for factorisation
+     * @param negatives    negative sampler, see {@link NegativeSamplers}
+     * @param users        user index
+     * @param items        item index
+     */
+    public BPRLearner(double learnRate, int numIter, double regW, double regM, Function<PreferenceSampler, NegativeSampler> negatives, FastUserIndex<U> users, FastItemIndex<I> items) {
+        super(learnRate, numIter, users, items);
         this.regW = vectorise(regW);
         this.regM = vectorise(regM);
+        this.negatives = negatives;
     }
 
-    @Override
-    protected FMLearner<FMData> getLearner() {
-        return new BPR(learnRate, numIter, regW, regM);
+    /**
+     * Constructor with a seeded random number generator.
+     *
+     * @param learnRate    learning rate (shrinkage)
+     * @param numIter      number of iterations
+     * @param regW         regularisation parameter for the feature biase
+     * @param regM         regularisation parameter for factorisation
+     * @param negatives    negative sampler, see {@link NegativeSamplers}
+     * @param seed         seed of the random number generator
+     * @param users        user index
+     * @param items        item index
+     */
+    public BPRLearner(double learnRate, int numIter, double regW, double regM, Function<PreferenceSampler, NegativeSampler> negatives, long seed, FastUserIndex<U> users, FastItemIndex<I> items) {
+        super(learnRate, numIter, seed, users, items);
+        this.regW = vectorise(regW);
+        this.regM = vectorise(regM);
+        this.negatives = negatives;
     }
 
     @Override
-    protected FMData toFMData(FastPreferenceData<U, I> preferences) {
-        return new BPRPreferenceFMData(preferences);
+    protected Step step(PreferenceSampler sampler) {
+        NegativeSampler negatives = this.negatives.apply(sampler);
+
+        return (fm, rnd, update) -> step(fm, sampler, negatives, rnd, update);
+    }
+
+    private double step(FM fm, PreferenceSampler sampler, NegativeSampler negatives, SplittableRandom rnd, boolean update) {
+        int p = sampler.samplePreference(rnd);
+        int uidx = sampler.uidx(p);
+        int jidx = negatives.sample(fm, uidx, rnd);
+        if (jidx < 0) {
+            return 0.0;
+        }
+
+        int nu = sampler.numUsers();
+        int i = nu + sampler.iidx(p);
+        int j = nu + jidx;
+        double[] w = fm.getW();
+        double[] mu = fm.getM()[uidx];
+        double[] mi = fm.getM()[i];
+        double[] mj = fm.getM()[j];
+        int K = mu.length;
+
+        double x = w[i] - w[j];
+        for (int k = 0; k < K; k++) {
+            x += mu[k] * (mi[k] - mj[k]);
+        }
+
+        if (update) {
+            double g = 1.0 / (1.0 + exp(x));
+            w[i] += learnRate * (g - regW[i] * w[i]);
+            w[j] += learnRate * (-g - regW[j] * w[j]);
+            for (int k = 0; k < K; k++) {
+                double muk = mu[k];
+                double mik = mi[k];
+                double mjk = mj[k];
+                mu[k] += learnRate * (g * (mik - mjk) - regM[uidx] * muk);
+                mi[k] += learnRate * (g * muk - regM[i] * mik);
+                mj[k] += learnRate * (-g * muk - regM[j] * mjk);
+            }
+        }
+
+        return x < -30.0 ? -x : log1p(exp(-x));
     }
 
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.fm.learner;
+
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import org.ranksys.fm.data.PreferenceSampler;
+import org.ranksys.javafm.FM;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.Math.max;
+import static java.util.stream.IntStream.range;
+
+/**
+ * Parallel stochastic gradient descent learner for PreferenceFMs. Every
+ * thread samples instances with its own random number generator and updates
+ * the parameters of the factorisation machine without locks (Hogwild), which
+ * is harmless as long as most updates touch different users and items.
+ * The generators of the threads are split from a single one, which can be
+ * seeded, and so is the initialisation of new factorisation machines; the
+ * learning is then reproducible when run by a single thread, as the
+ * lock-free updates of several threads interleave arbitrarily.
+ *
+ * F. Niu, B. Recht, C. Ré and S. J. Wright. Hogwild!: A Lock-Free Approach to
+ * Parallelizing Stochastic Gradient Descent. NIPS 2011.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ * @param <U> type of users
+ * @param <I> type of items
+ */
+public abstract class HogwildLearner<U, I> extends PreferenceFMLearner<U, I> {
+
+    private static final Logger LOG = Logger.getLogger(HogwildLearner.class.getName());
+
+    /**
+     * Learning rate.
+     */
+    protected final double learnRate;
+
+    /**
+     * Number of epochs.
+     */
+    protected final int numIter;
+
+    private final SplittableRandom random;
+
+    /**
+     * Constructor with an unseeded random number generator.
+     *
+     * @param learnRate learning rate (shrinkage)
+     * @param numIter   number of epochs
+     * @param users     user index
+     * @param items     item index
+     */
+    public HogwildLearner(double learnRate, int numIter, FastUserIndex<U> users, FastItemIndex<I> items) {
+        super(users, items);
+        this.learnRate = learnRate;
+        this.numIter = numIter;
+        this.random = new SplittableRandom();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param learnRate learning rate (shrinkage)
+     * @param numIter   number of epochs
+     * @param seed      seed of the random number generator
+     * @param users     user index
+     * @param items     item index
+     */
+    public HogwildLearner(double learnRate, int numIter, long seed, FastUserIndex<U> users, FastItemIndex<I> items) {
+        super(users, items);
+        this.learnRate = learnRate;
+        this.numIter = numIter;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Returns the number of instances sampled in an epoch.
+     *
+     * @param sampler preference sampler
+     * @return number of instances of an epoch
+     */
+    protected int numSamples(PreferenceSampler sampler) {
+        return sampler.numPreferences();
+    }
+
+    /**
+     * Returns the gradient descent step for the instances sampled from some
+     * preferences.
+     *
+     * @param sampler preference sampler
+     * @return gradient descent step
+     */
+    protected abstract Step step(PreferenceSampler sampler);
+
+    /**
+     * Stochastic gradient descent step.
+     */
+    @FunctionalInterface
+    protected interface Step {
+
+        /**
+         * Samples an instance and, optionally, updates the parameters of the
+         * factorisation machine by a gradient descent step on its loss.
+         *
+         * @param fm     factorisation machine
+         * @param rnd    random number generator of the calling thread
+         * @param update whether to update the parameters
+         * @return loss of the instance before the update
+         */
+        double apply(FM fm, SplittableRandom rnd, boolean update);
+    }
+
+    /**
+     * Returns a generator seeded from the one of the learner.
+     *
+     * @return random number generator
+     */
+    @Override
+    protected Random initRandom() {
+        return new Random(random.nextLong());
+    }
+
+    @Override
+    protected void learn(FM fm, FastPreferenceData<U, I> train, FastPreferenceData<U, I> test) {
+        PreferenceSampler trainSampler = new PreferenceSampler(train);
+        PreferenceSampler testSampler = test == null ? null : new PreferenceSampler(test);
+        Step trainStep = step(trainSampler);
+        Step testStep = test == null ? null : step(testSampler);
+        int numThreads = max(1, ForkJoinPool.getCommonPoolParallelism());
+        SplittableRandom rnd = random.split();
+
+        for (int t = 1; t <= numIter; t++) {
+            long time0 = System.nanoTime();
+            double loss = epoch(fm, trainSampler, trainStep, numThreads, rnd, true);
+            double time = (System.nanoTime() - time0) / 1_000_000_000.0;
+
+            if (testSampler == null) {
+                LOG.log(Level.INFO, String.format("iteration n = %3d t = %.2fs loss = %.6f", t, time, loss));
+            } else {
+                double testLoss = epoch(fm, testSampler, testStep, numThreads, rnd, false);
+                LOG.log(Level.INFO, String.format("iteration n = %3d t = %.2fs loss = %.6f test loss = %.6f", t, time, loss, testLoss));
+            }
+        }
+    }
+
+    private double epoch(FM fm, PreferenceSampler sampler, Step step, int numThreads, SplittableRandom rnd, boolean update) {
+        int n = numSamples(sampler);
+        if (n == 0) {
+            return 0.0;
+        }
+        SplittableRandom[] rnds = new SplittableRandom[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            rnds[i] = rnd.split();
+        }
+
+        return range(0, numThreads).parallel().mapToDouble(i -> {
+            int m = n / numThreads + (i < n % numThreads ? 1 : 0);
+            double loss = 0.0;
+            for (int s = 0; s < m; s++) {
+                loss += step.apply(fm, rnds[i], update);
+            }
+            return loss;
+        }).sum() / n;
+    }
+}
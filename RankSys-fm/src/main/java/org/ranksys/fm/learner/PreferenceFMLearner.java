@@ -39,9 +39,59 @@ public abstract class PreferenceFMLearner<U, I> {
         this.items = items;
     }
 
-    protected abstract FMLearner<FMData> getLearner();
+    /**
+     * Returns the JavaFM learner of the data of {@link #toFMData(FastPreferenceData)}.
+     *
+     * @return JavaFM learner
+     * @deprecated override {@link #learn(FM, FastPreferenceData, FastPreferenceData)}
+     * instead; this hook is only used by its default implementation
+     */
+    @Deprecated
+    protected FMLearner<FMData> getLearner() {
+        throw new UnsupportedOperationException("learners must override learn(FM, train, test) or getLearner() and toFMData()");
+    }
+
+    /**
+     * Converts preferences into JavaFM data for {@link #getLearner()}.
+     *
+     * @param preferences preference data
+     * @return JavaFM data
+     * @deprecated override {@link #learn(FM, FastPreferenceData, FastPreferenceData)}
+     * instead; this hook is only used by its default implementation
+     */
+    @Deprecated
+    protected FMData toFMData(FastPreferenceData<U, I> preferences) {
+        throw new UnsupportedOperationException("learners must override learn(FM, train, test) or getLearner() and toFMData()");
+    }
 
-    protected abstract FMData toFMData(FastPreferenceData<U, I> preferences);
+    /**
+     * Trains a factorisation machine whose features are the users followed
+     * by the items. By default, it trains the JavaFM learner of
+     * {@link #getLearner()} on the data of {@link #toFMData(FastPreferenceData)},
+     * so that learners written against these hooks keep working.
+     *
+     * @param fm    factorisation machine
+     * @param train training data
+     * @param test  test data (for displaying error rate in test), or null
+     */
+    @SuppressWarnings("deprecation")
+    protected void learn(FM fm, FastPreferenceData<U, I> train, FastPreferenceData<U, I> test) {
+        if (test == null) {
+            getLearner().learn(fm, toFMData(train));
+        } else {
+            getLearner().learn(fm, toFMData(train), toFMData(test));
+        }
+    }
+
+    /**
+     * Returns the random number generator for the initialisation of the
+     * parameters of a new factorisation machine. By default it is unseeded.
+     *
+     * @return random number generator
+     */
+    protected Random initRandom() {
+        return new Random();
+    }
 
     /**
      * Trains an already existing (and possibly pre-trained) FM.
@@ -50,7 +100,8 @@ public abstract class PreferenceFMLearner<U, I> {
      * @param train training data
      */
     public void learn(PreferenceFM<U, I> fm, FastPreferenceData<U, I> train) {
-        getLearner().learn(fm.getFM(), toFMData(train));
+        learn(fm.getFM(), train, null);
+        fm.update();
     }
 
     /**
@@ -61,7 +112,8 @@ public abstract class PreferenceFMLearner<U, I> {
      * @param test  test data (for displaying error rate in test)
      */
     public void learn(PreferenceFM<U, I> fm, FastPreferenceData<U, I> train, FastPreferenceData<U, I> test) {
-        getLearner().learn(fm.getFM(), toFMData(train), toFMData(test));
+        learn(fm.getFM(), train, test);
+        fm.update();
     }
 
     /**
@@ -73,10 +125,9 @@ public abstract class PreferenceFMLearner<U, I> {
      * @return a trained preference FM
      */
     public PreferenceFM<U, I> learn(FastPreferenceData<U, I> train, int K, double sdev) {
-        FMData fmTrain = toFMData(train);
-        FM fm = new FM(fmTrain.numFeatures(), K, new Random(), sdev);
+        FM fm = new FM(users.numUsers() + items.numItems(), K, initRandom(), sdev);
 
-        getLearner().learn(fm, fmTrain);
+        learn(fm, train, null);
 
         return new PreferenceFM<>(users, items, fm);
     }
@@ -91,11 +142,9 @@ public abstract class PreferenceFMLearner<U, I> {
      * @return a trained preference FM
      */
     public PreferenceFM<U, I> learn(FastPreferenceData<U, I> train, FastPreferenceData<U, I> test, int K, double sdev) {
-        FMData fmTrain = toFMData(train);
-        FMData fmTest = toFMData(test);
-        FM fm = new FM(fmTrain.numFeatures(), K, new Random(), sdev);
+        FM fm = new FM(users.numUsers() + items.numItems(), K, initRandom(), sdev);
 
-        getLearner().learn(fm, fmTrain, fmTest);
+        learn(fm, train, test);
 
         return new PreferenceFM<>(users, items, fm);
     }
@@ -9,23 +9,22 @@ package org.ranksys.fm.learner;
 
 import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
 import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
-import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
-import org.ranksys.fm.data.OneClassPreferenceFMData;
-import org.ranksys.javafm.data.FMData;
-import org.ranksys.javafm.learner.FMLearner;
-import org.ranksys.javafm.learner.gd.PointWiseGradientDescent;
+import org.ranksys.fm.data.PreferenceSampler;
+import org.ranksys.javafm.FM;
 
-import static org.ranksys.javafm.learner.gd.PointWiseError.rmse;
+import java.util.SplittableRandom;
 
 /**
  * Learner for PreferenceFMs using a squared error-based stochastic gradient descent learner with one-class collaborative filtering data.
+ * Preferences are positive instances with target 1 and, for every user,
+ * negativeProp times as many items without a preference of the user are
+ * negative instances with target 0. The reported loss is the mean squared
+ * error.
  *
  * @author Saúl Vargas (Saul@VargasSandoval.es)
  */
-public class RMSELearner<U, I> extends PreferenceFMLearner<U, I> {
+public class RMSELearner<U, I> extends HogwildLearner<U, I> {
 
-    private final double learnRate;
-    private final int numIter;
     private final double regB;
     private final double[] regW;
     private final double[] regM;
@@ -44,9 +43,28 @@ public class RMSELearner<U, I> extends PreferenceFMLearner<U, I> {
      * @param items        item index
      */
     public RMSELearner(double learnRate, int numIter, double regB, double regW, double regM, double negativeProp, FastUserIndex<U> users, FastItemIndex<I> items) {
-        super(users, items);
-        this.learnRate = learnRate;
-        this.numIter = numIter;
+        super(learnRate, numIter, users, items);
+        this.regB = regB;
+        this.regW = vectorise(regW);
+        this.regM = vectorise(regM);
+        this.negativeProp = negativeProp;
+    }
+
+    /**
+     * Constructor with a seeded random number generator.
+     *
+     * @param learnRate    learning rate (shrinkage)
+     * @param numIter      number of iterations
+     * @param regB         regularisation parameter for the global bias
+     * @param regW         regularisation parameter for the feature biase
+     * @param regM         regularisation parameter for factorisation
+     * @param negativeProp proportion of the negative class (unbserved user-item pairs)
+     * @param seed         seed of the random number generator
+     * @param users        user index
+     * @param items        item index
+     */
+    public RMSELearner(double learnRate, int numIter, double regB, double regW, double regM, double negativeProp, long seed, FastUserIndex<U> users, FastItemIndex<I> items) {
+        super(learnRate, numIter, seed, users, items);
         this.regB = regB;
         this.regW = vectorise(regW);
         this.regM = vectorise(regM);
@@ -54,13 +72,56 @@ public class RMSELearner<U, I> extends PreferenceFMLearner<U, I> {
     }
 
     @Override
-    protected FMLearner<FMData> getLearner() {
-        return new PointWiseGradientDescent(learnRate, numIter, rmse(), regB, regW, regM);
+    protected int numSamples(PreferenceSampler sampler) {
+        return (int) ((1.0 + negativeProp) * sampler.numPreferences());
     }
 
     @Override
-    protected FMData toFMData(FastPreferenceData<U, I> preferences) {
-        return new OneClassPreferenceFMData(preferences, negativeProp);
+    protected Step step(PreferenceSampler sampler) {
+        return (fm, rnd, update) -> step(fm, sampler, rnd, update);
+    }
+
+    private double step(FM fm, PreferenceSampler sampler, SplittableRandom rnd, boolean update) {
+        int p = sampler.samplePreference(rnd);
+        int uidx = sampler.uidx(p);
+        int iidx;
+        double y;
+        if (rnd.nextDouble() * (1.0 + negativeProp) < 1.0) {
+            iidx = sampler.iidx(p);
+            y = 1.0;
+        } else {
+            iidx = sampler.sampleNegative(uidx, rnd);
+            if (iidx < 0) {
+                return 0.0;
+            }
+            y = 0.0;
+        }
+
+        int i = sampler.numUsers() + iidx;
+        double b = fm.getB();
+        double[] w = fm.getW();
+        double[] mu = fm.getM()[uidx];
+        double[] mi = fm.getM()[i];
+        int K = mu.length;
+
+        double e = b + w[uidx] + w[i] - y;
+        for (int k = 0; k < K; k++) {
+            e += mu[k] * mi[k];
+        }
+
+        if (update) {
+            fm.setB(b - learnRate * (e + regB * b));
+            w[uidx] -= learnRate * (e + regW[uidx] * w[uidx]);
+            w[i] -= learnRate * (e + regW[i] * w[i]);
+            for (int k = 0; k < K; k++) {
+                double muk = mu[k];
+                double mik = mi[k];
+                mu[k] -= learnRate * (e * mik + regM[uidx] * muk);
+                mi[k] -= learnRate * (e * muk + regM[i] * mik);
+            }
+        }
+
+        return e * e;
     }
 
 }
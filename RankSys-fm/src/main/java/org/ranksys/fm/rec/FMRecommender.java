@@ -8,7 +8,6 @@
 package org.ranksys.fm.rec;
 
 import es.uam.eps.ir.ranksys.fast.FastRecommendation;
-import es.uam.eps.ir.ranksys.fast.preference.IdxPref;
 import es.uam.eps.ir.ranksys.fast.utils.topn.IntDoubleTopN;
 import es.uam.eps.ir.ranksys.rec.fast.AbstractFastRecommender;
 import org.ranksys.core.util.tuples.Tuple2id;
@@ -16,15 +15,13 @@ import org.ranksys.fm.PreferenceFM;
 
 import java.util.List;
 import java.util.function.IntPredicate;
-import java.util.stream.IntStream;
 
-import static java.lang.Float.NaN;
-import static java.util.Comparator.comparingDouble;
+import static java.lang.Math.min;
 import static java.util.stream.Collectors.toList;
-import static org.ranksys.core.util.tuples.Tuples.tuple;
 
 /**
- * A recommender using a factorisation machine.
+ * A recommender using a factorisation machine. Items are scored by the user
+ * and item vectors of {@link PreferenceFM}, as in a matrix factorisation.
  *
  * @author Saúl Vargas (Saul@VargasSandoval.es)
  * @param <U> user type
@@ -32,7 +29,7 @@ import static org.ranksys.core.util.tuples.Tuples.tuple;
  */
 public class FMRecommender<U, I> extends AbstractFastRecommender<U, I> {
 
-    private final PreferenceFM fm;
+    private final PreferenceFM<U, I> fm;
 
     /**
      * Constructor.
@@ -49,11 +46,15 @@ public class FMRecommender<U, I> extends AbstractFastRecommender<U, I> {
         if (maxLength == 0) {
             maxLength = numItems();
         }
-        IntDoubleTopN topN = new IntDoubleTopN(maxLength);
+        IntDoubleTopN topN = new IntDoubleTopN(min(maxLength, numItems()));
 
-        getAllIidx()
-                .filter(filter)
-                .forEach(iidx -> topN.add(iidx, fm.predict(uidx, new IdxPref(iidx, NaN))));
+        double[] scores = new double[numItems()];
+        fm.scores(uidx, scores);
+        for (int iidx = 0; iidx < scores.length; iidx++) {
+            if (filter.test(iidx)) {
+                topN.add(iidx, scores[iidx]);
+            }
+        }
 
         topN.sort();
 
@@ -64,10 +65,21 @@ public class FMRecommender<U, I> extends AbstractFastRecommender<U, I> {
     }
 
     @Override
-    public FastRecommendation getRecommendation(int uidx, IntStream candidates) {
-        List<Tuple2id> items = candidates
-                .mapToObj(iidx -> tuple(iidx, fm.predict(uidx, new IdxPref(iidx, NaN))))
-                .sorted(comparingDouble(Tuple2id::v2).reversed())
+    public FastRecommendation getRecommendation(int uidx, int[] candidates, int maxLength) {
+        if (maxLength == 0) {
+            maxLength = candidates.length;
+        }
+        IntDoubleTopN topN = new IntDoubleTopN(min(maxLength, candidates.length));
+
+        double[] scores = new double[candidates.length];
+        fm.scores(uidx, candidates, scores);
+        for (int j = 0; j < candidates.length; j++) {
+            topN.add(candidates[j], scores[j]);
+        }
+
+        topN.sort();
+
+        List<Tuple2id> items = topN.reverseStream()
                 .collect(toList());
 
         return new FastRecommendation(uidx, items);
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.fm.data;
+
+import java.util.SplittableRandom;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Test for AliasSampler.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class AliasSamplerTest {
+
+    private static final int NUM_SAMPLES = 200_000;
+
+    private static double[] frequencies(AliasSampler sampler, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        double[] freqs = new double[sampler.size()];
+        for (int s = 0; s < NUM_SAMPLES; s++) {
+            freqs[sampler.sample(rnd)] += 1.0 / NUM_SAMPLES;
+        }
+        return freqs;
+    }
+
+    /**
+     * Tests that indices are sampled in proportion to their weights, and
+     * that indices with zero weight are never sampled.
+     */
+    @Test
+    public void testFrequencies() {
+        double[] weights = {1.0, 0.0, 3.0, 0.5, 5.5};
+        AliasSampler sampler = new AliasSampler(weights);
+        assertEquals(5, sampler.size());
+
+        double[] freqs = frequencies(sampler, 1);
+        for (int i = 0; i < weights.length; i++) {
+            assertEquals(weights[i] / 10.0, freqs[i], 0.005);
+        }
+        assertEquals(0.0, freqs[1], 0.0);
+    }
+
+    /**
+     * Tests the sampling from uniform and single weights.
+     */
+    @Test
+    public void testUniform() {
+        double[] freqs = frequencies(new AliasSampler(new double[]{2.0, 2.0, 2.0, 2.0}), 2);
+        for (double f : freqs) {
+            assertEquals(0.25, f, 0.005);
+        }
+
+        assertEquals(1.0, frequencies(new AliasSampler(new double[]{0.1}), 3)[0], 1e-9);
+    }
+
+    /**
+     * Tests that the same seed gives the same samples.
+     */
+    @Test
+    public void testSeed() {
+        AliasSampler sampler = new AliasSampler(new double[]{1.0, 2.0, 3.0});
+        SplittableRandom rnd1 = new SplittableRandom(4);
+        SplittableRandom rnd2 = new SplittableRandom(4);
+        for (int s = 0; s < 1000; s++) {
+            assertEquals(sampler.sample(rnd1), sampler.sample(rnd2));
+        }
+    }
+
+    /**
+     * Tests that weights without a positive sum are rejected.
+     */
+    @Test
+    public void testInvalid() {
+        for (double[] weights : new double[][]{{}, {0.0, 0.0}, {Double.NaN, 1.0}}) {
+            try {
+                new AliasSampler(weights);
+                fail();
+            } catch (IllegalArgumentException ex) {
+                assertEquals("weights must have a positive sum", ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.fm.data;
+
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.fast.preference.SimpleFastPreferenceData;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import org.jooq.lambda.tuple.Tuple3;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.ranksys.javafm.FM;
+
+/**
+ * Test for NegativeSamplers.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class NegativeSamplersTest {
+
+    private static final int NUM_SAMPLES = 100_000;
+
+    /**
+     * Items 0 to 4 have 2, 3, 4, 5 and 0 preferences; user 0 has a
+     * preference for item 0 only and user 5 for all the items with
+     * preferences.
+     */
+    private static final int[][] PREFS = {
+        {0},
+        {1, 2, 3},
+        {1, 2, 3},
+        {2, 3},
+        {3},
+        {0, 1, 2, 3}
+    };
+
+    private final PreferenceSampler prefs;
+    private final FM fm;
+
+    /**
+     * Constructor that initialises the preferences and a factorisation
+     * machine scoring item j as j for every user.
+     */
+    public NegativeSamplersTest() {
+        FastUserIndex<Integer> uIndex = SimpleFastUserIndex.load(IntStream.range(0, PREFS.length).boxed());
+        FastItemIndex<Integer> iIndex = SimpleFastItemIndex.load(IntStream.range(0, 5).boxed());
+        Stream<Tuple3<Integer, Integer, Double>> tuples = IntStream.range(0, PREFS.length).boxed()
+                .flatMap(u -> IntStream.of(PREFS[u]).mapToObj(i -> tuple(u, i, 1.0)));
+        prefs = new PreferenceSampler(SimpleFastPreferenceData.load(tuples, uIndex, iIndex));
+
+        int nu = PREFS.length;
+        double[] w = new double[nu + 5];
+        double[][] m = new double[nu + 5][2];
+        for (int j = 0; j < 5; j++) {
+            w[nu + j] = j;
+        }
+        fm = new FM(0.0, w, m);
+    }
+
+    private double[] frequencies(NegativeSampler sampler, int uidx, long seed) {
+        SplittableRandom rnd = new SplittableRandom(seed);
+        double[] freqs = new double[prefs.numItems()];
+        for (int s = 0; s < NUM_SAMPLES; s++) {
+            freqs[sampler.sample(fm, uidx, rnd)] += 1.0 / NUM_SAMPLES;
+        }
+        return freqs;
+    }
+
+    /**
+     * Tests that negatives are sampled in proportion to their popularity
+     * raised to the exponent, among the items without a preference of the
+     * user and with preferences of some user.
+     */
+    @Test
+    public void testPopularity() {
+        NegativeSampler proportional = NegativeSamplers.popularity(1.0).apply(prefs);
+        double[] freqs = frequencies(proportional, 0, 1);
+        assertEquals(0.0, freqs[0], 0.0);
+        assertEquals(3.0 / 12.0, freqs[1], 0.005);
+        assertEquals(4.0 / 12.0, freqs[2], 0.005);
+        assertEquals(5.0 / 12.0, freqs[3], 0.005);
+        assertEquals(0.0, freqs[4], 0.0);
+
+        NegativeSampler squared = NegativeSamplers.popularity(2.0).apply(prefs);
+        freqs = frequencies(squared, 0, 2);
+        assertEquals(9.0 / 50.0, freqs[1], 0.005);
+        assertEquals(16.0 / 50.0, freqs[2], 0.005);
+        assertEquals(25.0 / 50.0, freqs[3], 0.005);
+
+        NegativeSampler uniform = NegativeSamplers.popularity(0.0).apply(prefs);
+        freqs = frequencies(uniform, 0, 3);
+        for (int jidx = 1; jidx < 4; jidx++) {
+            assertEquals(1.0 / 3.0, freqs[jidx], 0.005);
+        }
+
+        assertEquals(-1, proportional.sample(fm, 5, new SplittableRandom(4)));
+    }
+
+    /**
+     * Tests that the adaptive sampler returns the candidate scored highest,
+     * and the base sampler when there is a single candidate.
+     */
+    @Test
+    public void testAdaptive() {
+        NegativeSampler base = NegativeSamplers.uniform().apply(prefs);
+        NegativeSampler adaptive = NegativeSamplers.adaptive(NegativeSamplers.uniform(), 2).apply(prefs);
+
+        double[] freqs = frequencies(adaptive, 0, 5);
+        assertEquals(0.0, freqs[0], 0.0);
+        assertEquals(1.0 / 9.0, freqs[1], 0.005);
+        assertEquals(3.0 / 9.0, freqs[2], 0.005);
+        assertEquals(5.0 / 9.0, freqs[3], 0.005);
+
+        NegativeSampler single = NegativeSamplers.adaptive(NegativeSamplers.uniform(), 1).apply(prefs);
+        SplittableRandom rnd1 = new SplittableRandom(6);
+        SplittableRandom rnd2 = new SplittableRandom(6);
+        for (int s = 0; s < 1000; s++) {
+            assertEquals(base.sample(fm, 0, rnd1), single.sample(fm, 0, rnd2));
+        }
+
+        assertEquals(-1, adaptive.sample(fm, 5, new SplittableRandom(7)));
+    }
+
+    /**
+     * Tests that invalid parameters are rejected.
+     */
+    @Test
+    public void testInvalid() {
+        try {
+            NegativeSamplers.adaptive(NegativeSamplers.uniform(), 0);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        try {
+            NegativeSamplers.popularity(Double.NaN);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+        try {
+            NegativeSamplers.popularity(Double.POSITIVE_INFINITY);
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+}
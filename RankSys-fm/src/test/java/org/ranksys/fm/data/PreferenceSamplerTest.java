@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.fm.data;
+
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.fast.preference.SimpleFastPreferenceData;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.jooq.lambda.tuple.Tuple3;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import org.junit.Test;
+
+/**
+ * Test for PreferenceSampler.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class PreferenceSamplerTest {
+
+    private static final int[][] PREFS = {
+        {3, 1},
+        {2, 0, 1},
+        {},
+        {0, 1, 2, 3}
+    };
+
+    private final PreferenceSampler sampler;
+
+    /**
+     * Constructor that initialises the preferences of four users for five
+     * items: the third user has no preferences, the fourth has a preference
+     * for every item with preferences and nobody has a preference for the
+     * last item.
+     */
+    public PreferenceSamplerTest() {
+        FastUserIndex<Integer> uIndex = SimpleFastUserIndex.load(IntStream.range(0, 4).boxed());
+        FastItemIndex<Integer> iIndex = SimpleFastItemIndex.load(IntStream.range(0, 5).boxed());
+        Stream<Tuple3<Integer, Integer, Double>> tuples = IntStream.range(0, PREFS.length).boxed()
+                .flatMap(u -> IntStream.of(PREFS[u]).mapToObj(i -> tuple(u, i, 1.0)));
+
+        sampler = new PreferenceSampler(SimpleFastPreferenceData.load(tuples, uIndex, iIndex));
+    }
+
+    /**
+     * Tests the preferences, sorted by user and item.
+     */
+    @Test
+    public void testPreferences() {
+        assertEquals(4, sampler.numUsers());
+        assertEquals(5, sampler.numItems());
+        assertEquals(9, sampler.numPreferences());
+
+        int[] uidxs = IntStream.range(0, 9).map(sampler::uidx).toArray();
+        int[] iidxs = IntStream.range(0, 9).map(sampler::iidx).toArray();
+        assertArrayEquals(new int[]{0, 0, 1, 1, 1, 3, 3, 3, 3}, uidxs);
+        assertArrayEquals(new int[]{1, 3, 0, 1, 2, 0, 1, 2, 3}, iidxs);
+
+        for (int uidx = 0; uidx < PREFS.length; uidx++) {
+            for (int iidx = 0; iidx < 5; iidx++) {
+                int i = iidx;
+                assertEquals(IntStream.of(PREFS[uidx]).anyMatch(j -> j == i), sampler.isPositive(uidx, iidx));
+            }
+        }
+    }
+
+    /**
+     * Tests that preferences are sampled uniformly.
+     */
+    @Test
+    public void testSamplePreference() {
+        SplittableRandom rnd = new SplittableRandom(1);
+        int n = 90_000;
+        int[] counts = new int[sampler.numPreferences()];
+        for (int s = 0; s < n; s++) {
+            counts[sampler.samplePreference(rnd)]++;
+        }
+        for (int count : counts) {
+            assertEquals(1.0 / 9, count / (double) n, 0.005);
+        }
+    }
+
+    /**
+     * Tests that negative items are sampled uniformly among the items with
+     * preferences for which the user has none, and that no item is sampled
+     * for a user who has a preference for all of them.
+     */
+    @Test
+    public void testSampleNegative() {
+        SplittableRandom rnd = new SplittableRandom(2);
+        int n = 20_000;
+
+        int[] counts = new int[5];
+        for (int s = 0; s < n; s++) {
+            counts[sampler.sampleNegative(0, rnd)]++;
+        }
+        assertEquals(0, counts[1] + counts[3] + counts[4]);
+        assertEquals(0.5, counts[0] / (double) n, 0.02);
+        assertEquals(0.5, counts[2] / (double) n, 0.02);
+
+        for (int s = 0; s < 100; s++) {
+            assertEquals(3, sampler.sampleNegative(1, rnd));
+            assertTrue(sampler.sampleNegative(2, rnd) < 4);
+        }
+
+        assertTrue(sampler.hasNegatives(0));
+        assertTrue(sampler.hasNegatives(2));
+        assertFalse(sampler.hasNegatives(3));
+        assertEquals(-1, sampler.sampleNegative(3, rnd));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.fm.learner;
+
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.fast.preference.SimpleFastPreferenceData;
+import java.util.stream.IntStream;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+import org.ranksys.fm.PreferenceFM;
+import org.ranksys.fm.data.NegativeSamplers;
+import org.ranksys.javafm.FM;
+
+/**
+ * Test for HogwildLearner.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class HogwildLearnerTest {
+
+    private static final int K = 4;
+
+    private final FastUserIndex<Integer> uIndex;
+    private final FastItemIndex<Integer> iIndex;
+    private final FastPreferenceData<Integer, Integer> train;
+
+    /**
+     * Constructor that initialises the preferences of five users for seven
+     * items.
+     */
+    public HogwildLearnerTest() {
+        uIndex = SimpleFastUserIndex.load(IntStream.range(0, 5).boxed());
+        iIndex = SimpleFastItemIndex.load(IntStream.range(0, 7).boxed());
+        train = SimpleFastPreferenceData.load(IntStream.range(0, 5).boxed()
+                .flatMap(u -> IntStream.range(u, u + 3).mapToObj(i -> tuple(u, i, 1.0))), uIndex, iIndex);
+    }
+
+    private static void assertSameFM(FM fm1, FM fm2) {
+        assertEquals(fm1.getB(), fm2.getB(), 0.0);
+        assertArrayEquals(fm1.getW(), fm2.getW(), 0.0);
+        assertEquals(fm1.getM().length, fm2.getM().length);
+        for (int j = 0; j < fm1.getM().length; j++) {
+            assertArrayEquals(fm1.getM()[j], fm2.getM()[j], 0.0);
+        }
+    }
+
+    /**
+     * Tests that the initialisation of a new FM is drawn from the seed of
+     * the learner.
+     */
+    @Test
+    public void testSeededInit() {
+        PreferenceFM<Integer, Integer> fm1 = new BPRLearner<>(0.01, 0, 0.01, 0.01, NegativeSamplers.uniform(), 1L, uIndex, iIndex)
+                .learn(train, K, 0.1);
+        PreferenceFM<Integer, Integer> fm2 = new BPRLearner<>(0.01, 0, 0.01, 0.01, NegativeSamplers.uniform(), 1L, uIndex, iIndex)
+                .learn(train, K, 0.1);
+        PreferenceFM<Integer, Integer> fm3 = new BPRLearner<>(0.01, 0, 0.01, 0.01, NegativeSamplers.uniform(), 2L, uIndex, iIndex)
+                .learn(train, K, 0.1);
+
+        assertSameFM(fm1.getFM(), fm2.getFM());
+        assertFalse(fm1.getFM().getW()[0] == fm3.getFM().getW()[0]);
+
+        PreferenceFM<Integer, Integer> fm4 = new RMSELearner<>(0.01, 0, 0.01, 0.01, 0.01, 1.0, 1L, uIndex, iIndex)
+                .learn(train, K, 0.1);
+        PreferenceFM<Integer, Integer> fm5 = new RMSELearner<>(0.01, 0, 0.01, 0.01, 0.01, 1.0, 1L, uIndex, iIndex)
+                .learn(train, K, 0.1);
+
+        assertSameFM(fm4.getFM(), fm5.getFM());
+    }
+}
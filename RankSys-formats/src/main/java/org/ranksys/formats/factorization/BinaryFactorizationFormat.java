@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.formats.factorization;
+
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import es.uam.eps.ir.ranksys.mf.Factorization;
+import org.ranksys.core.util.kernels.Float16;
+import org.ranksys.mf.FlatDoubleMatrix2D;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.round;
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Binary matrix factorisation format.
+ *
+ * A header with a magic number, the version of the format, the number of
+ * users, the number of items, the dimension K and the precision is followed
+ * by the rows of the user matrix and then the rows of the item matrix, all in
+ * little-endian byte order. Rows are stored as doubles, floats, half
+ * precision floats or signed bytes. In the latter case the rows of each
+ * matrix are preceded by one float scale per row, the value of a factor being
+ * its byte times the scale of its row.
+ *
+ * Files can be read from a stream or memory-mapped with
+ * {@link #load(File, FastUserIndex, FastItemIndex)}, which decodes the mapped
+ * rows directly into the arrays of the factorization.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class BinaryFactorizationFormat implements FactorizationFormat {
+
+    /**
+     * Precision of the stored factors.
+     */
+    public enum Precision {
+
+        /**
+         * 64-bit floating point.
+         */
+        DOUBLE(Double.BYTES),
+        /**
+         * 32-bit floating point.
+         */
+        FLOAT(Float.BYTES),
+        /**
+         * 16-bit floating point (IEEE 754 half precision).
+         */
+        FLOAT16(Short.BYTES),
+        /**
+         * 8-bit integers with a scale per row.
+         */
+        INT8(Byte.BYTES);
+
+        private final int bytes;
+
+        Precision(int bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * Returns the number of bytes of each stored factor.
+         *
+         * @return number of bytes
+         */
+        public int bytes() {
+            return bytes;
+        }
+    }
+
+    private static final int MAGIC = 0x464d5352;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
+    private static final int STREAM_CHUNK_BYTES = 1 << 20;
+    private static final int MAP_CHUNK_BYTES = 1 << 30;
+
+    private final Precision precision;
+
+    /**
+     * Returns an instance of this class that saves factors as doubles.
+     *
+     * @return an instance of BinaryFactorizationFormat
+     */
+    public static BinaryFactorizationFormat get() {
+        return get(Precision.DOUBLE);
+    }
+
+    /**
+     * Returns an instance of this class. The precision only applies to
+     * saving: loading uses the precision stored in the header.
+     *
+     * @param precision precision of the saved factors
+     * @return an instance of BinaryFactorizationFormat
+     */
+    public static BinaryFactorizationFormat get(Precision precision) {
+        return new BinaryFactorizationFormat(precision);
+    }
+
+    private BinaryFactorizationFormat(Precision precision) {
+        this.precision = precision;
+    }
+
+    @Override
+    public <U, I> void save(Factorization<U, I> factorization, OutputStream out) throws IOException {
+        int K = factorization.getK();
+        WritableByteChannel channel = Channels.newChannel(out);
+        ByteBuffer buffer = ByteBuffer.allocate(max(STREAM_CHUNK_BYTES, K * Double.BYTES)).order(LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(factorization.numUsers())
+                .putInt(factorization.numItems())
+                .putInt(K)
+                .putInt(precision.ordinal());
+        writeMatrix(factorization.getUserMatrix(), buffer, channel);
+        writeMatrix(factorization.getItemMatrix(), buffer, channel);
+        flush(buffer, channel);
+        out.flush();
+    }
+
+    private void writeMatrix(FlatDoubleMatrix2D matrix, ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        int rows = matrix.rows();
+        int K = matrix.columns();
+        double[] m = matrix.elements();
+
+        float[] scales = null;
+        if (precision == Precision.INT8) {
+            scales = new float[rows];
+            for (int row = 0; row < rows; row++) {
+                int off = matrix.offset(row);
+                double maxAbs = 0.0;
+                for (int k = 0; k < K; k++) {
+                    maxAbs = max(maxAbs, abs(m[off + k]));
+                }
+                scales[row] = (float) (maxAbs / Byte.MAX_VALUE);
+                if (buffer.remaining() < Float.BYTES) {
+                    flush(buffer, channel);
+                }
+                buffer.putFloat(scales[row]);
+            }
+        }
+
+        for (int row = 0; row < rows; row++) {
+            if (buffer.remaining() < K * precision.bytes) {
+                flush(buffer, channel);
+            }
+            int off = matrix.offset(row);
+            switch (precision) {
+                case DOUBLE:
+                    for (int k = 0; k < K; k++) {
+                        buffer.putDouble(m[off + k]);
+                    }
+                    break;
+                case FLOAT:
+                    for (int k = 0; k < K; k++) {
+                        buffer.putFloat((float) m[off + k]);
+                    }
+                    break;
+                case FLOAT16:
+                    for (int k = 0; k < K; k++) {
+                        buffer.putShort(Float16.fromFloat((float) m[off + k]));
+                    }
+                    break;
+                case INT8:
+                    float scale = scales[row];
+                    for (int k = 0; k < K; k++) {
+                        buffer.put(scale == 0.0f ? 0 : (byte) round(m[off + k] / scale));
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+    }
+
+    private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public <U, I> Factorization<U, I> load(InputStream in, FastUserIndex<U> uIndex, FastItemIndex<I> iIndex) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(in);
+        ByteBuffer[] buffer = {ByteBuffer.allocate(STREAM_CHUNK_BYTES)};
+
+        return load((position, length) -> {
+            if (buffer[0].capacity() < length) {
+                buffer[0] = ByteBuffer.allocate(length);
+            }
+            ByteBuffer b = buffer[0];
+            b.clear().limit(length);
+            while (b.hasRemaining()) {
+                if (channel.read(b) < 0) {
+                    throw new EOFException("unexpected end of factorization");
+                }
+            }
+            b.flip();
+            return b.order(LITTLE_ENDIAN);
+        }, STREAM_CHUNK_BYTES, uIndex, iIndex);
+    }
+
+    /**
+     * Loads a factorization by memory-mapping a file. The rows are decoded
+     * straight from the mapped file into the matrices of the factorization.
+     *
+     * @param <U> type of the users
+     * @param <I> type of the items
+     * @param file input file
+     * @param uIndex fast user index
+     * @param iIndex fast item index
+     * @return a factorization
+     * @throws IOException when IO error
+     */
+    public <U, I> Factorization<U, I> load(File file, FastUserIndex<U> uIndex, FastItemIndex<I> iIndex) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            return load((position, length) -> channel.map(READ_ONLY, position, length).order(LITTLE_ENDIAN), MAP_CHUNK_BYTES, uIndex, iIndex);
+        }
+    }
+
+    private static <U, I> Factorization<U, I> load(Source source, int chunkBytes, FastUserIndex<U> uIndex, FastItemIndex<I> iIndex) throws IOException {
+        ByteBuffer header = source.read(0, HEADER_BYTES);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("not a binary factorization");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported binary factorization version " + version);
+        }
+        int numUsers = header.getInt();
+        int numItems = header.getInt();
+        int K = header.getInt();
+        int code = header.getInt();
+        if (code < 0 || code >= Precision.values().length) {
+            throw new IOException("unknown binary factorization precision " + code);
+        }
+        Precision precision = Precision.values()[code];
+
+        long[] position = {HEADER_BYTES};
+        FlatDoubleMatrix2D userMatrix = readMatrix(source, position, chunkBytes, precision, numUsers, K);
+        FlatDoubleMatrix2D itemMatrix = readMatrix(source, position, chunkBytes, precision, numItems, K);
+
+        return new Factorization<>(uIndex, iIndex, userMatrix, itemMatrix, K);
+    }
+
+    private static FlatDoubleMatrix2D readMatrix(Source source, long[] position, int chunkBytes, Precision precision, int rows, int K) throws IOException {
+        if ((long) rows * K > Integer.MAX_VALUE) {
+            throw new IOException("matrix of " + rows + " x " + K + " factors does not fit in an array");
+        }
+        double[] m = new double[rows * K];
+
+        float[] scales = null;
+        if (precision == Precision.INT8) {
+            scales = new float[rows];
+            int chunkRows = max(1, chunkBytes / Float.BYTES);
+            for (int row = 0; row < rows; row += chunkRows) {
+                int n = min(chunkRows, rows - row);
+                source.read(position[0], n * Float.BYTES).asFloatBuffer().get(scales, row, n);
+                position[0] += n * Float.BYTES;
+            }
+        }
+
+        int rowBytes = K * precision.bytes;
+        int chunkRows = max(1, chunkBytes / max(1, rowBytes));
+        for (int row = 0; row < rows; row += chunkRows) {
+            int n = min(chunkRows, rows - row);
+            ByteBuffer chunk = source.read(position[0], n * rowBytes);
+            position[0] += (long) n * rowBytes;
+
+            int off = row * K;
+            int len = n * K;
+            switch (precision) {
+                case DOUBLE:
+                    chunk.asDoubleBuffer().get(m, off, len);
+                    break;
+                case FLOAT:
+                    for (int j = 0; j < len; j++) {
+                        m[off + j] = chunk.getFloat();
+                    }
+                    break;
+                case FLOAT16:
+                    for (int j = 0; j < len; j++) {
+                        m[off + j] = Float16.toFloat(chunk.getShort());
+                    }
+                    break;
+                case INT8:
+                    for (int r = 0; r < n; r++) {
+                        double scale = scales[row + r];
+                        for (int k = 0; k < K; k++) {
+                            m[off + r * K + k] = chunk.get() * scale;
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+
+        return new FlatDoubleMatrix2D(rows, K, m, K);
+    }
+
+    @FunctionalInterface
+    private interface Source {
+
+        ByteBuffer read(long position, int length) throws IOException;
+    }
+}
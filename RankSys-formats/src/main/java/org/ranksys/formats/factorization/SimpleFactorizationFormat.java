@@ -25,6 +25,7 @@ import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 import static es.uam.eps.ir.ranksys.core.util.FastStringSplitter.split;
 import static java.lang.Integer.parseInt;
+import org.ranksys.mf.FlatDoubleMatrix2D;
 
 /**
  * Zip-compressed, human readable matrix factorisation format.
@@ -60,17 +61,17 @@ public class SimpleFactorizationFormat implements FactorizationFormat {
     }
 
     private static DenseDoubleMatrix2D loadDenseDoubleMatrix2D(InputStream stream, int rows, int columns) throws IOException {
-        double[][] m = new double[rows][columns];
+        double[] m = new double[rows * columns];
 
         BufferedReader in = new BufferedReader(new InputStreamReader(stream));
-        for (double[] mi : m) {
-            CharSequence[] tokens = split(in.readLine(), '\t', mi.length);
-            for (int j = 0; j < mi.length; j++) {
-                mi[j] = parseDouble(tokens[j].toString());
+        for (int i = 0; i < rows; i++) {
+            CharSequence[] tokens = split(in.readLine(), '\t', columns);
+            for (int j = 0; j < columns; j++) {
+                m[i * columns + j] = parseDouble(tokens[j].toString());
             }
         }
 
-        return new DenseDoubleMatrix2D(m);
+        return new FlatDoubleMatrix2D(rows, columns, m, columns);
     }
 
     @Override
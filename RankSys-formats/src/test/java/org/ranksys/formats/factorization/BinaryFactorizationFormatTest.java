@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.formats.factorization;
+
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.mf.Factorization;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.ranksys.formats.factorization.BinaryFactorizationFormat.Precision;
+import org.ranksys.mf.FlatDoubleMatrix2D;
+
+/**
+ * Test for BinaryFactorizationFormat.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class BinaryFactorizationFormatTest {
+
+    private static final int K = 5;
+
+    private final FastUserIndex<Integer> uIndex;
+    private final FastItemIndex<Integer> iIndex;
+    private final Factorization<Integer, Integer> factorization;
+
+    /**
+     * Constructor that initialises a random factorization, with a row of
+     * zeros in the item matrix.
+     */
+    public BinaryFactorizationFormatTest() {
+        uIndex = SimpleFastUserIndex.load(IntStream.range(0, 3).boxed());
+        iIndex = SimpleFastItemIndex.load(IntStream.range(0, 4).boxed());
+        Random random = new Random(1);
+        factorization = new Factorization<>(uIndex, iIndex, K, x -> 2 * random.nextDouble() - 1);
+        FlatDoubleMatrix2D q = factorization.getItemMatrix();
+        Arrays.fill(q.elements(), q.offset(2), q.offset(2) + K, 0.0);
+    }
+
+    private byte[] save(Precision precision) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryFactorizationFormat.get(precision).save(factorization, out);
+        return out.toByteArray();
+    }
+
+    private Factorization<Integer, Integer> load(byte[] bytes) throws IOException {
+        return BinaryFactorizationFormat.get().load(new ByteArrayInputStream(bytes), uIndex, iIndex);
+    }
+
+    private Factorization<Integer, Integer> map(byte[] bytes) throws IOException {
+        File file = File.createTempFile("factorization", ".bin");
+        try {
+            Files.write(file.toPath(), bytes);
+            return BinaryFactorizationFormat.get().load(file, uIndex, iIndex);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static double[] values(FlatDoubleMatrix2D matrix) {
+        return Arrays.copyOf(matrix.elements(), matrix.rows() * matrix.columns());
+    }
+
+    private void assertRoundTrip(Precision precision, double delta) throws IOException {
+        byte[] bytes = save(precision);
+        assertEquals(6 * Integer.BYTES + (3 + 4) * K * precision.bytes() + (precision == Precision.INT8 ? (3 + 4) * Float.BYTES : 0), bytes.length);
+
+        Factorization<Integer, Integer> loaded = load(bytes);
+        Factorization<Integer, Integer> mapped = map(bytes);
+
+        assertEquals(K, loaded.getK());
+        assertEquals(3, loaded.getUserMatrix().rows());
+        assertEquals(4, loaded.getItemMatrix().rows());
+        assertArrayEquals(values(loaded.getUserMatrix()), values(mapped.getUserMatrix()), 0.0);
+        assertArrayEquals(values(loaded.getItemMatrix()), values(mapped.getItemMatrix()), 0.0);
+        assertArrayEquals(values(factorization.getUserMatrix()), values(loaded.getUserMatrix()), delta);
+        assertArrayEquals(values(factorization.getItemMatrix()), values(loaded.getItemMatrix()), delta);
+    }
+
+    /**
+     * Tests the round trip of doubles, which is exact.
+     */
+    @Test
+    public void testDouble() throws IOException {
+        assertRoundTrip(Precision.DOUBLE, 0.0);
+    }
+
+    /**
+     * Tests the round trip of floats.
+     */
+    @Test
+    public void testFloat() throws IOException {
+        assertRoundTrip(Precision.FLOAT, 1e-7);
+    }
+
+    /**
+     * Tests the round trip of half precision floats, with a relative error of
+     * 2^-11 for values in [-1, 1].
+     */
+    @Test
+    public void testFloat16() throws IOException {
+        assertRoundTrip(Precision.FLOAT16, 0x1p-11);
+    }
+
+    /**
+     * Tests the round trip of bytes, with an error of half the scale of a
+     * row, and the row of zeros.
+     */
+    @Test
+    public void testInt8() throws IOException {
+        assertRoundTrip(Precision.INT8, 1.0 / 254);
+
+        double[] zeros = new double[K];
+        FlatDoubleMatrix2D q = map(save(Precision.INT8)).getItemMatrix();
+        assertArrayEquals(zeros, Arrays.copyOfRange(q.elements(), q.offset(2), q.offset(2) + K), 0.0);
+    }
+
+    /**
+     * Tests that files with an unknown magic number, version or precision,
+     * or truncated, are rejected.
+     */
+    @Test
+    public void testInvalid() throws IOException {
+        byte[] bytes = save(Precision.FLOAT);
+
+        byte[] magic = bytes.clone();
+        magic[0] ^= 1;
+        assertInvalid(magic, "not a binary factorization");
+
+        byte[] version = bytes.clone();
+        version[4] = 2;
+        assertInvalid(version, "unsupported binary factorization version 2");
+
+        byte[] precision = bytes.clone();
+        precision[20] = 9;
+        assertInvalid(precision, "unknown binary factorization precision 9");
+
+        try {
+            load(Arrays.copyOf(bytes, bytes.length - 1));
+            fail("truncated stream");
+        } catch (EOFException ex) {
+        }
+    }
+
+    private void assertInvalid(byte[] bytes, String message) {
+        try {
+            load(bytes);
+            fail(message);
+        } catch (IOException ex) {
+            assertEquals(message, ex.getMessage());
+        }
+        try {
+            map(bytes);
+            fail(message);
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().startsWith(message));
+        }
+    }
+}
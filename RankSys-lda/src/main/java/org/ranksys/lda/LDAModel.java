@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.lda;
+
+import cc.mallet.topics.ParallelTopicModel;
+
+import java.util.function.IntFunction;
+
+import static org.ranksys.core.util.kernels.Kernels.dot;
+import static org.ranksys.core.util.kernels.Kernels.gatherDot;
+import static org.ranksys.core.util.kernels.Kernels.gemv;
+
+/**
+ * Scoring model of an LDA topic model: the topic distributions p(z|u) of the
+ * users and a table of the item probabilities p(i|z) of every topic, so
+ * that the score of an item for a user, sum_z p(z|u) p(i|z), is an inner
+ * product.
+ *
+ * The table is stored either densely, numItems rows of K floats, scoring a
+ * user against all items with a single matrix-vector product, or sparsely,
+ * with only the non-zero topics of every item, which is smaller and faster
+ * when items are only assigned to a few topics, as in Gibbs samples.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class LDAModel {
+
+    private final int numTopics;
+    private final int numItems;
+    private final IntFunction<double[]> userTopics;
+    private final float[] itemTopics;
+    private final int[] offsets;
+    private final int[] topics;
+    private final float[] values;
+
+    /**
+     * Constructor for a dense table.
+     *
+     * @param numTopics number of topics
+     * @param numItems number of items
+     * @param userTopics function returning the topic distribution of a user
+     * @param itemTopics row-major numItems x numTopics table of p(i|z)
+     */
+    public LDAModel(int numTopics, int numItems, IntFunction<double[]> userTopics, float[] itemTopics) {
+        this(numTopics, numItems, userTopics, itemTopics, null, null, null);
+    }
+
+    /**
+     * Constructor for a sparse table.
+     *
+     * @param numTopics number of topics
+     * @param numItems number of items
+     * @param userTopics function returning the topic distribution of a user
+     * @param offsets offsets of the non-zero topics of each item, numItems + 1
+     * @param topics non-zero topics of the items
+     * @param values values p(i|z) of the non-zero topics of the items
+     */
+    public LDAModel(int numTopics, int numItems, IntFunction<double[]> userTopics, int[] offsets, int[] topics, float[] values) {
+        this(numTopics, numItems, userTopics, null, offsets, topics, values);
+    }
+
+    private LDAModel(int numTopics, int numItems, IntFunction<double[]> userTopics, float[] itemTopics, int[] offsets, int[] topics, float[] values) {
+        this.numTopics = numTopics;
+        this.numItems = numItems;
+        this.userTopics = userTopics;
+        this.itemTopics = itemTopics;
+        this.offsets = offsets;
+        this.topics = topics;
+        this.values = values;
+    }
+
+    /**
+     * Extracts a scoring model from a MALLET topic model, whose documents
+     * are the users and whose word types are the items. The table is sparse
+     * when less than a quarter of its entries are non-zero, dense otherwise.
+     *
+     * @param topicModel topic model
+     * @return scoring model
+     */
+    public static LDAModel of(ParallelTopicModel topicModel) {
+        long nnz = 0;
+        for (int[] qi : topicModel.typeTopicCounts) {
+            int i = 0;
+            while (i < qi.length && qi[i] > 0) {
+                i++;
+            }
+            nnz += i;
+        }
+
+        if (4 * nnz < (long) topicModel.typeTopicCounts.length * topicModel.getNumTopics()) {
+            return sparse(topicModel);
+        } else {
+            return dense(topicModel);
+        }
+    }
+
+    /**
+     * Extracts a dense scoring model from a MALLET topic model, whose
+     * documents are the users and whose word types are the items.
+     *
+     * @param topicModel topic model
+     * @return dense scoring model
+     */
+    public static LDAModel dense(ParallelTopicModel topicModel) {
+        int K = topicModel.getNumTopics();
+        int numItems = topicModel.typeTopicCounts.length;
+
+        float[] itemTopics = new float[numItems * K];
+        for (int iidx = 0; iidx < numItems; iidx++) {
+            int[] qi = topicModel.typeTopicCounts[iidx];
+            int i = 0;
+            while (i < qi.length && qi[i] > 0) {
+                int z = qi[i] & topicModel.topicMask;
+                int n = qi[i] >> topicModel.topicBits;
+                itemTopics[iidx * K + z] = (float) n / topicModel.tokensPerTopic[z];
+                i++;
+            }
+        }
+
+        return new LDAModel(K, numItems, topicModel::getTopicProbabilities, itemTopics);
+    }
+
+    /**
+     * Extracts a sparse scoring model from a MALLET topic model, whose
+     * documents are the users and whose word types are the items.
+     *
+     * @param topicModel topic model
+     * @return sparse scoring model
+     */
+    public static LDAModel sparse(ParallelTopicModel topicModel) {
+        int K = topicModel.getNumTopics();
+        int numItems = topicModel.typeTopicCounts.length;
+
+        int[] offsets = new int[numItems + 1];
+        for (int iidx = 0; iidx < numItems; iidx++) {
+            int[] qi = topicModel.typeTopicCounts[iidx];
+            int i = 0;
+            while (i < qi.length && qi[i] > 0) {
+                i++;
+            }
+            offsets[iidx + 1] = offsets[iidx] + i;
+        }
+
+        int[] topics = new int[offsets[numItems]];
+        float[] values = new float[offsets[numItems]];
+        for (int iidx = 0; iidx < numItems; iidx++) {
+            int[] qi = topicModel.typeTopicCounts[iidx];
+            for (int j = offsets[iidx]; j < offsets[iidx + 1]; j++) {
+                int q = qi[j - offsets[iidx]];
+                int z = q & topicModel.topicMask;
+                topics[j] = z;
+                values[j] = (float) (q >> topicModel.topicBits) / topicModel.tokensPerTopic[z];
+            }
+        }
+
+        return new LDAModel(K, numItems, topicModel::getTopicProbabilities, offsets, topics, values);
+    }
+
+    /**
+     * Returns the number of topics.
+     *
+     * @return number of topics
+     */
+    public int numTopics() {
+        return numTopics;
+    }
+
+    /**
+     * Returns the number of items.
+     *
+     * @return number of items
+     */
+    public int numItems() {
+        return numItems;
+    }
+
+    /**
+     * Returns the topic distribution of a user. It may be expensive to
+     * compute, so it should be obtained once and reused when scoring many
+     * items for the same user.
+     *
+     * @param uidx index of the user
+     * @return topic distribution p(z|u)
+     */
+    public float[] getUserTopics(int uidx) {
+        double[] pu = userTopics.apply(uidx);
+        float[] x = new float[numTopics];
+        for (int z = 0; z < numTopics; z++) {
+            x[z] = (float) pu[z];
+        }
+
+        return x;
+    }
+
+    /**
+     * Scores an item for a user.
+     *
+     * @param pu topic distribution of the user
+     * @param iidx index of the item
+     * @return score
+     */
+    public float score(float[] pu, int iidx) {
+        if (itemTopics != null) {
+            return dot(itemTopics, iidx * numTopics, pu, 0, numTopics);
+        } else {
+            return gatherDot(topics, values, offsets[iidx], offsets[iidx + 1] - offsets[iidx], pu, 0);
+        }
+    }
+
+    /**
+     * Scores all items for a user.
+     *
+     * @param pu topic distribution of the user
+     * @param scores output array of the scores, indexed by item
+     */
+    public void scores(float[] pu, float[] scores) {
+        if (itemTopics != null) {
+            gemv(numItems, numTopics, itemTopics, 0, numTopics, pu, 0, scores, 0);
+        } else {
+            for (int iidx = 0; iidx < numItems; iidx++) {
+                scores[iidx] = gatherDot(topics, values, offsets[iidx], offsets[iidx + 1] - offsets[iidx], pu, 0);
+            }
+        }
+    }
+}
@@ -14,13 +14,25 @@ import cc.mallet.types.FeatureSequence;
 import cc.mallet.types.Instance;
 import cc.mallet.types.InstanceList;
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
-import static java.util.stream.IntStream.range;
+import java.util.function.DoubleToIntFunction;
+import static java.lang.Math.log;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 
 /**
  * LDA model estimator. See ParallelTopicModel in Mallet (http://mallet.cs.umass.edu/) for more details.
  *
+ * The corpus has a document per user in which every preference for an item
+ * is repeated as many times as tokens the value of the preference is mapped
+ * to, by default its integer part. Documents are built once, in parallel,
+ * directly from the primitive preference rows into feature sequences of
+ * their exact length, and only referenced by the topic model afterwards.
+ *
  * @author Saúl Vargas (Saul.Vargas@glasgow.ac.uk)
  */
 public class LDAModelEstimator {
@@ -40,9 +52,28 @@ public class LDAModelEstimator {
      * @throws IOException when internal IO error occurs
      */
     public static <U, I> ParallelTopicModel estimate(FastPreferenceData<U, I> preferences, int k, double alpha, double beta, int numIterations, int burninPeriod) throws IOException {
+        return estimate(preferences, counts(), k, alpha, beta, numIterations, burninPeriod);
+    }
+
+    /**
+     * Estimate a topic model for collaborative filtering data.
+     *
+     * @param <U> user type
+     * @param <I> item type
+     * @param preferences preference data
+     * @param tokens number of tokens of a preference value
+     * @param k number of topics
+     * @param alpha alpha in model
+     * @param beta beta in model
+     * @param numIterations number of iterations
+     * @param burninPeriod burnin period
+     * @return a topic model
+     * @throws IOException when internal IO error occurs
+     */
+    public static <U, I> ParallelTopicModel estimate(FastPreferenceData<U, I> preferences, DoubleToIntFunction tokens, int k, double alpha, double beta, int numIterations, int burninPeriod) throws IOException {
         
         ParallelTopicModel topicModel = new ParallelTopicModel(k, alpha * k, beta);
-        topicModel.addInstances(new LDAInstanceList<>(preferences));
+        topicModel.addInstances(corpus(preferences, tokens));
         topicModel.setTopicDisplay(numIterations + 1, 0);
         topicModel.setNumIterations(numIterations);
         topicModel.setBurninPeriod(burninPeriod);
@@ -53,6 +84,76 @@ public class LDAModelEstimator {
         return topicModel;
     }
 
+    /**
+     * Builds the corpus of a topic model for collaborative filtering data,
+     * with a document per user, in the order of the user indices. Negative
+     * numbers of tokens are taken as zero.
+     *
+     * @param <U> user type
+     * @param <I> item type
+     * @param preferences preference data
+     * @param tokens number of tokens of a preference value
+     * @return corpus of documents
+     */
+    public static <U, I> InstanceList corpus(FastPreferenceData<U, I> preferences, DoubleToIntFunction tokens) {
+        Alphabet alphabet = new LDAAlphabet(preferences.numItems());
+        Instance[] instances = new Instance[preferences.numUsers()];
+
+        preferences.getAllUidx().parallel().forEach(uidx -> {
+            int length = 0;
+            DoubleIterator vs = preferences.getUidxVs(uidx);
+            while (vs.hasNext()) {
+                length += max(0, tokens.applyAsInt(vs.nextDouble()));
+            }
+
+            FeatureSequence features = new FeatureSequence(alphabet, length);
+            IntIterator iidxs = preferences.getUidxIidxs(uidx);
+            vs = preferences.getUidxVs(uidx);
+            while (iidxs.hasNext()) {
+                int iidx = iidxs.nextInt();
+                int n = max(0, tokens.applyAsInt(vs.nextDouble()));
+                for (int j = 0; j < n; j++) {
+                    features.add(iidx);
+                }
+            }
+
+            instances[uidx] = new Instance(features, null, null, null);
+        });
+
+        return new LDAInstanceList(alphabet, instances);
+    }
+
+    /**
+     * Integer part of the preference value as number of tokens.
+     *
+     * @return number of tokens of a preference value
+     */
+    public static DoubleToIntFunction counts() {
+        return v -> (int) v;
+    }
+
+    /**
+     * Integer part of the preference value, up to a maximum, as number of
+     * tokens. It limits the weight of repeated consumption in implicit
+     * feedback.
+     *
+     * @param max maximum number of tokens of a preference
+     * @return number of tokens of a preference value
+     */
+    public static DoubleToIntFunction capped(int max) {
+        return v -> min((int) v, max);
+    }
+
+    /**
+     * Logarithmically scaled preference value, 1 + floor(ln(v)), as number
+     * of tokens. Values below 1 produce no tokens.
+     *
+     * @return number of tokens of a preference value
+     */
+    public static DoubleToIntFunction logScaled() {
+        return v -> v < 1.0 ? 0 : 1 + (int) log(v);
+    }
+
     private static class LDAAlphabet extends Alphabet {
 
         private final int numItems;
@@ -68,30 +169,30 @@ public class LDAModelEstimator {
 
     }
 
-    private static class LDAInstanceList<U, I> extends InstanceList {
+    private static class LDAInstanceList extends InstanceList {
 
-        private final FastPreferenceData<U, I> preferences;
         private final Alphabet alphabet;
+        private final Instance[] instances;
 
-        public LDAInstanceList(FastPreferenceData<U, I> preferences) {
+        public LDAInstanceList(Alphabet alphabet, Instance[] instances) {
             super(new Noop());
-            this.preferences = preferences;
-            this.alphabet = new LDAAlphabet(preferences.numItems());
+            this.alphabet = alphabet;
+            this.instances = instances;
         }
 
         @Override
         public Iterator<Instance> iterator() {
-            return preferences.getAllUidx()
-                    .mapToObj(preferences::getUidxPreferences)
-                    .map(userPreferences -> {
-                        FeatureSequence sequence = new FeatureSequence(alphabet);
-                        userPreferences
-                                .forEach(pref -> range(0, (int) pref.v2)
-                                        .forEach(i -> sequence.add(pref.v1)));
-
-                        return new Instance(sequence, null, null, null);
-                    })
-                    .iterator();
+            return Arrays.asList(instances).iterator();
+        }
+
+        @Override
+        public int size() {
+            return instances.length;
+        }
+
+        @Override
+        public Instance get(int index) {
+            return instances[index];
         }
 
         @Override
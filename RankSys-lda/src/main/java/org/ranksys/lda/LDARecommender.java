@@ -21,6 +21,8 @@ import org.ranksys.core.util.tuples.Tuple2id;
 
 /**
  * LDA recommender.  See ParallelTopicModel in Mallet (http://mallet.cs.umass.edu/) for more details.
+ * Items are scored with an {@link LDAModel}, computing the topic distribution
+ * of the user once per recommendation.
  *
  * @author Saúl Vargas (Saul.Vargas@glasgow.ac.uk)
  * 
@@ -29,18 +31,29 @@ import org.ranksys.core.util.tuples.Tuple2id;
  */
 public class LDARecommender<U, I> extends AbstractFastRecommender<U, I> {
 
-    private final ParallelTopicModel topicModel;
+    private final LDAModel model;
 
     /**
-     * Constructor
+     * Constructor. Uses the scoring model of {@link LDAModel#of(ParallelTopicModel)}.
      *
      * @param uIndex user index
      * @param iIndex item index
      * @param topicModel LDA topic model
      */
     public LDARecommender(FastUserIndex<U> uIndex, FastItemIndex<I> iIndex, ParallelTopicModel topicModel) {
+        this(uIndex, iIndex, LDAModel.of(topicModel));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param uIndex user index
+     * @param iIndex item index
+     * @param model LDA scoring model
+     */
+    public LDARecommender(FastUserIndex<U> uIndex, FastItemIndex<I> iIndex, LDAModel model) {
         super(uIndex, iIndex);
-        this.topicModel = topicModel;
+        this.model = model;
     }
 
     @Override
@@ -48,9 +61,11 @@ public class LDARecommender<U, I> extends AbstractFastRecommender<U, I> {
 
         IntDoubleTopN topN = new IntDoubleTopN(min(maxLength, numItems()));
 
-        for (int iidx = 0; iidx < numItems(); iidx++) {
+        float[] scores = new float[numItems()];
+        model.scores(model.getUserTopics(uidx), scores);
+        for (int iidx = 0; iidx < scores.length; iidx++) {
             if (filter.test(iidx)) {
-                topN.add(iidx, score(topicModel, uidx, iidx));
+                topN.add(iidx, scores[iidx]);
             }
         }
 
@@ -62,21 +77,22 @@ public class LDARecommender<U, I> extends AbstractFastRecommender<U, I> {
         return new FastRecommendation(uidx, items);
     }
 
-    private double score(ParallelTopicModel topicModel, int uidx, int iidx) {
-        double[] pu = topicModel.getTopicProbabilities(uidx);
-        int[] qi = topicModel.typeTopicCounts[iidx];
+    @Override
+    public FastRecommendation getRecommendation(int uidx, int[] candidates, int maxLength) {
 
-        double score = 0.0;
-        int i = 0;
-        while (i < qi.length && qi[i] > 0) {
-            int z = qi[i] & topicModel.topicMask;
-            int n = qi[i] >> topicModel.topicBits;
+        IntDoubleTopN topN = new IntDoubleTopN(min(maxLength, candidates.length));
 
-            score += pu[z] * (n / (double) topicModel.tokensPerTopic[z]);
-            i++;
+        float[] pu = model.getUserTopics(uidx);
+        for (int iidx : candidates) {
+            topN.add(iidx, model.score(pu, iidx));
         }
-        
-        return score;
+
+        topN.sort();
+
+        List<Tuple2id> items = topN.reverseStream()
+                .collect(toList());
+
+        return new FastRecommendation(uidx, items);
     }
-    
+
 }
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.lda;
+
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.exp;
+import static java.lang.Math.log;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.pow;
+import static java.util.stream.IntStream.range;
+import static org.ranksys.core.util.kernels.Kernels.axpy;
+import static org.ranksys.core.util.kernels.Kernels.dot;
+
+/**
+ * Online variational Bayes estimator of LDA models for collaborative
+ * filtering data, users being the documents and preference values the counts
+ * of their items.
+ *
+ * M. D. Hoffman, D. M. Blei and F. Bach. Online Learning for Latent Dirichlet
+ * Allocation. NIPS 2010.
+ *
+ * Every pass visits the users in random order, in mini-batches. The
+ * variational E-steps of the users of a mini-batch run in parallel, each
+ * thread accumulating its own sufficient statistics, and the topic-item
+ * parameters are then updated with a decreasing step size (tau0 + t)^-kappa,
+ * t being the number of the update starting at 1, so that no step exceeds 1.
+ * Negative preference values are taken as zero counts.
+ * Only the topic-item parameters are kept in memory: the topic distribution
+ * of a user is inferred when the resulting model scores items for the user,
+ * so that preferences can be read from a preference data not held in memory.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class OnlineLDAEstimator {
+
+    private static final Logger LOG = Logger.getLogger(OnlineLDAEstimator.class.getName());
+
+    private static final int MAX_E_STEP_ITER = 100;
+    private static final double E_STEP_TOLERANCE = 1e-3;
+
+    /**
+     * Estimate an LDA model for collaborative filtering data.
+     *
+     * @param <U> user type
+     * @param <I> item type
+     * @param preferences preference data
+     * @param k number of topics
+     * @param alpha prior of the topic distributions of the users
+     * @param eta prior of the item distributions of the topics
+     * @param batchSize number of users of a mini-batch, positive
+     * @param tau0 delay of the step size, down-weighting early iterations, non-negative
+     * @param kappa forgetting rate of the step size, in (0.5, 1]
+     * @param numPasses number of passes over the users
+     * @return a scoring model
+     * @throws IllegalArgumentException if batchSize is not positive, tau0
+     * is negative or kappa is not in (0.5, 1]
+     */
+    public static <U, I> LDAModel estimate(FastPreferenceData<U, I> preferences, int k, double alpha, double eta, int batchSize, double tau0, double kappa, int numPasses) {
+        return estimate(preferences, k, alpha, eta, batchSize, tau0, kappa, numPasses, new SplittableRandom());
+    }
+
+    /**
+     * Estimate an LDA model for collaborative filtering data with a seeded
+     * random number generator for the initialisation of the topic-item
+     * parameters and the order of the users. For the same seed and number of
+     * threads of the common pool, the model is the same.
+     *
+     * @param <U> user type
+     * @param <I> item type
+     * @param preferences preference data
+     * @param k number of topics
+     * @param alpha prior of the topic distributions of the users
+     * @param eta prior of the item distributions of the topics
+     * @param batchSize number of users of a mini-batch, positive
+     * @param tau0 delay of the step size, down-weighting early iterations, non-negative
+     * @param kappa forgetting rate of the step size, in (0.5, 1]
+     * @param numPasses number of passes over the users
+     * @param seed seed of the random number generator
+     * @return a scoring model
+     * @throws IllegalArgumentException if batchSize is not positive, tau0
+     * is negative or kappa is not in (0.5, 1]
+     */
+    public static <U, I> LDAModel estimate(FastPreferenceData<U, I> preferences, int k, double alpha, double eta, int batchSize, double tau0, double kappa, int numPasses, long seed) {
+        return estimate(preferences, k, alpha, eta, batchSize, tau0, kappa, numPasses, new SplittableRandom(seed));
+    }
+
+    private static <U, I> LDAModel estimate(FastPreferenceData<U, I> preferences, int k, double alpha, double eta, int batchSize, double tau0, double kappa, int numPasses, SplittableRandom rnd) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batch size must be positive");
+        }
+        // the first step, (tau0 + 1)^-kappa, must not exceed 1
+        if (!(tau0 + 1 >= 1)) {
+            throw new IllegalArgumentException("tau0 must be non-negative");
+        }
+        if (!(kappa > 0.5 && kappa <= 1)) {
+            throw new IllegalArgumentException("kappa must be in (0.5, 1]");
+        }
+
+        final int K = k;
+        final int numItems = preferences.numItems();
+        final int[] uidxs = preferences.getUidxWithPreferences().toArray();
+        final int D = uidxs.length;
+        final int maxN = preferences.getUidxWithPreferences().map(preferences::numItems).max().orElse(0);
+        final int numThreads = max(1, ForkJoinPool.getCommonPoolParallelism());
+
+        double[] lambda = new double[numItems * K];
+        for (int j = 0; j < lambda.length; j++) {
+            lambda[j] = 0.9 + 0.2 * rnd.nextDouble();
+        }
+        double[] expElogbeta = new double[numItems * K];
+        expElogbeta(lambda, expElogbeta, numItems, K);
+
+        int[] local = new int[numItems];
+        Arrays.fill(local, -1);
+        int[] batchItems = new int[numItems];
+        Scratch[] scratch = new Scratch[numThreads];
+        for (int th = 0; th < numThreads; th++) {
+            scratch[th] = new Scratch(K, maxN);
+        }
+
+        int t = 1;
+        for (int pass = 1; pass <= numPasses; pass++) {
+            long time0 = System.nanoTime();
+
+            for (int i = D - 1; i > 0; i--) {
+                int j = rnd.nextInt(i + 1);
+                int uidx = uidxs[i];
+                uidxs[i] = uidxs[j];
+                uidxs[j] = uidx;
+            }
+
+            for (int b = 0; b < D; b += batchSize) {
+                final int b0 = b;
+                final int S = min(batchSize, D - b);
+
+                int n = 0;
+                for (int j = b; j < b + S; j++) {
+                    IntIterator iidxs = preferences.getUidxIidxs(uidxs[j]);
+                    while (iidxs.hasNext()) {
+                        int iidx = iidxs.nextInt();
+                        if (local[iidx] < 0) {
+                            local[iidx] = n;
+                            batchItems[n] = iidx;
+                            n++;
+                        }
+                    }
+                }
+                final int numBatchItems = n;
+
+                double[][] sstats = new double[numThreads][];
+                range(0, numThreads).parallel().forEach(th -> {
+                    Scratch s = scratch[th];
+                    double[] ss = new double[numBatchItems * K];
+                    for (int j = b0 + th; j < b0 + S; j += numThreads) {
+                        int m = s.read(preferences, uidxs[j]);
+                        eStep(m, s, expElogbeta, K, alpha);
+                        for (int l = 0; l < m; l++) {
+                            axpy(s.counts[l] / s.phinorm[l], s.expElogtheta, 0, ss, local[s.iidxs[l]] * K, K);
+                        }
+                    }
+                    sstats[th] = ss;
+                });
+                for (int th = 1; th < numThreads; th++) {
+                    axpy(1.0, sstats[th], 0, sstats[0], 0, numBatchItems * K);
+                }
+
+                double rho = pow(tau0 + t, -kappa);
+                t++;
+                for (int j = 0; j < lambda.length; j++) {
+                    lambda[j] = (1 - rho) * lambda[j] + rho * eta;
+                }
+                double scale = rho * D / S;
+                for (int l = 0; l < numBatchItems; l++) {
+                    int iidx = batchItems[l];
+                    for (int z = 0; z < K; z++) {
+                        lambda[iidx * K + z] += scale * sstats[0][l * K + z] * expElogbeta[iidx * K + z];
+                    }
+                    local[iidx] = -1;
+                }
+                expElogbeta(lambda, expElogbeta, numItems, K);
+            }
+
+            double time = (System.nanoTime() - time0) / 1_000_000_000.0;
+            LOG.log(Level.INFO, String.format("iteration n = %3d t = %.2fs", pass, time));
+        }
+
+        double[] sums = topicSums(lambda, numItems, K);
+        float[] itemTopics = new float[numItems * K];
+        for (int iidx = 0; iidx < numItems; iidx++) {
+            for (int z = 0; z < K; z++) {
+                itemTopics[iidx * K + z] = (float) (lambda[iidx * K + z] / sums[z]);
+            }
+        }
+
+        return new LDAModel(K, numItems, uidx -> {
+            Scratch s = new Scratch(K, preferences.numItems(uidx));
+            eStep(s.read(preferences, uidx), s, expElogbeta, K, alpha);
+            double norm = 0.0;
+            for (int z = 0; z < K; z++) {
+                norm += s.gamma[z];
+            }
+            double[] pu = new double[K];
+            for (int z = 0; z < K; z++) {
+                pu[z] = s.gamma[z] / norm;
+            }
+            return pu;
+        }, itemTopics);
+    }
+
+    /**
+     * Variational E-step of a user, whose m items and counts have been read
+     * into the scratch. Leaves the topic parameters in gamma, exp(E[log
+     * theta]) in expElogtheta and the normalizers of the item-topic
+     * responsibilities in phinorm.
+     */
+    private static void eStep(int m, Scratch s, double[] expElogbeta, int K, double alpha) {
+        double[] gamma = s.gamma;
+        double[] expElogtheta = s.expElogtheta;
+        double[] phinorm = s.phinorm;
+        double[] acc = s.acc;
+
+        Arrays.fill(gamma, 1.0);
+        for (int iter = 0; iter < MAX_E_STEP_ITER; iter++) {
+            expElogtheta(gamma, expElogtheta, K);
+
+            Arrays.fill(acc, 0.0);
+            for (int l = 0; l < m; l++) {
+                int off = s.iidxs[l] * K;
+                phinorm[l] = dot(expElogtheta, 0, expElogbeta, off, K) + 1e-100;
+                axpy(s.counts[l] / phinorm[l], expElogbeta, off, acc, 0, K);
+            }
+
+            double change = 0.0;
+            for (int z = 0; z < K; z++) {
+                double g = alpha + expElogtheta[z] * acc[z];
+                change += abs(g - gamma[z]);
+                gamma[z] = g;
+            }
+            if (change / K < E_STEP_TOLERANCE) {
+                break;
+            }
+        }
+    }
+
+    private static void expElogtheta(double[] gamma, double[] expElogtheta, int K) {
+        double sum = 0.0;
+        for (int z = 0; z < K; z++) {
+            sum += gamma[z];
+        }
+        double psiSum = digamma(sum);
+        for (int z = 0; z < K; z++) {
+            expElogtheta[z] = exp(digamma(gamma[z]) - psiSum);
+        }
+    }
+
+    private static void expElogbeta(double[] lambda, double[] expElogbeta, int numItems, int K) {
+        double[] sums = topicSums(lambda, numItems, K);
+        double[] psiSums = new double[K];
+        for (int z = 0; z < K; z++) {
+            psiSums[z] = digamma(sums[z]);
+        }
+
+        range(0, numItems).parallel().forEach(iidx -> {
+            for (int z = 0; z < K; z++) {
+                expElogbeta[iidx * K + z] = exp(digamma(lambda[iidx * K + z]) - psiSums[z]);
+            }
+        });
+    }
+
+    private static double[] topicSums(double[] lambda, int numItems, int K) {
+        double[] sums = new double[K];
+        for (int iidx = 0; iidx < numItems; iidx++) {
+            axpy(1.0, lambda, iidx * K, sums, 0, K);
+        }
+
+        return sums;
+    }
+
+    /**
+     * Digamma function, by the recurrence psi(x) = psi(x + 1) - 1 / x up to
+     * x &ge; 6 and its asymptotic expansion.
+     */
+    private static double digamma(double x) {
+        double r = 0.0;
+        while (x < 6.0) {
+            r -= 1.0 / x;
+            x += 1.0;
+        }
+        double f = 1.0 / (x * x);
+
+        return r + log(x) - 0.5 / x - f * (1.0 / 12 - f * (1.0 / 120 - f * (1.0 / 252)));
+    }
+
+    /**
+     * Per-thread buffers of the E-steps, sized for the largest user.
+     */
+    private static class Scratch {
+
+        private final int[] iidxs;
+        private final double[] counts;
+        private final double[] phinorm;
+        private final double[] gamma;
+        private final double[] expElogtheta;
+        private final double[] acc;
+
+        Scratch(int K, int maxN) {
+            this.iidxs = new int[maxN];
+            this.counts = new double[maxN];
+            this.phinorm = new double[maxN];
+            this.gamma = new double[K];
+            this.expElogtheta = new double[K];
+            this.acc = new double[K];
+        }
+
+        int read(FastPreferenceData<?, ?> preferences, int uidx) {
+            IntIterator is = preferences.getUidxIidxs(uidx);
+            DoubleIterator vs = preferences.getUidxVs(uidx);
+            int m = 0;
+            while (is.hasNext()) {
+                iidxs[m] = is.nextInt();
+                counts[m] = max(0.0, vs.nextDouble());
+                m++;
+            }
+
+            return m;
+        }
+    }
+}
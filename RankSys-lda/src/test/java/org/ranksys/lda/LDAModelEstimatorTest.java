@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.lda;
+
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.InstanceList;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.fast.preference.SimpleFastPreferenceData;
+import java.util.function.DoubleToIntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Test for LDAModelEstimator.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class LDAModelEstimatorTest {
+
+    private final FastPreferenceData<Integer, Integer> preferences;
+
+    /**
+     * Constructor, with a user of several values, a user with a negative
+     * value and a user without preferences.
+     */
+    public LDAModelEstimatorTest() {
+        preferences = SimpleFastPreferenceData.load(Stream.of(
+                tuple(0, 0, 1.0),
+                tuple(0, 1, 3.7),
+                tuple(0, 2, 0.5),
+                tuple(0, 3, 10.0),
+                tuple(1, 1, -3.0),
+                tuple(1, 2, 2.0)),
+                SimpleFastUserIndex.load(IntStream.range(0, 3).boxed()),
+                SimpleFastItemIndex.load(IntStream.range(0, 4).boxed()));
+    }
+
+    private static int[] document(InstanceList corpus, int uidx) {
+        FeatureSequence features = (FeatureSequence) corpus.get(uidx).getData();
+        int[] document = new int[features.getLength()];
+        for (int j = 0; j < document.length; j++) {
+            document[j] = features.getIndexAtPosition(j);
+        }
+
+        return document;
+    }
+
+    private void assertCorpus(DoubleToIntFunction tokens, int[]... expected) {
+        InstanceList corpus = LDAModelEstimator.corpus(preferences, tokens);
+        assertEquals(expected.length, corpus.size());
+        assertEquals(4, corpus.getDataAlphabet().size());
+        for (int uidx = 0; uidx < expected.length; uidx++) {
+            assertArrayEquals(expected[uidx], document(corpus, uidx));
+        }
+    }
+
+    /**
+     * Tests the corpus with the integer part of the values.
+     */
+    @Test
+    public void testCounts() {
+        assertCorpus(LDAModelEstimator.counts(),
+                new int[]{0, 1, 1, 1, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3},
+                new int[]{2, 2},
+                new int[]{});
+    }
+
+    /**
+     * Tests the corpus with capped counts.
+     */
+    @Test
+    public void testCapped() {
+        assertCorpus(LDAModelEstimator.capped(2),
+                new int[]{0, 1, 1, 3, 3},
+                new int[]{2, 2},
+                new int[]{});
+    }
+
+    /**
+     * Tests the corpus with logarithmically scaled counts.
+     */
+    @Test
+    public void testLogScaled() {
+        assertCorpus(LDAModelEstimator.logScaled(),
+                new int[]{0, 1, 1, 3, 3, 3},
+                new int[]{2},
+                new int[]{});
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.lda;
+
+import cc.mallet.topics.ParallelTopicModel;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.fast.preference.SimpleFastPreferenceData;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import org.jooq.lambda.tuple.Tuple3;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import org.junit.Test;
+
+/**
+ * Test for LDAModel.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class LDAModelTest {
+
+    private static final int K = 4;
+    private static final int NUM_USERS = 30;
+    private static final int NUM_ITEMS = 40;
+
+    private final ParallelTopicModel topicModel;
+
+    /**
+     * Constructor, estimating a topic model on a small corpus.
+     *
+     * @throws IOException when internal IO error occurs
+     */
+    public LDAModelTest() throws IOException {
+        Random random = new Random(1);
+        List<Tuple3<Integer, Integer, Double>> prefs = new ArrayList<>();
+        for (int u = 0; u < NUM_USERS; u++) {
+            for (int i = 0; i < NUM_ITEMS; i++) {
+                if (i % 3 == u % 3 && random.nextDouble() < 0.5) {
+                    prefs.add(tuple(u, i, 1.0 + random.nextInt(3)));
+                }
+            }
+        }
+        FastPreferenceData<Integer, Integer> preferences = SimpleFastPreferenceData.load(prefs.stream(),
+                SimpleFastUserIndex.load(IntStream.range(0, NUM_USERS).boxed()),
+                SimpleFastItemIndex.load(IntStream.range(0, NUM_ITEMS).boxed()));
+
+        topicModel = LDAModelEstimator.estimate(preferences, K, 0.1, 0.01, 50, 10);
+    }
+
+    /**
+     * Score of an item for a user as computed pair by pair from the counts
+     * of the topic model, before the scoring model.
+     */
+    private double perPairScore(int uidx, int iidx) {
+        double[] pu = topicModel.getTopicProbabilities(uidx);
+        int[] qi = topicModel.typeTopicCounts[iidx];
+
+        double score = 0.0;
+        int i = 0;
+        while (i < qi.length && qi[i] > 0) {
+            int z = qi[i] & topicModel.topicMask;
+            int n = qi[i] >> topicModel.topicBits;
+            score += pu[z] / topicModel.tokensPerTopic[z] * n;
+            i++;
+        }
+
+        return score;
+    }
+
+    /**
+     * Tests that the dense and sparse tables give the same scores, item by
+     * item and for all items at once.
+     */
+    @Test
+    public void testDenseSparse() {
+        LDAModel dense = LDAModel.dense(topicModel);
+        LDAModel sparse = LDAModel.sparse(topicModel);
+        assertEquals(K, dense.numTopics());
+        assertEquals(K, sparse.numTopics());
+        assertEquals(NUM_ITEMS, dense.numItems());
+        assertEquals(NUM_ITEMS, sparse.numItems());
+
+        float[] denseScores = new float[NUM_ITEMS];
+        float[] sparseScores = new float[NUM_ITEMS];
+        for (int uidx = 0; uidx < NUM_USERS; uidx++) {
+            float[] pu = dense.getUserTopics(uidx);
+            dense.scores(pu, denseScores);
+            sparse.scores(pu, sparseScores);
+            for (int iidx = 0; iidx < NUM_ITEMS; iidx++) {
+                assertEquals(dense.score(pu, iidx), sparse.score(pu, iidx), 1e-6f);
+                assertEquals(dense.score(pu, iidx), denseScores[iidx], 1e-6f);
+                assertEquals(sparse.score(pu, iidx), sparseScores[iidx], 1e-6f);
+            }
+        }
+    }
+
+    /**
+     * Tests that both tables match the per-pair scores of the topic model.
+     */
+    @Test
+    public void testPerPairScore() {
+        LDAModel dense = LDAModel.dense(topicModel);
+        LDAModel sparse = LDAModel.sparse(topicModel);
+
+        double sum = 0.0;
+        for (int uidx = 0; uidx < NUM_USERS; uidx++) {
+            float[] pu = dense.getUserTopics(uidx);
+            for (int iidx = 0; iidx < NUM_ITEMS; iidx++) {
+                double expected = perPairScore(uidx, iidx);
+                assertEquals(expected, dense.score(pu, iidx), 1e-5);
+                assertEquals(expected, sparse.score(pu, iidx), 1e-5);
+                sum += expected;
+            }
+        }
+        assertNotEquals(0.0, sum, 0.0);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.lda;
+
+import cc.mallet.topics.ParallelTopicModel;
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.fast.preference.SimpleFastPreferenceData;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import org.jooq.lambda.tuple.Tuple3;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.ranksys.core.util.tuples.Tuple2id;
+
+/**
+ * Test for LDARecommender.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class LDARecommenderTest {
+
+    private static final int K = 4;
+    private static final int NUM_USERS = 30;
+    private static final int NUM_ITEMS = 40;
+
+    private final FastUserIndex<Integer> uIndex;
+    private final FastItemIndex<Integer> iIndex;
+    private final ParallelTopicModel topicModel;
+
+    /**
+     * Constructor, estimating a topic model on a small corpus.
+     *
+     * @throws IOException when internal IO error occurs
+     */
+    public LDARecommenderTest() throws IOException {
+        Random random = new Random(1);
+        List<Tuple3<Integer, Integer, Double>> prefs = new ArrayList<>();
+        for (int u = 0; u < NUM_USERS; u++) {
+            for (int i = 0; i < NUM_ITEMS; i++) {
+                if (i % 3 == u % 3 && random.nextDouble() < 0.5) {
+                    prefs.add(tuple(u, i, 1.0 + random.nextInt(3)));
+                }
+            }
+        }
+        uIndex = SimpleFastUserIndex.load(IntStream.range(0, NUM_USERS).boxed());
+        iIndex = SimpleFastItemIndex.load(IntStream.range(0, NUM_ITEMS).boxed());
+        FastPreferenceData<Integer, Integer> preferences = SimpleFastPreferenceData.load(prefs.stream(), uIndex, iIndex);
+
+        topicModel = LDAModelEstimator.estimate(preferences, K, 0.1, 0.01, 50, 10);
+    }
+
+    private void assertCandidates(LDARecommender<Integer, Integer> recommender) {
+        Random random = new Random(2);
+        for (int uidx = 0; uidx < NUM_USERS; uidx++) {
+            int[] candidates = IntStream.range(0, NUM_ITEMS)
+                    .filter(iidx -> random.nextDouble() < 0.5)
+                    .toArray();
+            IntSet set = new IntOpenHashSet(candidates);
+
+            for (int maxLength : new int[]{5, candidates.length, Integer.MAX_VALUE}) {
+                List<Tuple2id> expected = recommender.getRecommendation(uidx, maxLength, set::contains).getIidxs();
+                List<Tuple2id> result = recommender.getRecommendation(uidx, candidates, maxLength).getIidxs();
+
+                assertEquals(expected.size(), result.size());
+                for (int j = 0; j < expected.size(); j++) {
+                    assertEquals(expected.get(j).v1, result.get(j).v1);
+                    assertEquals(expected.get(j).v2, result.get(j).v2, 1e-6);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that the candidates ranking matches the filter recommendation
+     * with the dense table.
+     */
+    @Test
+    public void testCandidatesDense() {
+        assertCandidates(new LDARecommender<>(uIndex, iIndex, LDAModel.dense(topicModel)));
+    }
+
+    /**
+     * Tests that the candidates ranking matches the filter recommendation
+     * with the sparse table.
+     */
+    @Test
+    public void testCandidatesSparse() {
+        assertCandidates(new LDARecommender<>(uIndex, iIndex, LDAModel.sparse(topicModel)));
+    }
+}
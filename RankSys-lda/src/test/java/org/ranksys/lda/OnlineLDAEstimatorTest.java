@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.lda;
+
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.fast.preference.SimpleFastPreferenceData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import org.jooq.lambda.tuple.Tuple3;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test for OnlineLDAEstimator.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class OnlineLDAEstimatorTest {
+
+    private static final int K = 4;
+    private static final int NUM_USERS = 30;
+    private static final int NUM_ITEMS = 20;
+
+    private final FastPreferenceData<Integer, Integer> preferences;
+
+    /**
+     * Constructor, generating a small corpus in which every user has items of
+     * one of two blocks, some of them with negative values.
+     */
+    public OnlineLDAEstimatorTest() {
+        Random random = new Random(1);
+        List<Tuple3<Integer, Integer, Double>> prefs = new ArrayList<>();
+        for (int u = 0; u < NUM_USERS; u++) {
+            int block = u % 2;
+            for (int i = 0; i < NUM_ITEMS; i++) {
+                if (i % 2 == block && random.nextDouble() < 0.6) {
+                    prefs.add(tuple(u, i, 1.0 + random.nextInt(5)));
+                } else if (random.nextDouble() < 0.05) {
+                    prefs.add(tuple(u, i, -1.0));
+                }
+            }
+        }
+
+        preferences = SimpleFastPreferenceData.load(prefs.stream(),
+                SimpleFastUserIndex.load(IntStream.range(0, NUM_USERS).boxed()),
+                SimpleFastItemIndex.load(IntStream.range(0, NUM_ITEMS).boxed()));
+    }
+
+    /**
+     * Tests that the topic distributions of the users and the item
+     * distributions of the topics of a seeded estimate are finite and
+     * normalized.
+     */
+    @Test
+    public void testDistributions() {
+        LDAModel model = OnlineLDAEstimator.estimate(preferences, K, 0.1, 0.01, 8, 0.0, 0.7, 5, 1L);
+        assertEquals(K, model.numTopics());
+        assertEquals(NUM_ITEMS, model.numItems());
+
+        for (int uidx = 0; uidx < NUM_USERS; uidx++) {
+            float[] pu = model.getUserTopics(uidx);
+            double sum = 0.0;
+            for (int z = 0; z < K; z++) {
+                assertTrue(pu[z] + " for user " + uidx, Float.isFinite(pu[z]) && pu[z] >= 0.0f);
+                sum += pu[z];
+            }
+            assertEquals(1.0, sum, 1e-4);
+        }
+
+        for (int z = 0; z < K; z++) {
+            float[] ez = new float[K];
+            ez[z] = 1.0f;
+            double sum = 0.0;
+            for (int iidx = 0; iidx < NUM_ITEMS; iidx++) {
+                float p = model.score(ez, iidx);
+                assertTrue(p + " for topic " + z, Float.isFinite(p) && p >= 0.0f);
+                sum += p;
+            }
+            assertEquals(1.0, sum, 1e-4);
+        }
+    }
+
+    /**
+     * Tests that the same seed gives the same model.
+     */
+    @Test
+    public void testSeed() {
+        LDAModel model1 = OnlineLDAEstimator.estimate(preferences, K, 0.1, 0.01, 8, 1.0, 0.7, 3, 1L);
+        LDAModel model2 = OnlineLDAEstimator.estimate(preferences, K, 0.1, 0.01, 8, 1.0, 0.7, 3, 1L);
+
+        float[] ez = new float[K];
+        for (int z = 0; z < K; z++) {
+            ez[z] = 1.0f;
+            for (int iidx = 0; iidx < NUM_ITEMS; iidx++) {
+                assertEquals(model1.score(ez, iidx), model2.score(ez, iidx), 0.0f);
+            }
+            ez[z] = 0.0f;
+        }
+    }
+
+    /**
+     * Tests a non-positive batch size.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchSize() {
+        OnlineLDAEstimator.estimate(preferences, K, 0.1, 0.01, 0, 1.0, 0.7, 1, 1L);
+    }
+
+    /**
+     * Tests a negative delay, whose first steps would exceed 1.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testTau0() {
+        OnlineLDAEstimator.estimate(preferences, K, 0.1, 0.01, 8, -0.5, 0.7, 1, 1L);
+    }
+
+    /**
+     * Tests a forgetting rate outside (0.5, 1].
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testKappa() {
+        OnlineLDAEstimator.estimate(preferences, K, 0.1, 0.01, 8, 1.0, 0.5, 1, 1L);
+    }
+}
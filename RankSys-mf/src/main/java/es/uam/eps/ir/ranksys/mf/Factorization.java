@@ -13,9 +13,18 @@ import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.impl.DenseDoubleMatrix2D;
 import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
 import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import java.util.concurrent.atomic.AtomicLong;
+import org.ranksys.mf.FlatDoubleMatrix2D;
 
 /**
- * Matrix factorization.
+ * Matrix factorization. User and item matrices are stored in flat row-major
+ * arrays (see {@link FlatDoubleMatrix2D}), which can also be accessed as
+ * Colt matrices.
+ *
+ * The factorization counts its modifications, so that copies derived from
+ * its matrices (such as quantized item matrices) can tell when they are
+ * stale. Factorizers and {@link #grow} record their modifications; code
+ * writing to the matrices directly should call {@link #markModified}.
  *
  * @author Saúl Vargas (saul.vargas@uam.es)
  *
@@ -27,12 +36,12 @@ public class Factorization<U, I> implements FastItemIndex<I>, FastUserIndex<U> {
     /**
      * user matrix
      */
-    protected final DenseDoubleMatrix2D userMatrix;
+    protected FlatDoubleMatrix2D userMatrix;
 
     /**
      * item matrix
      */
-    protected final DenseDoubleMatrix2D itemMatrix;
+    protected FlatDoubleMatrix2D itemMatrix;
 
     /**
      * dimensionality of the vector space
@@ -42,12 +51,14 @@ public class Factorization<U, I> implements FastItemIndex<I>, FastUserIndex<U> {
     /**
      * user index
      */
-    protected final FastUserIndex<U> uIndex;
+    protected FastUserIndex<U> uIndex;
 
     /**
      * item index
      */
-    protected final FastItemIndex<I> iIndex;
+    protected FastItemIndex<I> iIndex;
+
+    private final AtomicLong version = new AtomicLong(0L);
 
     /**
      * Constructor.
@@ -58,9 +69,9 @@ public class Factorization<U, I> implements FastItemIndex<I>, FastUserIndex<U> {
      * @param initFunction function to initialize the cells of the matrices
      */
     public Factorization(FastUserIndex<U> uIndex, FastItemIndex<I> iIndex, int K, DoubleFunction initFunction) {
-        this.userMatrix = new DenseDoubleMatrix2D(uIndex.numUsers(), K);
+        this.userMatrix = new FlatDoubleMatrix2D(uIndex.numUsers(), K);
         this.userMatrix.assign(initFunction);
-        this.itemMatrix = new DenseDoubleMatrix2D(iIndex.numItems(), K);
+        this.itemMatrix = new FlatDoubleMatrix2D(iIndex.numItems(), K);
         this.itemMatrix.assign(initFunction);
         this.K = K;
         this.uIndex = uIndex;
@@ -68,7 +79,8 @@ public class Factorization<U, I> implements FastItemIndex<I>, FastUserIndex<U> {
     }
 
     /**
-     * Constructor for stored factorizations.
+     * Constructor for stored factorizations. Matrices that are not flat are
+     * copied.
      *
      * @param uIndex fast user index
      * @param iIndex fast item index
@@ -77,8 +89,8 @@ public class Factorization<U, I> implements FastItemIndex<I>, FastUserIndex<U> {
      * @param K dimension of the latent feature space
      */
     public Factorization(FastUserIndex<U> uIndex, FastItemIndex<I> iIndex, DenseDoubleMatrix2D userMatrix, DenseDoubleMatrix2D itemMatrix, int K) {
-        this.userMatrix = userMatrix;
-        this.itemMatrix = itemMatrix;
+        this.userMatrix = FlatDoubleMatrix2D.of(userMatrix);
+        this.itemMatrix = FlatDoubleMatrix2D.of(itemMatrix);
         this.K = K;
         this.uIndex = uIndex;
         this.iIndex = iIndex;
@@ -159,7 +171,7 @@ public class Factorization<U, I> implements FastItemIndex<I>, FastUserIndex<U> {
      *
      * @return the whole user matrix
      */
-    public DenseDoubleMatrix2D getUserMatrix() {
+    public FlatDoubleMatrix2D getUserMatrix() {
         return userMatrix;
     }
 
@@ -168,10 +180,43 @@ public class Factorization<U, I> implements FastItemIndex<I>, FastUserIndex<U> {
      *
      * @return the whole item matrix
      */
-    public DenseDoubleMatrix2D getItemMatrix() {
+    public FlatDoubleMatrix2D getItemMatrix() {
         return itemMatrix;
     }
 
+    /**
+     * Grows the factorization to new user and item indices, which must keep
+     * the indices of the existing users and items. The vectors of the new
+     * users and items are zero. Spare capacity of the matrices is reused,
+     * so repeated small updates do not copy the whole factorization.
+     *
+     * @param uIndex extended fast user index
+     * @param iIndex extended fast item index
+     */
+    public void grow(FastUserIndex<U> uIndex, FastItemIndex<I> iIndex) {
+        this.userMatrix = userMatrix.withRows(uIndex.numUsers());
+        this.itemMatrix = itemMatrix.withRows(iIndex.numItems());
+        this.uIndex = uIndex;
+        this.iIndex = iIndex;
+        markModified();
+    }
+
+    /**
+     * Records a modification of the matrices of the factorization.
+     */
+    public void markModified() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of recorded modifications of the factorization.
+     *
+     * @return number of modifications
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
     /**
      * Returns the dimension of the latent feature space.
      *
@@ -9,6 +9,9 @@
 package es.uam.eps.ir.ranksys.mf;
 
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import java.util.ArrayList;
+import java.util.List;
+import org.ranksys.mf.train.TrainingListener;
 
 /**
  * Factorizer. Abstract class for matrix factorization algorithms.
@@ -20,6 +23,34 @@ import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
  */
 public abstract class Factorizer<U, I> {
 
+    private final List<TrainingListener<U, I>> listeners = new ArrayList<>();
+
+    /**
+     * Adds a listener that is notified after every iteration of the
+     * iterative factorizers, and which may stop the training.
+     *
+     * @param listener training listener
+     */
+    public void addListener(TrainingListener<U, I> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Notifies the listeners of the end of an iteration.
+     *
+     * @param iter number of the iteration, starting at 1
+     * @param factorization factorization after the iteration
+     * @return true if training should continue, false if a listener requested to stop
+     */
+    protected boolean iterationDone(int iter, Factorization<U, I> factorization) {
+        boolean proceed = true;
+        for (TrainingListener<U, I> listener : listeners) {
+            proceed &= listener.iteration(iter, factorization);
+        }
+
+        return proceed;
+    }
+
     /**
      * Global loss of the factorization.
      *
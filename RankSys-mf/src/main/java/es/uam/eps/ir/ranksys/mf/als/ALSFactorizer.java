@@ -9,20 +9,33 @@
 package es.uam.eps.ir.ranksys.mf.als;
 
 import cern.colt.function.DoubleFunction;
-import cern.colt.matrix.impl.DenseDoubleMatrix2D;
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
 import es.uam.eps.ir.ranksys.mf.Factorization;
 import es.uam.eps.ir.ranksys.mf.Factorizer;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
 import static java.lang.Math.sqrt;
+import static java.util.Arrays.fill;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.IntStream;
+import org.ranksys.mf.FlatDoubleMatrix2D;
 
 /**
  * Generic alternating least-squares factorizer.
  *
+ * Subclasses implement the least-squares steps over flat matrices and for
+ * an explicit stream of rows, so that the same steps serve both full
+ * iterations and fold-in. Implementations written against the former
+ * {@code set_minP(DenseDoubleMatrix2D, DenseDoubleMatrix2D, FastPreferenceData)}
+ * hooks need to adopt the new signatures.
+ *
+ * Factorizing and folding in are synchronized on the factorizer, so that
+ * subclasses can keep values derived from the factors between calls, such
+ * as Gram matrices. These are dropped through {@link #invalidateCaches}
+ * whenever the factorization has been modified by other means since the last
+ * call, as told by {@link Factorization#getVersion}.
+ *
  * @author Saúl Vargas (saul.vargas@uam.es)
  *
  * @param <U> type of the users
@@ -33,6 +46,7 @@ public abstract class ALSFactorizer<U, I> extends Factorizer<U, I> {
     private static final Logger LOG = Logger.getLogger(ALSFactorizer.class.getName());
 
     private final int numIter;
+    private long version = -1;
 
     /**
      * Constructor.
@@ -46,8 +60,8 @@ public abstract class ALSFactorizer<U, I> extends Factorizer<U, I> {
     @Override
     public double error(Factorization<U, I> factorization, FastPreferenceData<U, I> data) {
 
-        DenseDoubleMatrix2D p = factorization.getUserMatrix();
-        DenseDoubleMatrix2D q = factorization.getItemMatrix();
+        FlatDoubleMatrix2D p = factorization.getUserMatrix();
+        FlatDoubleMatrix2D q = factorization.getItemMatrix();
 
         return error(p, q, data);
     }
@@ -61,28 +75,94 @@ public abstract class ALSFactorizer<U, I> extends Factorizer<U, I> {
     }
 
     @Override
-    public void factorize(Factorization<U, I> factorization, FastPreferenceData<U, I> data) {
+    public synchronized void factorize(Factorization<U, I> factorization, FastPreferenceData<U, I> data) {
+        invalidateCaches();
 
-        DenseDoubleMatrix2D p = factorization.getUserMatrix();
-        DenseDoubleMatrix2D q = factorization.getItemMatrix();
+        FlatDoubleMatrix2D p = factorization.getUserMatrix();
+        FlatDoubleMatrix2D q = factorization.getItemMatrix();
 
         IntSet uidxs = new IntOpenHashSet(data.getUidxWithPreferences().toArray());
-        IntStream.range(0, p.rows()).filter(uidx -> !uidxs.contains(uidx)).forEach(uidx -> p.viewRow(uidx).assign(0.0));
+        IntStream.range(0, p.rows()).filter(uidx -> !uidxs.contains(uidx)).forEach(uidx -> fill(p.elements(), p.offset(uidx), p.offset(uidx) + p.columns(), 0.0));
         IntSet iidxs = new IntOpenHashSet(data.getIidxWithPreferences().toArray());
-        IntStream.range(0, q.rows()).filter(iidx -> !iidxs.contains(iidx)).forEach(iidx -> q.viewRow(iidx).assign(0.0));
+        IntStream.range(0, q.rows()).filter(iidx -> !iidxs.contains(iidx)).forEach(iidx -> fill(q.elements(), q.offset(iidx), q.offset(iidx) + q.columns(), 0.0));
 
         for (int t = 1; t <= numIter; t++) {
             long time0 = System.nanoTime();
 
-            set_minQ(q, p, data);
-            set_minP(p, q, data);
+            set_minQ(q, p, data, data.getIidxWithPreferences());
+            set_minP(p, q, data, data.getUidxWithPreferences());
 
             int iter = t;
             long time1 = System.nanoTime() - time0;
 
             LOG.log(Level.INFO, String.format("iteration n = %3d t = %.2fs", iter, time1 / 1_000_000_000.0));
             LOG.log(Level.FINE, () -> String.format("iteration n = %3d e = %.6f", iter, error(factorization, data)));
+
+            if (!iterationDone(iter, factorization)) {
+                break;
+            }
+        }
+
+        factorization.markModified();
+        version = factorization.getVersion();
+    }
+
+    /**
+     * Folds in new or changed users: computes their vectors against the
+     * fixed item matrix, without modifying the rest of the factorization.
+     * The factorization grows to the size of the user and item indices of
+     * the preference data, which must extend those of the factorization.
+     *
+     * @param factorization matrix factorization
+     * @param data preference data, including the preferences of the users
+     * @param uidxs indices of the users to be (re)computed
+     */
+    public synchronized void foldInUsers(Factorization<U, I> factorization, FastPreferenceData<U, I> data, int[] uidxs) {
+        long time0 = System.nanoTime();
+
+        if (factorization.getVersion() != version) {
+            invalidateCaches();
+        }
+        factorization.grow(data, data);
+        set_minP(factorization.getUserMatrix(), factorization.getItemMatrix(), data, IntStream.of(uidxs));
+        factorization.markModified();
+        version = factorization.getVersion();
+
+        long time1 = System.nanoTime() - time0;
+        LOG.log(Level.INFO, String.format("fold-in users n = %d t = %.2fs", uidxs.length, time1 / 1_000_000_000.0));
+    }
+
+    /**
+     * Folds in new or changed items: computes their vectors against the
+     * fixed user matrix, without modifying the rest of the factorization.
+     * The factorization grows to the size of the user and item indices of
+     * the preference data, which must extend those of the factorization.
+     *
+     * @param factorization matrix factorization
+     * @param data preference data, including the preferences for the items
+     * @param iidxs indices of the items to be (re)computed
+     */
+    public synchronized void foldInItems(Factorization<U, I> factorization, FastPreferenceData<U, I> data, int[] iidxs) {
+        long time0 = System.nanoTime();
+
+        if (factorization.getVersion() != version) {
+            invalidateCaches();
         }
+        factorization.grow(data, data);
+        set_minQ(factorization.getItemMatrix(), factorization.getUserMatrix(), data, IntStream.of(iidxs));
+        factorization.markModified();
+        version = factorization.getVersion();
+
+        long time1 = System.nanoTime() - time0;
+        LOG.log(Level.INFO, String.format("fold-in items n = %d t = %.2fs", iidxs.length, time1 / 1_000_000_000.0));
+    }
+
+    /**
+     * Drops the values derived from the factors that are kept between calls.
+     * Called before factorizing, and before folding in when the factorization
+     * has been modified by other means. Does nothing by default.
+     */
+    protected void invalidateCaches() {
     }
 
     /**
@@ -93,7 +173,7 @@ public abstract class ALSFactorizer<U, I> extends Factorizer<U, I> {
      * @param data preference data
      * @return squared loss
      */
-    protected abstract double error(DenseDoubleMatrix2D p, DenseDoubleMatrix2D q, FastPreferenceData<U, I> data);
+    protected abstract double error(FlatDoubleMatrix2D p, FlatDoubleMatrix2D q, FastPreferenceData<U, I> data);
 
     /**
      * User matrix least-squares step.
@@ -101,8 +181,9 @@ public abstract class ALSFactorizer<U, I> extends Factorizer<U, I> {
      * @param p user matrix
      * @param q item matrix
      * @param data preference data
+     * @param uidxs users whose vectors are computed
      */
-    protected abstract void set_minP(DenseDoubleMatrix2D p, DenseDoubleMatrix2D q, FastPreferenceData<U, I> data);
+    protected abstract void set_minP(FlatDoubleMatrix2D p, FlatDoubleMatrix2D q, FastPreferenceData<U, I> data, IntStream uidxs);
 
     /**
      * Item matrix least-squares step.
@@ -110,6 +191,7 @@ public abstract class ALSFactorizer<U, I> extends Factorizer<U, I> {
      * @param q item matrix
      * @param p user matrix
      * @param data preference data
+     * @param iidxs items whose vectors are computed
      */
-    protected abstract void set_minQ(DenseDoubleMatrix2D q, DenseDoubleMatrix2D p, FastPreferenceData<U, I> data);
+    protected abstract void set_minQ(FlatDoubleMatrix2D q, FlatDoubleMatrix2D p, FastPreferenceData<U, I> data, IntStream iidxs);
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.ranksys.mf.als;
+
+import java.util.function.Function;
+import org.ranksys.mf.FlatDoubleMatrix2D;
+
+/**
+ * Matrix derived from the fixed side of a least-squares step, such as its
+ * regularized Gram matrix. It is kept between steps for as long as that side
+ * is not modified, so that consecutive fold-ins do not recompute it. The
+ * value is tied to the backing array of the side: growing a matrix in place
+ * only adds zero rows, which leave the Gram matrix unchanged. It is not
+ * synchronized: {@link ALSFactorizer} serializes the calls that use it and
+ * invalidates it when the factorization was modified by other means.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+final class GramCache {
+
+    private double[] key;
+    private double[] value;
+
+    /**
+     * Returns the cached matrix for the given side, computing it if the
+     * cache is empty or belongs to another matrix.
+     *
+     * @param q fixed side
+     * @param compute function computing the matrix from the side
+     * @return flat matrix derived from the side
+     */
+    double[] get(FlatDoubleMatrix2D q, Function<FlatDoubleMatrix2D, double[]> compute) {
+        if (value == null || key != q.elements()) {
+            value = compute.apply(q);
+            key = q.elements();
+        }
+
+        return value;
+    }
+
+    /**
+     * Empties the cache, to be called whenever the side is modified.
+     */
+    void invalidate() {
+        key = null;
+        value = null;
+    }
+}
@@ -12,17 +12,38 @@ import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
 import cern.colt.matrix.impl.DenseDoubleMatrix1D;
 import cern.colt.matrix.impl.DenseDoubleMatrix2D;
-import cern.colt.matrix.linalg.Algebra;
 import cern.colt.matrix.linalg.LUDecompositionQuick;
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
 import es.uam.eps.ir.ranksys.fast.preference.TransposedPreferenceData;
+import es.uam.eps.ir.ranksys.mf.Factorization;
+import org.ranksys.mf.FlatDoubleMatrix2D;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import java.util.concurrent.atomic.DoubleAdder;
 import java.util.function.DoubleUnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.sqrt;
+import static org.ranksys.core.util.kernels.Kernels.axpy;
+import static org.ranksys.core.util.kernels.Kernels.dot;
+import static org.ranksys.core.util.kernels.Kernels.gemv;
 
 /**
  * Implicit matrix factorization of Hu, Koren and Volinsky.
  *
  * Y. Hu, Y. Koren, C. Volinsky. Collaborative filtering for implicit feedback
  * datasets. ICDM 2008.
+ *
+ * Optionally, the least-squares problems can be approximately solved by a few
+ * conjugate gradient steps warm-started from the previous factors, as in
+ * G. Takács, I. Pilászy, D. Tikk. Applications of the conjugate gradient
+ * method for implicit feedback collaborative filtering. RecSys 2011.
+ *
+ * The regularized Gram matrices of both sides are kept after factorizing,
+ * so that folding in users or items only recomputes the one of the side
+ * modified since.
  * 
  * @author Saúl Vargas (saul.vargas@uam.es)
  * 
@@ -31,10 +52,14 @@ import java.util.function.DoubleUnaryOperator;
  */
 public class HKVFactorizer<U, I> extends ALSFactorizer<U, I> {
 
-    private static final Algebra ALG = new Algebra();
+    private static final Logger LOG = Logger.getLogger(HKVFactorizer.class.getName());
+
     private final double lambdaP;
     private final double lambdaQ;
     private final DoubleUnaryOperator confidence;
+    private final int numCGIter;
+    private final GramCache gramP;
+    private final GramCache gramQ;
 
     /**
      * Constructor. Same regularization factor for user and item matrices.
@@ -56,81 +81,229 @@ public class HKVFactorizer<U, I> extends ALSFactorizer<U, I> {
      * @param numIter number of iterations
      */
     public HKVFactorizer(double lambdaP, double lambdaQ, DoubleUnaryOperator confidence, int numIter) {
+        this(lambdaP, lambdaQ, confidence, numIter, 0);
+    }
+
+    /**
+     * Constructor. Same regularization factor for user and item matrices,
+     * conjugate gradient solver.
+     *
+     * @param lambda regularization factor
+     * @param confidence confidence function
+     * @param numIter number of iterations
+     * @param numCGIter number of conjugate gradient steps per least-squares
+     * problem, 0 for an exact solution
+     */
+    public HKVFactorizer(double lambda, DoubleUnaryOperator confidence, int numIter, int numCGIter) {
+        this(lambda, lambda, confidence, numIter, numCGIter);
+    }
+
+    /**
+     * Constructor. Different regularization factors for user and item
+     * matrices, conjugate gradient solver.
+     *
+     * @param lambdaP regularization factor for user matrix
+     * @param lambdaQ regularization factor for item matrix
+     * @param confidence confidence function
+     * @param numIter number of iterations
+     * @param numCGIter number of conjugate gradient steps per least-squares
+     * problem, 0 for an exact solution
+     */
+    public HKVFactorizer(double lambdaP, double lambdaQ, DoubleUnaryOperator confidence, int numIter, int numCGIter) {
         super(numIter);
         this.lambdaP = lambdaP;
         this.lambdaQ = lambdaQ;
         this.confidence = confidence;
+        this.numCGIter = numCGIter;
+        this.gramP = new GramCache();
+        this.gramQ = new GramCache();
+    }
+
+    @Override
+    protected void invalidateCaches() {
+        gramP.invalidate();
+        gramQ.invalidate();
     }
 
     @Override
-    public double error(DenseDoubleMatrix2D p, DenseDoubleMatrix2D q, FastPreferenceData<U, I> data) {
+    public double error(FlatDoubleMatrix2D p, FlatDoubleMatrix2D q, FastPreferenceData<U, I> data) {
+        return error(p, q, confidence, data);
+    }
+
+    /**
+     * Squared loss of the implicit model, shared with {@link PZTFactorizer}.
+     *
+     * @param p user matrix
+     * @param q item matrix
+     * @param confidence confidence function
+     * @param data preference data
+     * @return squared loss
+     */
+    static double error(FlatDoubleMatrix2D p, FlatDoubleMatrix2D q, DoubleUnaryOperator confidence, FastPreferenceData<?, ?> data) {
         // TODO: add regularization
-        
+
+        final int K = p.columns();
+        final double[] pa = p.elements();
+        final double[] qa = q.elements();
+        final double c0 = confidence.applyAsDouble(0);
+
         return data.getUidxWithPreferences().parallel().mapToDouble(uidx -> {
-            DoubleMatrix1D pu = p.viewRow(uidx);
-            DoubleMatrix1D su = q.zMult(pu, null);
-            
-            double err1 = data.getUidxPreferences(uidx).mapToDouble(iv -> {
-                double rui = iv.v2;
-                double sui = su.getQuick(iv.v1);
+            double[] su = new double[q.rows()];
+            gemv(q.rows(), K, qa, 0, q.stride(), pa, p.offset(uidx), su, 0);
+
+            double err1 = 0.0;
+            IntIterator iidxs = data.getUidxIidxs(uidx);
+            DoubleIterator ivs = data.getUidxVs(uidx);
+            while (iidxs.hasNext()) {
+                double sui = su[iidxs.nextInt()];
+                double rui = ivs.nextDouble();
                 double cui = confidence.applyAsDouble(rui);
-                return cui * (rui - sui) * (rui - sui) - confidence.applyAsDouble(0) * sui * sui;
-            }).sum();
-            
-            double err2 = confidence.applyAsDouble(0) * su.assign(x -> x * x).zSum();
-            
+                err1 += cui * (rui - sui) * (rui - sui) - c0 * sui * sui;
+            }
+
+            double err2 = c0 * dot(su, 0, su, 0, su.length);
+
             return (err1 + err2) / data.numItems();
         }).sum() / data.numUsers();
-
     }
 
     @Override
-    public void set_minP(final DenseDoubleMatrix2D p, final DenseDoubleMatrix2D q, FastPreferenceData<U, I> data) {
-        set_min(p, q, confidence, lambdaP, data);
+    public void set_minP(final FlatDoubleMatrix2D p, final FlatDoubleMatrix2D q, FastPreferenceData<U, I> data, IntStream uidxs) {
+        double[] a1p = gramP.get(q, m -> getGram(m, lambdaP));
+        if (numCGIter > 0) {
+            set_minCG(p, q, a1p, confidence, numCGIter, data, uidxs);
+        } else {
+            set_min(p, q, a1p, confidence, data, uidxs);
+        }
+        gramQ.invalidate();
     }
 
     @Override
-    public void set_minQ(final DenseDoubleMatrix2D q, final DenseDoubleMatrix2D p, FastPreferenceData<U, I> data) {
-        set_min(q, p, confidence, lambdaQ, new TransposedPreferenceData<>(data));
+    public void set_minQ(final FlatDoubleMatrix2D q, final FlatDoubleMatrix2D p, FastPreferenceData<U, I> data, IntStream iidxs) {
+        double[] a1q = gramQ.get(p, m -> getGram(m, lambdaQ));
+        if (numCGIter > 0) {
+            set_minCG(q, p, a1q, confidence, numCGIter, new TransposedPreferenceData<>(data), iidxs);
+        } else {
+            set_min(q, p, a1q, confidence, new TransposedPreferenceData<>(data), iidxs);
+        }
+        gramP.invalidate();
     }
 
-    private static <U, I, O> void set_min(final DenseDoubleMatrix2D p, final DenseDoubleMatrix2D q, DoubleUnaryOperator confidence, double lambda, FastPreferenceData<U, I> data) {
-        final int K = p.columns();
+    private static double[] getGram(final FlatDoubleMatrix2D q, double lambda) {
+        final int K = q.columns();
 
         DenseDoubleMatrix2D A1P = new DenseDoubleMatrix2D(K, K);
         q.zMult(q, A1P, 1.0, 0.0, true, false);
         for (int k = 0; k < K; k++) {
             A1P.setQuick(k, k, lambda + A1P.getQuick(k, k));
         }
+        double[] a1p = new double[K * K];
+        for (int k = 0; k < K; k++) {
+            for (int l = 0; l < K; l++) {
+                a1p[k * K + l] = A1P.getQuick(k, l);
+            }
+        }
 
-        DenseDoubleMatrix2D[] A2P = new DenseDoubleMatrix2D[q.rows()];
-        data.getIidxWithPreferences().parallel().forEach(iidx -> {
-            A2P[iidx] = new DenseDoubleMatrix2D(K, K);
-            DoubleMatrix1D qi = q.viewRow(iidx);
-            ALG.multOuter(qi, qi, A2P[iidx]);
-        });
+        return a1p;
+    }
 
-        data.getUidxWithPreferences().parallel().forEach(uidx -> {
-            DoubleMatrix2D A = new DenseDoubleMatrix2D(K, K);
-            DoubleMatrix1D b = new DenseDoubleMatrix1D(K);
-            A.assign(A1P);
-            b.assign(0.0);
+    private static <U, I> void set_min(final FlatDoubleMatrix2D p, final FlatDoubleMatrix2D q, final double[] a1p, DoubleUnaryOperator confidence, FastPreferenceData<U, I> data, IntStream uidxs) {
+        final int K = p.columns();
+        final double[] pa = p.elements();
+        final double[] qa = q.elements();
 
-            data.getUidxPreferences(uidx).forEach(iv -> {
-                int iidx = iv.v1;
-                double rui = iv.v2;
+        uidxs.parallel().forEach(uidx -> {
+            double[] a = a1p.clone();
+            double[] b = new double[K];
+
+            IntIterator iidxs = data.getUidxIidxs(uidx);
+            DoubleIterator ivs = data.getUidxVs(uidx);
+            while (iidxs.hasNext()) {
+                int qi = q.offset(iidxs.nextInt());
+                double rui = ivs.nextDouble();
                 double cui = confidence.applyAsDouble(rui);
 
-                DoubleMatrix1D qi = q.viewRow(iidx);
+                for (int k = 0; k < K; k++) {
+                    axpy((cui - 1.0) * qa[qi + k], qa, qi, a, k * K, K);
+                }
+                axpy(rui * cui, qa, qi, b, 0, K);
+            }
+
+            DoubleMatrix2D A = new DenseDoubleMatrix2D(K, K);
+            for (int k = 0; k < K; k++) {
+                for (int l = 0; l < K; l++) {
+                    A.setQuick(k, l, a[k * K + l]);
+                }
+            }
+            DoubleMatrix1D B = new DenseDoubleMatrix1D(b);
 
-                A.assign(A2P[iidx], (x, y) -> x + y * (cui - 1.0));
-                b.assign(qi, (x, y) -> x + y * rui * cui);
-            });
             LUDecompositionQuick lu = new LUDecompositionQuick(0);
             lu.decompose(A);
-            lu.solve(b);
-            p.viewRow(uidx).assign(b);
+            lu.solve(B);
+            B.toArray(b);
+            System.arraycopy(b, 0, pa, p.offset(uidx), K);
+        });
+    }
+
+    private static <U, I> void set_minCG(final FlatDoubleMatrix2D p, final FlatDoubleMatrix2D q, final double[] a1p, DoubleUnaryOperator confidence, int numCGIter, FastPreferenceData<U, I> data, IntStream uidxs) {
+        final int K = p.columns();
+        final double[] x = p.elements();
+        final double[] qa = q.elements();
+
+        DoubleAdder res0 = new DoubleAdder();
+        DoubleAdder res1 = new DoubleAdder();
+        uidxs.parallel().forEach(uidx -> {
+            int xu = p.offset(uidx);
+            double[] r = new double[K];
+            double[] d = new double[K];
+            double[] ad = new double[K];
+
+            // r = b - A x
+            gemv(K, K, a1p, 0, K, x, xu, r, 0);
+            scale(-1.0, r);
+            IntIterator iidxs = data.getUidxIidxs(uidx);
+            DoubleIterator ivs = data.getUidxVs(uidx);
+            while (iidxs.hasNext()) {
+                int qi = q.offset(iidxs.nextInt());
+                double rui = ivs.nextDouble();
+                double cui = confidence.applyAsDouble(rui);
+                axpy(rui * cui - (cui - 1.0) * dot(qa, qi, x, xu, K), qa, qi, r, 0, K);
+            }
+
+            System.arraycopy(r, 0, d, 0, K);
+            double rr = dot(r, 0, r, 0, K);
+            res0.add(rr);
+
+            for (int t = 0; t < numCGIter && rr > 0.0; t++) {
+                // ad = A d
+                gemv(K, K, a1p, 0, K, d, 0, ad, 0);
+                iidxs = data.getUidxIidxs(uidx);
+                ivs = data.getUidxVs(uidx);
+                while (iidxs.hasNext()) {
+                    int qi = q.offset(iidxs.nextInt());
+                    double cui = confidence.applyAsDouble(ivs.nextDouble());
+                    axpy((cui - 1.0) * dot(qa, qi, d, 0, K), qa, qi, ad, 0, K);
+                }
+
+                double alpha = rr / dot(d, 0, ad, 0, K);
+                axpy(alpha, d, 0, x, xu, K);
+                axpy(-alpha, ad, 0, r, 0, K);
+
+                double rr1 = dot(r, 0, r, 0, K);
+                scale(rr1 / rr, d);
+                axpy(1.0, r, 0, d, 0, K);
+                rr = rr1;
+            }
+            res1.add(rr);
         });
+
+        LOG.log(Level.INFO, String.format("conjugate gradient residual %.6f -> %.6f", sqrt(res0.sum()), sqrt(res1.sum())));
+    }
+
+    private static void scale(double a, double[] x) {
+        for (int k = 0; k < x.length; k++) {
+            x[k] *= a;
+        }
     }
 
 }
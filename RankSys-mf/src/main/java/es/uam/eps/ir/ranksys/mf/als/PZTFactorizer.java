@@ -13,13 +13,18 @@ import cern.colt.matrix.DoubleMatrix2D;
 import cern.colt.matrix.impl.DenseDoubleMatrix2D;
 import cern.colt.matrix.linalg.EigenvalueDecomposition;
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
-import es.uam.eps.ir.ranksys.fast.preference.IdxPref;
 import es.uam.eps.ir.ranksys.fast.preference.TransposedPreferenceData;
+import es.uam.eps.ir.ranksys.mf.Factorization;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.ranksys.mf.FlatDoubleMatrix2D;
 
+import java.util.Arrays;
 import java.util.function.DoubleUnaryOperator;
-import java.util.stream.Stream;
+import java.util.stream.IntStream;
 
 import static java.lang.Math.sqrt;
+import static org.ranksys.core.util.kernels.Kernels.axpy;
 
 /**
  * Fast ALS-based factorization of Pilászy, Zibriczky and Tikk.
@@ -30,6 +35,10 @@ import static java.lang.Math.sqrt;
  * It is a much faster alternative (with slightly worse performance) than that of
  * Hu, Koren and Volinsky.
  *
+ * The decompositions of the regularized Gram matrices of both sides are kept
+ * after factorizing, so that folding in users or items only recomputes the
+ * one of the side modified since.
+ *
  * @author Saúl Vargas (saul.vargas@uam.es)
  * 
  * @param <U> type of the users
@@ -40,6 +49,10 @@ public class PZTFactorizer<U, I> extends ALSFactorizer<U, I> {
     private final double lambdaP;
     private final double lambdaQ;
     private final DoubleUnaryOperator confidence;
+    private final GramCache gtP;
+    private final GramCache gtQ;
+    private ThreadLocal<Scratch> scratchP;
+    private ThreadLocal<Scratch> scratchQ;
 
     /**
      * Constructor. Same regularization factor for user and item matrices.
@@ -65,49 +78,76 @@ public class PZTFactorizer<U, I> extends ALSFactorizer<U, I> {
         this.lambdaP = lambdaP;
         this.lambdaQ = lambdaQ;
         this.confidence = confidence;
+        this.gtP = new GramCache();
+        this.gtQ = new GramCache();
+    }
+
+    @Override
+    public synchronized void factorize(Factorization<U, I> factorization, FastPreferenceData<U, I> data) {
+        int K = factorization.getK();
+        scratchP = scratch(K, data.getUidxWithPreferences().map(data::numItems));
+        scratchQ = scratch(K, data.getIidxWithPreferences().map(data::numUsers));
+        try {
+            super.factorize(factorization, data);
+        } finally {
+            scratchP = null;
+            scratchQ = null;
+        }
     }
 
     @Override
-    public double error(DenseDoubleMatrix2D p, DenseDoubleMatrix2D q, FastPreferenceData<U, I> data) {
-        // TODO: add regularization, unify with HKVFactorizer's error
-        
-        return data.getUidxWithPreferences().parallel().mapToDouble(uidx -> {
-            DoubleMatrix1D pu = p.viewRow(uidx);
-            DoubleMatrix1D su = q.zMult(pu, null);
-            
-            double err1 = data.getUidxPreferences(uidx).mapToDouble(iv -> {
-                double rui = iv.v2;
-                double sui = su.getQuick(iv.v1);
-                double cui = confidence.applyAsDouble(rui);
-                return cui * (rui - sui) * (rui - sui) - confidence.applyAsDouble(0) * sui * sui;
-            }).sum();
-            
-            double err2 = confidence.applyAsDouble(0) * su.assign(x -> x * x).zSum();
-            
-            return (err1 + err2) / data.numItems();
-        }).sum() / data.numUsers();
+    protected void invalidateCaches() {
+        gtP.invalidate();
+        gtQ.invalidate();
+    }
 
+    @Override
+    public double error(FlatDoubleMatrix2D p, FlatDoubleMatrix2D q, FastPreferenceData<U, I> data) {
+        return HKVFactorizer.error(p, q, confidence, data);
     }
 
     @Override
-    public void set_minP(final DenseDoubleMatrix2D p, final DenseDoubleMatrix2D q, FastPreferenceData<U, I> data) {
-        set_min(p, q, confidence, lambdaP, data);
+    public void set_minP(final FlatDoubleMatrix2D p, final FlatDoubleMatrix2D q, FastPreferenceData<U, I> data, IntStream uidxs) {
+        set_min(p, q, gtP.get(q, m -> getGt(m, lambdaP)), confidence, lambdaP, data, uidxs, scratchP);
+        gtQ.invalidate();
     }
 
     @Override
-    public void set_minQ(final DenseDoubleMatrix2D q, final DenseDoubleMatrix2D p, FastPreferenceData<U, I> data) {
-        set_min(q, p, confidence, lambdaQ, new TransposedPreferenceData<>(data));
+    public void set_minQ(final FlatDoubleMatrix2D q, final FlatDoubleMatrix2D p, FastPreferenceData<U, I> data, IntStream iidxs) {
+        set_min(q, p, gtQ.get(p, m -> getGt(m, lambdaQ)), confidence, lambdaQ, new TransposedPreferenceData<>(data), iidxs, scratchQ);
+        gtP.invalidate();
     }
 
-    private static <U, I> void set_min(final DenseDoubleMatrix2D p, final DenseDoubleMatrix2D q, DoubleUnaryOperator confidence, double lambda, FastPreferenceData<U, I> data) {
-        DoubleMatrix2D gt = getGt(p, q, lambda);
+    private static <U, I> void set_min(final FlatDoubleMatrix2D p, final FlatDoubleMatrix2D q, final double[] gt, DoubleUnaryOperator confidence, double lambda, FastPreferenceData<U, I> data, IntStream uidxs, ThreadLocal<Scratch> scratch) {
+        if (scratch == null) {
+            int[] rows = uidxs.toArray();
+            scratch = scratch(p.columns(), IntStream.of(rows).map(data::numItems));
+            uidxs = IntStream.of(rows);
+        }
+        final ThreadLocal<Scratch> s = scratch;
+
+        uidxs.parallel()
+                .forEach(uidx -> prepareRR1(1, p.elements(), p.offset(uidx), gt, q, data.numItems(uidx), data.getUidxIidxs(uidx), data.getUidxVs(uidx), confidence, lambda, s.get()));
+    }
 
-        data.getUidxWithPreferences().parallel()
-                .forEach(uidx -> prepareRR1(1, p.viewRow(uidx), gt, q, data.numItems(uidx), data.getUidxPreferences(uidx), confidence, lambda));
+    /**
+     * Per-thread buffers for rows of the given lengths. During a
+     * factorization there is one for each side, sized for its largest row;
+     * fold-ins outside of it get one sized for the rows being computed.
+     */
+    private static ThreadLocal<Scratch> scratch(int K, IntStream ns) {
+        final int maxN = ns.max().orElse(0);
+        return ThreadLocal.withInitial(() -> new Scratch(K, maxN));
     }
 
-    private static DoubleMatrix2D getGt(final DenseDoubleMatrix2D p, final DenseDoubleMatrix2D q, double lambda) {
-        final int K = p.columns();
+    /**
+     * Returns the matrix G^T of the decomposition Q^T Q + lambda I = G G^T
+     * transposed, that is, with the k-th coordinates of its K rows
+     * contiguous, in a flat K x K array. It is computed once per
+     * half-iteration and shared by all threads.
+     */
+    private static double[] getGt(final DenseDoubleMatrix2D q, double lambda) {
+        final int K = q.columns();
 
         DenseDoubleMatrix2D A1 = new DenseDoubleMatrix2D(K, K);
         q.zMult(q, A1, 1.0, 0.0, true, false);
@@ -117,68 +157,93 @@ public class PZTFactorizer<U, I> extends ALSFactorizer<U, I> {
 
         EigenvalueDecomposition eig = new EigenvalueDecomposition(A1);
         DoubleMatrix1D d = eig.getRealEigenvalues();
-        DoubleMatrix2D gt = eig.getV();
-        for (int k = 0; k < K; k++) {
-            double a = sqrt(d.get(k));
-            gt.viewColumn(k).assign(x -> a * x);
+        DoubleMatrix2D v = eig.getV();
+        double[] gt = new double[K * K];
+        for (int i = 0; i < K; i++) {
+            double a = sqrt(d.getQuick(i));
+            for (int k = 0; k < K; k++) {
+                gt[k * K + i] = a * v.getQuick(k, i);
+            }
         }
 
         return gt;
     }
 
-    private static <O> void prepareRR1(int L, DoubleMatrix1D w, DoubleMatrix2D gt, DoubleMatrix2D q, int N, Stream<? extends IdxPref> prefs, DoubleUnaryOperator confidence, double lambda) {
-        int K = w.size();
+    private static void prepareRR1(int L, double[] w, int wOff, double[] gt, FlatDoubleMatrix2D q, int N, IntIterator iidxs, DoubleIterator ivs, DoubleUnaryOperator confidence, double lambda, Scratch scratch) {
+        int K = scratch.K;
+        int S = K + N;
+        double[] qa = q.elements();
+        double[] x = scratch.x;
+        double[] y = scratch.y;
+        double[] c = scratch.c;
 
-        double[][] x = new double[K + N][K];
-        double[] y = new double[K + N];
-        double[] c = new double[K + N];
         for (int k = 0; k < K; k++) {
-            gt.viewColumn(k).toArray(x[k]);
-            y[k] = 0.0;
-            c[k] = 1.0;
+            System.arraycopy(gt, k * K, x, k * S, K);
         }
-        int[] j = {K};
-        prefs.forEach(iv -> {
-            q.viewRow(iv.v1).toArray(x[j[0]]);
-            double Cui = confidence.applyAsDouble(iv.v2);
-            y[j[0]] = (Cui * iv.v2) / (Cui - 1);
-            c[j[0]] = Cui - 1;
-            j[0]++;
-        });
-        
-        doRR1(L, w, x, y, c, lambda);
-    }
-
-    private static void doRR1(int L, DoubleMatrix1D w, double[][] x, double[] y, double[] c, double lambda) {
-        int N = x.length;
-        int K = x[0].length;
-        
-        double[] e = new double[N];
-        for (int i = 0; i < N; i++) {
-            double pred = 0.0;
+        int j = K;
+        while (iidxs.hasNext()) {
+            int qOff = q.offset(iidxs.nextInt());
             for (int k = 0; k < K; k++) {
-                pred += w.getQuick(k) * x[i][k];
+                x[k * S + j] = qa[qOff + k];
             }
-            e[i] = y[i] - pred;
+            double rui = ivs.nextDouble();
+            double Cui = confidence.applyAsDouble(rui);
+            y[j] = (Cui * rui) / (Cui - 1);
+            c[j] = Cui - 1;
+            j++;
+        }
+
+        doRR1(L, w, wOff, K, S, x, y, c, lambda, scratch.e);
+    }
+
+    /**
+     * Ridge regression by one-dimensional updates. The k-th coordinates of
+     * the S examples are contiguous in x, starting at k * S; the first K
+     * examples are the rows of G^T, with target 0 and weight 1.
+     */
+    private static void doRR1(int L, double[] w, int wOff, int K, int S, double[] x, double[] y, double[] c, double lambda, double[] e) {
+        System.arraycopy(y, 0, e, 0, S);
+        for (int k = 0; k < K; k++) {
+            axpy(-w[wOff + k], x, k * S, e, 0, S);
         }
 
         for (int l = 0; l < L; l++) {
             for (int k = 0; k < K; k++) {
-                for (int i = 0; i < N; i++) {
-                    e[i] += w.getQuick(k) * x[i][k];
-                }
+                int xOff = k * S;
+                axpy(w[wOff + k], x, xOff, e, 0, S);
                 double a = 0.0;
                 double d = 0.0;
-                for (int i = 0; i < N; i++) {
-                    a += c[i] * x[i][k] * x[i][k];
-                    d += c[i] * x[i][k] * e[i];
-                }
-                w.setQuick(k, d / (lambda + a));
-                for (int i = 0; i < N; i++) {
-                    e[i] -= w.getQuick(k) * x[i][k];
+                for (int i = 0; i < S; i++) {
+                    double cx = c[i] * x[xOff + i];
+                    a += cx * x[xOff + i];
+                    d += cx * e[i];
                 }
+                w[wOff + k] = d / (lambda + a);
+                axpy(-w[wOff + k], x, xOff, e, 0, S);
             }
         }
+    }
 
+    /**
+     * Per-thread buffers of the one-dimensional updates, sized for the
+     * largest of the rows being computed. They replace the K + N vectors
+     * of K coordinates that were allocated for every user/item.
+     */
+    private static class Scratch {
+
+        private final int K;
+        private final double[] x;
+        private final double[] y;
+        private final double[] c;
+        private final double[] e;
+
+        Scratch(int K, int maxN) {
+            this.K = K;
+            this.x = new double[K * (K + maxN)];
+            this.y = new double[K + maxN];
+            this.c = new double[K + maxN];
+            this.e = new double[K + maxN];
+            Arrays.fill(c, 0, K, 1.0);
+        }
     }
 }
@@ -9,33 +9,29 @@
 package es.uam.eps.ir.ranksys.mf.plsa;
 
 import cern.colt.function.DoubleFunction;
-import cern.colt.matrix.DoubleMatrix1D;
-import cern.colt.matrix.DoubleMatrix2D;
-import cern.colt.matrix.impl.DenseDoubleMatrix2D;
-
-import static cern.jet.math.Functions.identity;
-import static cern.jet.math.Functions.mult;
-import static cern.jet.math.Functions.plus;
-
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
 import es.uam.eps.ir.ranksys.fast.preference.IdxPref;
+import es.uam.eps.ir.ranksys.fast.preference.TransposedPreferenceData;
 import org.ranksys.fast.preference.StreamsAbstractFastPreferenceData;
 import es.uam.eps.ir.ranksys.mf.Factorization;
 import es.uam.eps.ir.ranksys.mf.Factorizer;
-import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.ints.IntSet;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
+import static java.lang.Math.max;
 import static java.lang.Math.sqrt;
+import static java.util.Arrays.fill;
+import static org.ranksys.core.util.kernels.Kernels.axpy;
+import static org.ranksys.core.util.kernels.Kernels.dot;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import org.ranksys.mf.FlatDoubleMatrix2D;
 
 /**
  * Probabilistic Latent Semantic Analysis of Hofmann.
@@ -63,15 +59,19 @@ public class PLSAFactorizer<U, I> extends Factorizer<U, I> {
 
     @Override
     public double error(Factorization<U, I> factorization, FastPreferenceData<U, I> data) {
-        DenseDoubleMatrix2D pu_z = factorization.getUserMatrix();
-        DenseDoubleMatrix2D piz = factorization.getItemMatrix();
+        FlatDoubleMatrix2D pu_z = factorization.getUserMatrix();
+        FlatDoubleMatrix2D piz = factorization.getItemMatrix();
+        int K = pu_z.columns();
 
         return data.getUidxWithPreferences().parallel().mapToDouble(uidx -> {
-            DoubleMatrix1D pU_z = pu_z.viewRow(uidx);
-            DoubleMatrix1D pUi = piz.zMult(pU_z, null);
-            return data.getUidxPreferences(uidx)
-                    .mapToDouble(iv -> -iv.v2 * pUi.getQuick(iv.v1))
-                    .sum();
+            double err = 0.0;
+            IntIterator iidxs = data.getUidxIidxs(uidx);
+            DoubleIterator ivs = data.getUidxVs(uidx);
+            while (iidxs.hasNext()) {
+                double pUi = dot(piz.elements(), piz.offset(iidxs.nextInt()), pu_z.elements(), pu_z.offset(uidx), K);
+                err -= ivs.nextDouble() * pUi;
+            }
+            return err;
         }).sum();
 
     }
@@ -86,31 +86,173 @@ public class PLSAFactorizer<U, I> extends Factorizer<U, I> {
 
     @Override
     public void factorize(Factorization<U, I> factorization, FastPreferenceData<U, I> data) {
-        DenseDoubleMatrix2D pu_z = factorization.getUserMatrix();
-        DenseDoubleMatrix2D piz = factorization.getItemMatrix();
+        FlatDoubleMatrix2D pu_z = factorization.getUserMatrix();
+        FlatDoubleMatrix2D piz = factorization.getItemMatrix();
 
         IntSet uidxs = new IntOpenHashSet(data.getUidxWithPreferences().toArray());
-        IntStream.range(0, pu_z.rows()).filter(uidx -> !uidxs.contains(uidx)).forEach(uidx -> pu_z.viewRow(uidx).assign(0.0));
+        IntStream.range(0, pu_z.rows()).filter(uidx -> !uidxs.contains(uidx)).forEach(uidx -> fill(pu_z.elements(), pu_z.offset(uidx), pu_z.offset(uidx) + pu_z.columns(), 0.0));
         IntSet iidxs = new IntOpenHashSet(data.getIidxWithPreferences().toArray());
-        IntStream.range(0, piz.rows()).filter(iidx -> !iidxs.contains(iidx)).forEach(iidx -> piz.viewRow(iidx).assign(0.0));
+        IntStream.range(0, piz.rows()).filter(iidx -> !iidxs.contains(iidx)).forEach(iidx -> fill(piz.elements(), piz.offset(iidx), piz.offset(iidx) + piz.columns(), 0.0));
 
         PLSAPreferenceData<U, I> plsaData = new PLSAPreferenceData<>(data, pu_z.columns());
 
         normalizePuz(pu_z);
         normalizePiz(piz);
 
+        double[][] partials = new double[numThreads()][piz.rows() * piz.columns()];
+
         for (int t = 1; t <= numIter; t++) {
             long time0 = System.nanoTime();
 
-            expectation(pu_z, piz, plsaData);
-            maximization(pu_z, piz, plsaData);
+            expectationMaximization(pu_z, piz, plsaData, partials, true);
 
             int iter = t;
             long time1 = System.nanoTime() - time0;
 
             LOG.log(Level.INFO, String.format("iteration n = %3d t = %.2fs", iter, time1 / 1_000_000_000.0));
             LOG.log(Level.FINE, () -> String.format("iteration n = %3d e = %.6f", iter, error(factorization, data)));
+
+            if (!iterationDone(iter, factorization)) {
+                break;
+            }
         }
+
+        factorization.markModified();
+    }
+
+    /**
+     * Folds in new or changed users: estimates their p(z|u) by EM against
+     * the fixed p(i|z), without modifying the rest of the factorization.
+     * The factorization grows to the size of the user and item indices of
+     * the preference data, which must extend those of the factorization.
+     *
+     * @param factorization matrix factorization
+     * @param data preference data, including the preferences of the users
+     * @param uidxs indices of the users to be (re)computed
+     */
+    public void foldInUsers(Factorization<U, I> factorization, FastPreferenceData<U, I> data, int[] uidxs) {
+        long time0 = System.nanoTime();
+
+        factorization.grow(data, data);
+        FlatDoubleMatrix2D pu_z = factorization.getUserMatrix();
+        FlatDoubleMatrix2D piz = factorization.getItemMatrix();
+        int K = pu_z.columns();
+
+        // normalization of p(z|u) over users: expected aspect counts of the other users
+        IntSet folded = new IntOpenHashSet(uidxs);
+        double[] norms = data.getUidxWithPreferences().parallel()
+                .filter(uidx -> !folded.contains(uidx))
+                .collect(() -> new double[K], (nz, uidx) -> {
+                    double[] qz = new double[K];
+                    IntIterator iidxs = data.getUidxIidxs(uidx);
+                    DoubleIterator ivs = data.getUidxVs(uidx);
+                    while (iidxs.hasNext()) {
+                        double v = ivs.nextDouble();
+                        // preferences for items without p(i|z), such as those added by grow, carry no mass
+                        if (posterior(piz, iidxs.nextInt(), pu_z.elements(), pu_z.offset(uidx), qz) > 0.0) {
+                            axpy(v, qz, 0, nz, 0, K);
+                        }
+                    }
+                }, (nz1, nz2) -> axpy(1.0, nz2, 0, nz1, 0, K));
+
+        foldIn(pu_z, piz, data, uidxs, norms);
+        factorization.markModified();
+
+        long time1 = System.nanoTime() - time0;
+        LOG.log(Level.INFO, String.format("fold-in users n = %d t = %.2fs", uidxs.length, time1 / 1_000_000_000.0));
+    }
+
+    /**
+     * Folds in new or changed items: estimates their p(i|z) by EM against
+     * the fixed p(z|u), without modifying the rest of the factorization.
+     * The factorization grows to the size of the user and item indices of
+     * the preference data, which must extend those of the factorization.
+     *
+     * @param factorization matrix factorization
+     * @param data preference data, including the preferences for the items
+     * @param iidxs indices of the items to be (re)computed
+     */
+    public void foldInItems(Factorization<U, I> factorization, FastPreferenceData<U, I> data, int[] iidxs) {
+        long time0 = System.nanoTime();
+
+        factorization.grow(data, data);
+        FlatDoubleMatrix2D pu_z = factorization.getUserMatrix();
+        FlatDoubleMatrix2D piz = factorization.getItemMatrix();
+
+        // normalization of p(i|z) over items and aspects: preference mass of the other items
+        IntSet folded = new IntOpenHashSet(iidxs);
+        double mass = data.getIidxWithPreferences().parallel()
+                .filter(iidx -> !folded.contains(iidx))
+                .mapToDouble(iidx -> {
+                    double sum = 0.0;
+                    DoubleIterator uvs = data.getIidxVs(iidx);
+                    while (uvs.hasNext()) {
+                        sum += uvs.nextDouble();
+                    }
+                    return sum;
+                }).sum();
+        double[] norms = new double[piz.columns()];
+        fill(norms, mass);
+
+        foldIn(piz, pu_z, new TransposedPreferenceData<>(data), iidxs, norms);
+        factorization.markModified();
+
+        long time1 = System.nanoTime() - time0;
+        LOG.log(Level.INFO, String.format("fold-in items n = %d t = %.2fs", iidxs.length, time1 / 1_000_000_000.0));
+    }
+
+    private void foldIn(FlatDoubleMatrix2D x, FlatDoubleMatrix2D y, FastPreferenceData<?, ?> data, int[] idxs, double[] norms) {
+        final int K = x.columns();
+        final double[] xa = x.elements();
+
+        IntStream.of(idxs).parallel().forEach(idx -> {
+            double[] row = new double[K];
+            double[] n = new double[K];
+            double[] qz = new double[K];
+            fill(row, 1.0);
+
+            for (int t = 0; t < numIter; t++) {
+                fill(n, 0.0);
+                IntIterator jidxs = data.getUidxIidxs(idx);
+                DoubleIterator vs = data.getUidxVs(idx);
+                while (jidxs.hasNext()) {
+                    double v = vs.nextDouble();
+                    if (posterior(y, jidxs.nextInt(), row, 0, qz) > 0.0) {
+                        axpy(v, qz, 0, n, 0, K);
+                    }
+                }
+                System.arraycopy(n, 0, row, 0, K);
+            }
+
+            int xi = x.offset(idx);
+            for (int z = 0; z < K; z++) {
+                xa[xi + z] = norms[z] > 0.0 ? row[z] / norms[z] : 0.0;
+            }
+        });
+    }
+
+    private static double posterior(FlatDoubleMatrix2D y, int jidx, double[] x, int xOff, double[] qz) {
+        return posterior(y, jidx, x, xOff, qz, 0);
+    }
+
+    // posterior of the aspects of a preference, left at zero instead of 0/0 when the rows share no mass; returns its normalization constant
+    private static double posterior(FlatDoubleMatrix2D y, int jidx, double[] x, int xOff, double[] qz, int qzOff) {
+        double[] ya = y.elements();
+        int yj = y.offset(jidx);
+        int K = y.columns();
+        double norm = 0.0;
+        for (int z = 0; z < K; z++) {
+            double q = ya[yj + z] * x[xOff + z];
+            qz[qzOff + z] = q;
+            norm += q;
+        }
+        if (norm > 0.0) {
+            for (int z = 0; z < K; z++) {
+                qz[qzOff + z] /= norm;
+            }
+        }
+
+        return norm;
     }
 
     /**
@@ -120,17 +262,17 @@ public class PLSAFactorizer<U, I> extends Factorizer<U, I> {
      * @param piz    matrix of p(i|z)
      * @param qzData PLSA preference data (variational probability Q(z))
      */
-    protected void expectation(final DenseDoubleMatrix2D pz_u, final DenseDoubleMatrix2D piz, PLSAPreferenceData<U, I> qzData) {
-        qzData.getUidxWithPreferences().parallel()
-                .forEach(uidx -> qzData.getUidxPreferences(uidx)
-                        .forEach(iqz -> {
-                            int iidx = iqz.v1;
-                            double[] qz = ((PLSAPreferenceData.PLSAIdxPref) iqz).qz;
-                            for (int z = 0; z < qz.length; z++) {
-                                qz[z] = piz.getQuick(iidx, z) * pz_u.getQuick(uidx, z);
-                            }
-                            normalizeQz(qz);
-                        }));
+    protected void expectation(final FlatDoubleMatrix2D pz_u, final FlatDoubleMatrix2D piz, PLSAPreferenceData<U, I> qzData) {
+        final double[] qza = qzData.qz;
+
+        IntStream.of(qzData.uidxs).parallel().forEach(uidx -> {
+            int pos = qzData.offset(uidx);
+            IntIterator iidxs = qzData.getUidxIidxs(uidx);
+            while (iidxs.hasNext()) {
+                posterior(piz, iidxs.nextInt(), pz_u.elements(), pz_u.offset(uidx), qza, pos);
+                pos += qzData.K;
+            }
+        });
     }
 
     /**
@@ -140,51 +282,95 @@ public class PLSAFactorizer<U, I> extends Factorizer<U, I> {
      * @param piz    matrix of p(i|z)
      * @param qzData PLSA preference data (variational probability Q(z))
      */
-    protected void maximization(DenseDoubleMatrix2D pu_z, final DenseDoubleMatrix2D piz, final PLSAPreferenceData<U, I> qzData) {
-        Int2ObjectMap<Lock> lockMap = new Int2ObjectOpenHashMap<>();
-        qzData.getIidxWithPreferences().forEach(iidx -> lockMap.put(iidx, new ReentrantLock()));
-
-        pu_z.assign(0.0);
-        piz.assign(0.0);
-
-        qzData.getUidxWithPreferences().parallel().forEach(uidx -> {
-            final DoubleMatrix1D pz_U = pu_z.viewRow(uidx);
+    protected void maximization(FlatDoubleMatrix2D pu_z, final FlatDoubleMatrix2D piz, final PLSAPreferenceData<U, I> qzData) {
+        double[][] partials = new double[numThreads()][piz.rows() * piz.columns()];
 
-            qzData.getUidxPreferences(uidx).forEach(iqz -> {
-                int iidx = iqz.v1;
-                double v = iqz.v2;
-                double[] qz = ((PLSAPreferenceData.PLSAIdxPref) iqz).qz;
-                Lock lock = lockMap.get(iidx);
+        expectationMaximization(pu_z, piz, qzData, partials, false);
+    }
 
-                for (int z = 0; z < qz.length; z++) {
-                    double r = qz[z] * v;
-                    pz_U.setQuick(z, pz_U.getQuick(z) + r);
-                }
-                lock.lock();
-                try {
-                    for (int z = 0; z < qz.length; z++) {
-                        double r = qz[z] * v;
-                        piz.setQuick(iidx, z, piz.getQuick(iidx, z) + r);
+    /**
+     * Maximization step of the EM algorithm, optionally fused with the
+     * expectation step. Users are split among threads, each of which
+     * accumulates its contribution to p(i|z) in its own partial buffer; the
+     * buffers are reduced, and cleared, at the end of the step. When fused,
+     * the variational probabilities of every preference are computed from
+     * the current p(z|u) and p(i|z) right before being accumulated.
+     *
+     * @param pu_z        matrix of p(z|u)
+     * @param piz         matrix of p(i|z)
+     * @param qzData      PLSA preference data (variational probability Q(z))
+     * @param partials    per-thread partial buffers of p(i|z), zeroed
+     * @param expectation true to fuse the expectation step
+     */
+    protected void expectationMaximization(FlatDoubleMatrix2D pu_z, FlatDoubleMatrix2D piz, PLSAPreferenceData<U, I> qzData, double[][] partials, boolean expectation) {
+        final int K = piz.columns();
+        final int numThreads = partials.length;
+        final int[] uidxs = qzData.uidxs;
+        final double[] pu_za = pu_z.elements();
+        final double[] piza = piz.elements();
+        final double[] qza = qzData.qz;
+
+        IntStream.range(0, numThreads).parallel().forEach(t -> {
+            double[] partial = partials[t];
+            double[] nz = new double[K];
+            for (int j = t; j < uidxs.length; j += numThreads) {
+                int uidx = uidxs[j];
+                int pu = pu_z.offset(uidx);
+                int pos = qzData.offset(uidx);
+                fill(nz, 0.0);
+
+                IntIterator iidxs = qzData.getUidxIidxs(uidx);
+                DoubleIterator ivs = qzData.getUidxVs(uidx);
+                while (iidxs.hasNext()) {
+                    int iidx = iidxs.nextInt();
+                    double v = ivs.nextDouble();
+                    if (expectation) {
+                        posterior(piz, iidx, pu_za, pu, qza, pos);
                     }
-                } finally {
-                    lock.unlock();
+                    axpy(v, qza, pos, nz, 0, K);
+                    axpy(v, qza, pos, partial, iidx * K, K);
+                    pos += K;
                 }
-            });
+
+                System.arraycopy(nz, 0, pu_za, pu, K);
+            }
+        });
+
+        IntStream.range(0, piz.rows()).parallel().forEach(iidx -> {
+            int pi = piz.offset(iidx);
+            fill(piza, pi, pi + K, 0.0);
+            for (double[] partial : partials) {
+                axpy(1.0, partial, iidx * K, piza, pi, K);
+                fill(partial, iidx * K, (iidx + 1) * K, 0.0);
+            }
         });
 
         normalizePuz(pu_z);
         normalizePiz(piz);
     }
 
+    private static int numThreads() {
+        return max(1, ForkJoinPool.getCommonPoolParallelism());
+    }
+
     /**
      * Normalizes matrix of p(z|u) such that \forall_z: \sum_u p(z|u) = 1.
      *
      * @param pu_z normalized matrix of p(z|u)
      */
-    protected void normalizePuz(DoubleMatrix2D pu_z) {
-        for (int z = 0; z < pu_z.columns(); z++) {
-            final DoubleMatrix1D pu_Z = pu_z.viewColumn(z);
-            pu_Z.assign(mult(1 / pu_Z.aggregate(plus, identity)));
+    protected void normalizePuz(FlatDoubleMatrix2D pu_z) {
+        final int K = pu_z.columns();
+        final double[] pu_za = pu_z.elements();
+
+        double[] norms = new double[K];
+        for (int uidx = 0; uidx < pu_z.rows(); uidx++) {
+            axpy(1.0, pu_za, pu_z.offset(uidx), norms, 0, K);
+        }
+        for (int uidx = 0; uidx < pu_z.rows(); uidx++) {
+            int pu = pu_z.offset(uidx);
+            for (int z = 0; z < K; z++) {
+                pu_za[pu + z] /= norms[z];
+            }
         }
     }
 
@@ -193,17 +379,22 @@ public class PLSAFactorizer<U, I> extends Factorizer<U, I> {
      *
      * @param piz normalized matrix of p(i|z)
      */
-    protected void normalizePiz(DoubleMatrix2D piz) {
-        piz.assign(mult(1 / piz.aggregate(plus, identity)));
-    }
-
-    private static void normalizeQz(double[] qz) {
-        double norm = 0;
-        for (double x : qz) {
-            norm += x;
+    protected void normalizePiz(FlatDoubleMatrix2D piz) {
+        final int K = piz.columns();
+        final double[] piza = piz.elements();
+
+        double norm = 0.0;
+        for (int iidx = 0; iidx < piz.rows(); iidx++) {
+            int pi = piz.offset(iidx);
+            for (int z = 0; z < K; z++) {
+                norm += piza[pi + z];
+            }
         }
-        for (int i = 0; i < qz.length; i++) {
-            qz[i] /= norm;
+        for (int iidx = 0; iidx < piz.rows(); iidx++) {
+            int pi = piz.offset(iidx);
+            for (int z = 0; z < K; z++) {
+                piza[pi + z] /= norm;
+            }
         }
     }
 
@@ -216,30 +407,36 @@ public class PLSAFactorizer<U, I> extends Factorizer<U, I> {
     protected static class PLSAPreferenceData<U, I> extends StreamsAbstractFastPreferenceData<U, I> {
 
         private final FastPreferenceData<U, I> data;
-        private final Long2ObjectOpenHashMap<double[]> qz;
+        private final int K;
+        private final int[] uidxs;
+        private final int[] offsets;
+        private final double[] qz;
 
         /**
-         * Constructor.
+         * Constructor. The variational probabilities of all the preferences
+         * are stored in a single array, K per preference, in the order in
+         * which the preferences of each user are iterated.
          *
          * @param data preference data
          * @param K    number of aspects
          */
         PLSAPreferenceData(FastPreferenceData<U, I> data, int K) {
             super(data, data);
+            if ((long) data.numPreferences() * K > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("too many preferences and aspects for a single array");
+            }
             this.data = data;
-            this.qz = new Long2ObjectOpenHashMap<>();
-            data.getUidxWithPreferences()
-                    .forEach(uidx -> data.getUidxPreferences(uidx)
-                            .forEach(pref -> putQz(uidx, pref.v1, new double[K])));
-
-        }
-
-        private double[] getQz(int uidx, int iidx) {
-            return qz.get(uidx * data.numItems() + iidx);
+            this.K = K;
+            this.uidxs = data.getUidxWithPreferences().toArray();
+            this.offsets = new int[data.numUsers() + 1];
+            for (int uidx = 0; uidx < data.numUsers(); uidx++) {
+                offsets[uidx + 1] = offsets[uidx] + data.numItems(uidx) * K;
+            }
+            this.qz = new double[offsets[data.numUsers()]];
         }
 
-        private double[] putQz(int uidx, int iidx, double[] v) {
-            return qz.put(uidx * data.numItems() + iidx, v);
+        private int offset(int uidx) {
+            return offsets[uidx];
         }
 
         @Override
@@ -264,43 +461,42 @@ public class PLSAFactorizer<U, I> extends Factorizer<U, I> {
 
         @Override
         public Stream<IdxPref> getUidxPreferences(int uidx) {
-            return data.getUidxPreferences(uidx)
-                    .map(pref -> new PLSAIdxPref(pref.v1, pref.v2, getQz(uidx, pref.v1)));
+            return data.getUidxPreferences(uidx).map(pref -> pref);
         }
 
         @Override
         public Stream<IdxPref> getIidxPreferences(int iidx) {
-            return data.getIidxPreferences(iidx)
-                    .map(pref -> new PLSAIdxPref(pref.v1, pref.v2, getQz(pref.v1, iidx)));
+            return data.getIidxPreferences(iidx).map(pref -> pref);
         }
 
         @Override
-        public int numPreferences() {
-            return data.numPreferences();
+        public IntIterator getUidxIidxs(int uidx) {
+            return data.getUidxIidxs(uidx);
         }
 
-        /**
-         * PLSA preference data by index.
-         */
-        private class PLSAIdxPref extends IdxPref {
-
-            /**
-             * Variational probabilities Q(z)
-             */
-            private final double[] qz;
-
-            /**
-             * Constructor.
-             *
-             * @param idx   index
-             * @param value value
-             * @param qz    variational probabilities values
-             */
-            PLSAIdxPref(int idx, double value, double[] qz) {
-                super(idx, value);
-                this.qz = qz;
-            }
+        @Override
+        public DoubleIterator getUidxVs(int uidx) {
+            return data.getUidxVs(uidx);
+        }
 
+        @Override
+        public IntIterator getIidxUidxs(int iidx) {
+            return data.getIidxUidxs(iidx);
+        }
+
+        @Override
+        public DoubleIterator getIidxVs(int iidx) {
+            return data.getIidxVs(iidx);
+        }
+
+        @Override
+        public boolean useIteratorsPreferentially() {
+            return data.useIteratorsPreferentially();
+        }
+
+        @Override
+        public int numPreferences() {
+            return data.numPreferences();
         }
     }
 }
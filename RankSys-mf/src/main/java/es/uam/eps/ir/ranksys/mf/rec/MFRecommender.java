@@ -8,26 +8,33 @@
  */
 package es.uam.eps.ir.ranksys.mf.rec;
 
-import cern.colt.matrix.DoubleMatrix1D;
-import cern.colt.matrix.impl.DenseDoubleMatrix2D;
 import es.uam.eps.ir.ranksys.fast.FastRecommendation;
 import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
 import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
 import es.uam.eps.ir.ranksys.fast.utils.topn.IntDoubleTopN;
 import es.uam.eps.ir.ranksys.rec.fast.AbstractFastRecommender;
 import es.uam.eps.ir.ranksys.mf.Factorization;
+import static java.lang.Math.ceil;
 import static java.lang.Math.min;
 import java.util.ArrayList;
-import static java.util.Comparator.comparingDouble;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.IntFunction;
 import java.util.function.IntPredicate;
 import static java.util.stream.Collectors.toList;
-import java.util.stream.IntStream;
 import org.ranksys.core.util.tuples.Tuple2id;
-import static org.ranksys.core.util.tuples.Tuples.tuple;
+import static org.ranksys.core.util.kernels.Kernels.dot;
+import static org.ranksys.core.util.kernels.Kernels.gemm;
+import static org.ranksys.core.util.kernels.Kernels.gemv;
+import org.ranksys.mf.FlatDoubleMatrix2D;
+import org.ranksys.mf.QuantizedMatrix;
 
 /**
  * Matrix factorization recommender. Scores are calculated as the inner product of user and item vectors.
+ * Optionally, a quantized copy of the item matrix is used to select an
+ * oversampled set of candidates, which are then re-scored exactly. The copy
+ * is rebuilt on the first recommendation after the factorization records a
+ * modification, such as a fold-in or {@link Factorization#grow}.
  *
  * @author Saúl Vargas (saul.vargas@uam.es)
  *
@@ -36,7 +43,12 @@ import static org.ranksys.core.util.tuples.Tuples.tuple;
  */
 public class MFRecommender<U, I> extends AbstractFastRecommender<U, I> {
 
+    private static final int BATCH_ITEM_TILE = 1024;
+
     private final Factorization<U, I> factorization;
+    private final QuantizedMatrix.Precision precision;
+    private final double oversampling;
+    private volatile QuantizedSnapshot quantized;
 
     /**
      * Constructor.
@@ -48,23 +60,69 @@ public class MFRecommender<U, I> extends AbstractFastRecommender<U, I> {
     public MFRecommender(FastUserIndex<U> uIndex, FastItemIndex<I> iIndex, Factorization<U, I> factorization) {
         super(uIndex, iIndex);
         this.factorization = factorization;
+        this.precision = null;
+        this.oversampling = 1.0;
+        this.quantized = null;
+    }
+
+    /**
+     * Constructor for quantized scoring. The top maxLength * oversampling
+     * items according to a quantized copy of the item matrix are re-scored
+     * exactly to produce the recommendation.
+     *
+     * @param uIndex fast user index
+     * @param iIndex fast item index
+     * @param factorization matrix factorization
+     * @param precision precision of the quantized item matrix
+     * @param oversampling ratio between the candidates re-scored and the length of the recommendation
+     */
+    public MFRecommender(FastUserIndex<U> uIndex, FastItemIndex<I> iIndex, Factorization<U, I> factorization, QuantizedMatrix.Precision precision, double oversampling) {
+        super(uIndex, iIndex);
+        this.factorization = factorization;
+        this.precision = precision;
+        this.oversampling = oversampling;
+        this.quantized = new QuantizedSnapshot(factorization, precision);
     }
 
     @Override
     public FastRecommendation getRecommendation(int uidx, int maxLength, IntPredicate filter) {
-        DoubleMatrix1D pu;
-
-        pu = factorization.getUserVector(uidx2user(uidx));
-        if (pu == null) {
+        int fuidx = factorization.user2uidx(uidx2user(uidx));
+        if (fuidx < 0) {
             return new FastRecommendation(uidx, new ArrayList<>());
         }
 
-        IntDoubleTopN topN = new IntDoubleTopN(min(maxLength, factorization.numItems()));
+        FlatDoubleMatrix2D p = factorization.getUserMatrix();
+        FlatDoubleMatrix2D q = factorization.getItemMatrix();
+        int K = factorization.getK();
+        int pu = p.offset(fuidx);
+        double[] r = new double[q.rows()];
+
+        int numCandidates = (int) min(ceil(maxLength * oversampling), q.rows());
+        if (precision != null && numCandidates < q.rows()) {
+            getQuantizedItemMatrix().gemv(p.elements(), pu, r, 0);
+
+            IntDoubleTopN candidates = new IntDoubleTopN(numCandidates);
+            for (int iidx = 0; iidx < r.length; iidx++) {
+                if (filter.test(iidx)) {
+                    candidates.add(iidx, r[iidx]);
+                }
+            }
+
+            IntDoubleTopN topN = new IntDoubleTopN(min(maxLength, numCandidates));
+            for (Tuple2id candidate : candidates) {
+                topN.add(candidate.v1, dot(q.elements(), q.offset(candidate.v1), p.elements(), pu, K));
+            }
+            topN.sort();
+
+            return new FastRecommendation(uidx, topN.reverseStream().collect(toList()));
+        }
+
+        gemv(q.rows(), K, q.elements(), 0, q.stride(), p.elements(), pu, r, 0);
 
-        DoubleMatrix1D r = factorization.getItemMatrix().zMult(pu, null);
-        for (int iidx = 0; iidx < r.size(); iidx++) {
+        IntDoubleTopN topN = new IntDoubleTopN(min(maxLength, factorization.numItems()));
+        for (int iidx = 0; iidx < r.length; iidx++) {
             if (filter.test(iidx)) {
-                topN.add(iidx, r.getQuick(iidx));
+                topN.add(iidx, r[iidx]);
             }
         }
 
@@ -76,23 +134,124 @@ public class MFRecommender<U, I> extends AbstractFastRecommender<U, I> {
         return new FastRecommendation(uidx, items);
     }
 
+    /**
+     * Batch filter recommendation. The scores of the block of users are
+     * computed by a cache-blocked matrix-matrix product with tiles of the
+     * item matrix, so that each tile is read from memory once per block
+     * rather than once per user, and are added to the top-N heap of each
+     * user tile by tile. Quantized scoring is not used here.
+     *
+     * @param uidxs indices of the users to be issued a recommendation
+     * @param maxLength maximum length of recommendation
+     * @param filters (fast) filter of each user index
+     * @return a (fast) recommendation list for each user, in the same order
+     */
     @Override
-    public FastRecommendation getRecommendation(int uidx, IntStream candidates) {
-        DoubleMatrix1D pu;
+    public List<FastRecommendation> getRecommendations(int[] uidxs, int maxLength, IntFunction<IntPredicate> filters) {
+        FlatDoubleMatrix2D p = factorization.getUserMatrix();
+        FlatDoubleMatrix2D q = factorization.getItemMatrix();
+        int K = factorization.getK();
+        int numItems = q.rows();
+
+        int[] block = new int[uidxs.length];
+        int B = 0;
+        double[] pb = new double[uidxs.length * K];
+        for (int b = 0; b < uidxs.length; b++) {
+            int fuidx = factorization.user2uidx(uidx2user(uidxs[b]));
+            if (fuidx >= 0) {
+                System.arraycopy(p.elements(), p.offset(fuidx), pb, B * K, K);
+                block[B++] = b;
+            }
+        }
+
+        IntPredicate[] filterArray = new IntPredicate[B];
+        IntDoubleTopN[] topNs = new IntDoubleTopN[B];
+        for (int b = 0; b < B; b++) {
+            filterArray[b] = filters.apply(uidxs[block[b]]);
+            topNs[b] = new IntDoubleTopN(min(maxLength, numItems));
+        }
 
-        pu = factorization.getUserVector(uidx2user(uidx));
-        if (pu == null) {
+        double[] c = new double[B * BATCH_ITEM_TILE];
+        for (int i0 = 0; i0 < numItems; i0 += BATCH_ITEM_TILE) {
+            int n = min(BATCH_ITEM_TILE, numItems - i0);
+            gemm(B, n, K, pb, 0, K, q.elements(), q.offset(i0), q.stride(), c, 0, BATCH_ITEM_TILE);
+            for (int b = 0; b < B; b++) {
+                IntPredicate filter = filterArray[b];
+                IntDoubleTopN topN = topNs[b];
+                for (int j = 0; j < n; j++) {
+                    if (filter.test(i0 + j)) {
+                        topN.add(i0 + j, c[b * BATCH_ITEM_TILE + j]);
+                    }
+                }
+            }
+        }
+
+        FastRecommendation[] recommendations = new FastRecommendation[uidxs.length];
+        for (int b = 0; b < B; b++) {
+            topNs[b].sort();
+            recommendations[block[b]] = new FastRecommendation(uidxs[block[b]], topNs[b].reverseStream().collect(toList()));
+        }
+        for (int b = 0; b < uidxs.length; b++) {
+            if (recommendations[b] == null) {
+                recommendations[b] = new FastRecommendation(uidxs[b], new ArrayList<>());
+            }
+        }
+
+        return Arrays.asList(recommendations);
+    }
+
+    /**
+     * Candidates ranking. The candidates are scored by the inner products of
+     * their rows of the item matrix with the user vector.
+     *
+     * @param uidx item of the user to be issued a recommendation
+     * @param candidates indices of the candidate items, without duplicates
+     * @param maxLength maximum length of recommendation
+     * @return a recommendation list
+     */
+    @Override
+    public FastRecommendation getRecommendation(int uidx, int[] candidates, int maxLength) {
+        int fuidx = factorization.user2uidx(uidx2user(uidx));
+        if (fuidx < 0) {
             return new FastRecommendation(uidx, new ArrayList<>());
         }
-        
-        DenseDoubleMatrix2D q = factorization.getItemMatrix();
-        
-        List<Tuple2id> items = candidates
-                .mapToObj(iidx -> tuple(iidx, q.viewRow(iidx).zDotProduct(pu)))
-                .sorted(comparingDouble(Tuple2id::v2).reversed())
-                .collect(toList());
-        
-        return new FastRecommendation(uidx, items);
+
+        FlatDoubleMatrix2D p = factorization.getUserMatrix();
+        FlatDoubleMatrix2D q = factorization.getItemMatrix();
+        int K = factorization.getK();
+        int pu = p.offset(fuidx);
+
+        IntDoubleTopN topN = new IntDoubleTopN(min(maxLength, candidates.length));
+        for (int iidx : candidates) {
+            topN.add(iidx, dot(q.elements(), q.offset(iidx), p.elements(), pu, K));
+        }
+        topN.sort();
+
+        return new FastRecommendation(uidx, topN.reverseStream().collect(toList()));
     }
 
+    private QuantizedMatrix getQuantizedItemMatrix() {
+        QuantizedSnapshot snapshot = quantized;
+        if (snapshot.version != factorization.getVersion()) {
+            snapshot = new QuantizedSnapshot(factorization, precision);
+            quantized = snapshot;
+        }
+
+        return snapshot.matrix;
+    }
+
+    /**
+     * Quantized copy of the item matrix, with the version of the
+     * factorization it was taken from.
+     */
+    private static class QuantizedSnapshot {
+
+        private final long version;
+        private final QuantizedMatrix matrix;
+
+        QuantizedSnapshot(Factorization<?, ?> factorization, QuantizedMatrix.Precision precision) {
+            this.version = factorization.getVersion();
+            this.matrix = QuantizedMatrix.of(factorization.getItemMatrix(), precision);
+        }
+    }
 }
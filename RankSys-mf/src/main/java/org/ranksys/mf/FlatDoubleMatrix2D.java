@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mf;
+
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+
+/**
+ * Dense matrix over a flat row-major array with an explicit row stride.
+ * The backing array is exposed so that trainers and recommenders can work on
+ * the rows directly, while the Colt methods remain available on the same
+ * storage.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class FlatDoubleMatrix2D extends DenseDoubleMatrix2D {
+
+    /**
+     * Constructor for a zero-filled matrix with stride equal to the number
+     * of columns.
+     *
+     * @param rows number of rows
+     * @param columns number of columns
+     */
+    public FlatDoubleMatrix2D(int rows, int columns) {
+        this(rows, columns, new double[rows * columns], columns);
+    }
+
+    /**
+     * Constructor wrapping an existing array.
+     *
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param elements row-major array of at least rows * stride cells
+     * @param stride distance in the array between consecutive rows
+     */
+    public FlatDoubleMatrix2D(int rows, int columns, double[] elements, int stride) {
+        super(rows, columns, elements, 0, 0, stride, 1);
+        if (stride < columns || elements.length < (long) rows * stride) {
+            throw new IllegalArgumentException("array too small for " + rows + " rows of stride " + stride);
+        }
+        this.isNoView = stride == columns;
+    }
+
+    /**
+     * Returns the backing array.
+     *
+     * @return row-major array of cells
+     */
+    public double[] elements() {
+        return elements;
+    }
+
+    /**
+     * Returns the distance in the backing array between consecutive rows.
+     *
+     * @return row stride
+     */
+    public int stride() {
+        return rowStride;
+    }
+
+    /**
+     * Returns the position in the backing array of the first cell of a row.
+     *
+     * @param row row index
+     * @return offset of the row
+     */
+    public int offset(int row) {
+        return row * rowStride;
+    }
+
+    /**
+     * Returns a matrix with the same columns and the given number of rows
+     * (not less than the current one), the new rows being zero. The backing
+     * array is shared if it has room for the new rows; otherwise it is
+     * copied into a larger one, leaving some room for further growth.
+     *
+     * @param rows number of rows
+     * @return matrix with the given number of rows
+     */
+    public FlatDoubleMatrix2D withRows(int rows) {
+        if (rows < rows()) {
+            throw new IllegalArgumentException("matrices can only grow");
+        }
+        int stride = stride();
+        if ((long) rows * stride <= elements.length) {
+            return new FlatDoubleMatrix2D(rows, columns(), elements, stride);
+        }
+
+        int maxRows = Integer.MAX_VALUE / stride;
+        if (rows > maxRows) {
+            throw new IllegalArgumentException("cannot grow beyond " + maxRows + " rows of stride " + stride);
+        }
+        int capacity = Math.min(maxRows, Math.max(rows, rows() + (rows() >> 1)));
+        double[] grown = new double[capacity * stride];
+        System.arraycopy(elements, 0, grown, 0, rows() * stride);
+
+        return new FlatDoubleMatrix2D(rows, columns(), grown, stride);
+    }
+
+    /**
+     * Returns a flat matrix with the contents of a dense matrix, the same
+     * matrix if it is already flat.
+     *
+     * @param matrix dense matrix
+     * @return flat matrix
+     */
+    public static FlatDoubleMatrix2D of(DenseDoubleMatrix2D matrix) {
+        if (matrix instanceof FlatDoubleMatrix2D) {
+            return (FlatDoubleMatrix2D) matrix;
+        }
+
+        int rows = matrix.rows();
+        int columns = matrix.columns();
+        double[] elements = new double[rows * columns];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                elements[r * columns + c] = matrix.getQuick(r, c);
+            }
+        }
+
+        return new FlatDoubleMatrix2D(rows, columns, elements, columns);
+    }
+}
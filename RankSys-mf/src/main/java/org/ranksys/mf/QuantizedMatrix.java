@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mf;
+
+import org.ranksys.core.util.kernels.Float16;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.round;
+
+/**
+ * Read-only, reduced precision copy of a dense matrix for approximate
+ * matrix-vector products. Rows are stored either as half precision floats or
+ * as signed bytes with a scale per row, reading four or eight times fewer
+ * bytes than doubles.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class QuantizedMatrix {
+
+    /**
+     * Precision of the quantized values.
+     */
+    public enum Precision {
+
+        /**
+         * 16-bit floating point (IEEE 754 half precision).
+         */
+        FLOAT16,
+        /**
+         * 8-bit integers with a scale per row.
+         */
+        INT8
+    }
+
+    private static final float[] HALF_TO_FLOAT = new float[1 << 16];
+
+    static {
+        for (int h = 0; h < HALF_TO_FLOAT.length; h++) {
+            HALF_TO_FLOAT[h] = Float16.toFloat((short) h);
+        }
+    }
+
+    private final Precision precision;
+    private final int rows;
+    private final int columns;
+    private final short[] halves;
+    private final byte[] bytes;
+    private final double[] scales;
+
+    private QuantizedMatrix(Precision precision, int rows, int columns, short[] halves, byte[] bytes, double[] scales) {
+        this.precision = precision;
+        this.rows = rows;
+        this.columns = columns;
+        this.halves = halves;
+        this.bytes = bytes;
+        this.scales = scales;
+    }
+
+    /**
+     * Quantizes a matrix.
+     *
+     * @param matrix matrix
+     * @param precision precision of the quantized values
+     * @return quantized copy of the matrix
+     */
+    public static QuantizedMatrix of(FlatDoubleMatrix2D matrix, Precision precision) {
+        int rows = matrix.rows();
+        int K = matrix.columns();
+        double[] m = matrix.elements();
+
+        switch (precision) {
+            case FLOAT16:
+                short[] halves = new short[rows * K];
+                for (int row = 0; row < rows; row++) {
+                    int off = matrix.offset(row);
+                    for (int k = 0; k < K; k++) {
+                        halves[row * K + k] = Float16.fromFloat((float) m[off + k]);
+                    }
+                }
+                return new QuantizedMatrix(precision, rows, K, halves, null, null);
+            case INT8:
+                byte[] bytes = new byte[rows * K];
+                double[] scales = new double[rows];
+                for (int row = 0; row < rows; row++) {
+                    int off = matrix.offset(row);
+                    double maxAbs = 0.0;
+                    for (int k = 0; k < K; k++) {
+                        maxAbs = max(maxAbs, abs(m[off + k]));
+                    }
+                    if (maxAbs > 0.0) {
+                        scales[row] = maxAbs / Byte.MAX_VALUE;
+                        for (int k = 0; k < K; k++) {
+                            bytes[row * K + k] = (byte) round(m[off + k] / scales[row]);
+                        }
+                    }
+                }
+                return new QuantizedMatrix(precision, rows, K, null, bytes, scales);
+            default:
+                throw new IllegalArgumentException("unsupported precision " + precision);
+        }
+    }
+
+    /**
+     * Returns the precision of the quantized values.
+     *
+     * @return precision
+     */
+    public Precision precision() {
+        return precision;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return number of rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return number of columns
+     */
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * Approximate matrix-vector product: y[yOff + i] = row_i · x[xOff, xOff + columns).
+     *
+     * @param x input vector
+     * @param xOff offset of the input vector
+     * @param y output vector
+     * @param yOff offset of the output vector
+     */
+    public void gemv(double[] x, int xOff, double[] y, int yOff) {
+        int K = columns;
+
+        if (precision == Precision.FLOAT16) {
+            for (int row = 0; row < rows; row++) {
+                int off = row * K;
+                double s0 = 0.0;
+                double s1 = 0.0;
+                double s2 = 0.0;
+                double s3 = 0.0;
+                int k = 0;
+                for (; k + 3 < K; k += 4) {
+                    s0 += HALF_TO_FLOAT[halves[off + k] & 0xffff] * x[xOff + k];
+                    s1 += HALF_TO_FLOAT[halves[off + k + 1] & 0xffff] * x[xOff + k + 1];
+                    s2 += HALF_TO_FLOAT[halves[off + k + 2] & 0xffff] * x[xOff + k + 2];
+                    s3 += HALF_TO_FLOAT[halves[off + k + 3] & 0xffff] * x[xOff + k + 3];
+                }
+                for (; k < K; k++) {
+                    s0 += HALF_TO_FLOAT[halves[off + k] & 0xffff] * x[xOff + k];
+                }
+                y[yOff + row] = (s0 + s1) + (s2 + s3);
+            }
+        } else {
+            for (int row = 0; row < rows; row++) {
+                int off = row * K;
+                double s0 = 0.0;
+                double s1 = 0.0;
+                double s2 = 0.0;
+                double s3 = 0.0;
+                int k = 0;
+                for (; k + 3 < K; k += 4) {
+                    s0 += bytes[off + k] * x[xOff + k];
+                    s1 += bytes[off + k + 1] * x[xOff + k + 1];
+                    s2 += bytes[off + k + 2] * x[xOff + k + 2];
+                    s3 += bytes[off + k + 3] * x[xOff + k + 3];
+                }
+                for (; k < K; k++) {
+                    s0 += bytes[off + k] * x[xOff + k];
+                }
+                y[yOff + row] = scales[row] * ((s0 + s1) + (s2 + s3));
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mf.sgd;
+
+import static java.lang.Math.pow;
+
+/**
+ * Learning rate of stochastic gradient descent as a function of the epoch.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+@FunctionalInterface
+public interface LearningRateSchedule {
+
+    /**
+     * Returns the learning rate of an epoch.
+     *
+     * @param epoch epoch, starting at 1
+     * @return learning rate
+     */
+    double rate(int epoch);
+
+    /**
+     * Constant learning rate.
+     *
+     * @param rate learning rate
+     * @return schedule
+     */
+    static LearningRateSchedule constant(double rate) {
+        return epoch -> rate;
+    }
+
+    /**
+     * Inverse scaling learning rate: rate / (1 + decay * (epoch - 1)).
+     *
+     * @param rate initial learning rate
+     * @param decay decay factor
+     * @return schedule
+     */
+    static LearningRateSchedule inverse(double rate, double decay) {
+        return epoch -> rate / (1 + decay * (epoch - 1));
+    }
+
+    /**
+     * Exponentially decaying learning rate: rate * gamma^(epoch - 1).
+     *
+     * @param rate initial learning rate
+     * @param gamma decay factor per epoch
+     * @return schedule
+     */
+    static LearningRateSchedule exponential(double rate, double gamma) {
+        return epoch -> rate * pow(gamma, epoch - 1);
+    }
+}
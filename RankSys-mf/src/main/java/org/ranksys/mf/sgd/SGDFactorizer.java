@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mf.sgd;
+
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.mf.Factorization;
+import es.uam.eps.ir.ranksys.mf.Factorizer;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import org.ranksys.mf.FlatDoubleMatrix2D;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.Math.max;
+import static java.lang.Math.sqrt;
+import static java.util.stream.IntStream.range;
+import static org.ranksys.core.util.kernels.Kernels.dot;
+
+/**
+ * Biased matrix factorization for explicit ratings trained by stochastic
+ * gradient descent.
+ *
+ * Y. Koren, R. Bell, C. Volinsky. Matrix Factorization Techniques for
+ * Recommender Systems. Computer 42(8), 2009.
+ *
+ * Two parallel schedules are available. Hogwild (Niu et al., NIPS 2011)
+ * samples preferences in every thread and updates the factors without locks.
+ * The block-stratified schedule of DSGD/FPSGD (Gemulla et al., KDD 2011;
+ * Zhuang et al., RecSys 2013) splits users and items into B blocks each and,
+ * in every sub-epoch, processes B blocks sharing no user or item in parallel;
+ * for a given seed and number of blocks its result is deterministic.
+ *
+ * The factorization has K + 2 dimensions so that it can be used by
+ * MFRecommender: the user bias and a constant 1 are appended to the user
+ * vectors, and a constant 1 and the item bias plus the global mean to the
+ * item vectors.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ *
+ * @param <U> type of the users
+ * @param <I> type of the items
+ */
+public class SGDFactorizer<U, I> extends Factorizer<U, I> {
+
+    private static final Logger LOG = Logger.getLogger(SGDFactorizer.class.getName());
+
+    private final double lambda;
+    private final double lambdaBias;
+    private final LearningRateSchedule rate;
+    private final int numEpochs;
+    private final long seed;
+    private final int numBlocks;
+
+    /**
+     * Constructor. Hogwild schedule.
+     *
+     * @param lambda regularization factor of user and item vectors
+     * @param lambdaBias regularization factor of user and item biases
+     * @param rate learning rate schedule
+     * @param numEpochs number of epochs
+     * @param seed random seed
+     */
+    public SGDFactorizer(double lambda, double lambdaBias, LearningRateSchedule rate, int numEpochs, long seed) {
+        this(lambda, lambdaBias, rate, numEpochs, seed, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param lambda regularization factor of user and item vectors
+     * @param lambdaBias regularization factor of user and item biases
+     * @param rate learning rate schedule
+     * @param numEpochs number of epochs
+     * @param seed random seed
+     * @param numBlocks number of user and item blocks of the stratified
+     * schedule, 0 for Hogwild
+     */
+    public SGDFactorizer(double lambda, double lambdaBias, LearningRateSchedule rate, int numEpochs, long seed, int numBlocks) {
+        this.lambda = lambda;
+        this.lambdaBias = lambdaBias;
+        this.rate = rate;
+        this.numEpochs = numEpochs;
+        this.seed = seed;
+        this.numBlocks = numBlocks;
+    }
+
+    /**
+     * Mean squared error of the factorization on the preference data.
+     *
+     * @param factorization matrix factorization
+     * @param data preference data
+     * @return mean squared error
+     */
+    @Override
+    public double error(Factorization<U, I> factorization, FastPreferenceData<U, I> data) {
+        FlatDoubleMatrix2D p = factorization.getUserMatrix();
+        FlatDoubleMatrix2D q = factorization.getItemMatrix();
+        int K = factorization.getK();
+
+        return data.getUidxWithPreferences().parallel().mapToDouble(uidx -> {
+            double err = 0.0;
+            IntIterator iidxs = data.getUidxIidxs(uidx);
+            DoubleIterator ivs = data.getUidxVs(uidx);
+            while (iidxs.hasNext()) {
+                double e = ivs.nextDouble() - dot(p.elements(), p.offset(uidx), q.elements(), q.offset(iidxs.nextInt()), K);
+                err += e * e;
+            }
+            return err;
+        }).sum() / data.numPreferences();
+    }
+
+    @Override
+    public Factorization<U, I> factorize(int K, FastPreferenceData<U, I> data) {
+        SplittableRandom random = new SplittableRandom(seed).split();
+        double sd = sqrt(1.0 / K);
+        Factorization<U, I> factorization = new Factorization<>(data, data, K + 2, x -> sd * (random.nextDouble() - 0.5));
+
+        double mu = getMean(data);
+        FlatDoubleMatrix2D p = factorization.getUserMatrix();
+        FlatDoubleMatrix2D q = factorization.getItemMatrix();
+        for (int uidx = 0; uidx < p.rows(); uidx++) {
+            p.elements()[p.offset(uidx) + K] = 0.0;
+            p.elements()[p.offset(uidx) + K + 1] = 1.0;
+        }
+        for (int iidx = 0; iidx < q.rows(); iidx++) {
+            q.elements()[q.offset(iidx) + K] = 1.0;
+            q.elements()[q.offset(iidx) + K + 1] = mu;
+        }
+
+        factorize(factorization, data);
+
+        return factorization;
+    }
+
+    @Override
+    public void factorize(Factorization<U, I> factorization, FastPreferenceData<U, I> data) {
+        Updater updater = new Updater(factorization, getMean(data));
+        Blocks blocks = new Blocks(data, max(1, numBlocks));
+        SplittableRandom random = new SplittableRandom(seed);
+
+        for (int t = 1; t <= numEpochs; t++) {
+            if (!epoch(t, updater, blocks, random.split(), factorization, data)) {
+                break;
+            }
+        }
+
+        factorization.markModified();
+    }
+
+    private boolean epoch(int t, Updater updater, Blocks blocks, SplittableRandom random, Factorization<U, I> factorization, FastPreferenceData<U, I> data) {
+        long time0 = System.nanoTime();
+
+        double eta = rate.rate(t);
+        if (numBlocks > 0) {
+            stratifiedEpoch(updater, blocks, eta, random);
+        } else {
+            hogwildEpoch(updater, blocks, eta, random);
+        }
+
+        long time1 = System.nanoTime() - time0;
+
+        LOG.log(Level.INFO, String.format("iteration n = %3d t = %.2fs", t, time1 / 1_000_000_000.0));
+        LOG.log(Level.FINE, () -> String.format("iteration n = %3d e = %.6f", t, error(factorization, data)));
+
+        return iterationDone(t, factorization);
+    }
+
+    private void hogwildEpoch(Updater updater, Blocks blocks, double eta, SplittableRandom random) {
+        int numThreads = max(1, ForkJoinPool.getCommonPoolParallelism());
+        int numPrefs = blocks.vs.length;
+        SplittableRandom[] randoms = new SplittableRandom[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            randoms[t] = random.split();
+        }
+
+        range(0, numThreads).parallel().forEach(t -> {
+            SplittableRandom threadRandom = randoms[t];
+            int n = numPrefs / numThreads + (t < numPrefs % numThreads ? 1 : 0);
+            for (int j = 0; j < n; j++) {
+                int pos = threadRandom.nextInt(numPrefs);
+                updater.update(blocks.uidxs[pos], blocks.iidxs[pos], blocks.vs[pos], eta);
+            }
+        });
+    }
+
+    private void stratifiedEpoch(Updater updater, Blocks blocks, double eta, SplittableRandom random) {
+        int B = blocks.numBlocks;
+        for (int s = 0; s < B; s++) {
+            int shift = s;
+            SplittableRandom[] randoms = new SplittableRandom[B];
+            for (int b = 0; b < B; b++) {
+                randoms[b] = random.split();
+            }
+
+            range(0, B).parallel().forEach(b -> {
+                int block = b * B + (b + shift) % B;
+                int from = blocks.offsets[block];
+                int to = blocks.offsets[block + 1];
+                blocks.shuffle(from, to, randoms[b]);
+                for (int pos = from; pos < to; pos++) {
+                    updater.update(blocks.uidxs[pos], blocks.iidxs[pos], blocks.vs[pos], eta);
+                }
+            });
+        }
+    }
+
+    private static double getMean(FastPreferenceData<?, ?> data) {
+        return data.getUidxWithPreferences().mapToDouble(uidx -> {
+            double sum = 0.0;
+            DoubleIterator ivs = data.getUidxVs(uidx);
+            while (ivs.hasNext()) {
+                sum += ivs.nextDouble();
+            }
+            return sum;
+        }).sum() / data.numPreferences();
+    }
+
+    private class Updater {
+
+        private final double[] pa;
+        private final double[] qa;
+        private final FlatDoubleMatrix2D p;
+        private final FlatDoubleMatrix2D q;
+        private final int K;
+        private final double mu;
+
+        Updater(Factorization<U, I> factorization, double mu) {
+            this.p = factorization.getUserMatrix();
+            this.q = factorization.getItemMatrix();
+            this.pa = p.elements();
+            this.qa = q.elements();
+            this.K = factorization.getK() - 2;
+            this.mu = mu;
+        }
+
+        void update(int uidx, int iidx, double rui, double eta) {
+            int pu = p.offset(uidx);
+            int qi = q.offset(iidx);
+
+            double e = rui - dot(pa, pu, qa, qi, K + 2);
+
+            for (int k = 0; k < K; k++) {
+                double puk = pa[pu + k];
+                double qik = qa[qi + k];
+                pa[pu + k] = puk + eta * (e * qik - lambda * puk);
+                qa[qi + k] = qik + eta * (e * puk - lambda * qik);
+            }
+            pa[pu + K] += eta * (e - lambdaBias * pa[pu + K]);
+            qa[qi + K + 1] += eta * (e - lambdaBias * (qa[qi + K + 1] - mu));
+        }
+    }
+
+    private static class Blocks {
+
+        private final int numBlocks;
+        private final int[] offsets;
+        private final int[] uidxs;
+        private final int[] iidxs;
+        private final double[] vs;
+
+        Blocks(FastPreferenceData<?, ?> data, int numBlocks) {
+            this.numBlocks = numBlocks;
+            this.offsets = new int[numBlocks * numBlocks + 1];
+            this.uidxs = new int[data.numPreferences()];
+            this.iidxs = new int[data.numPreferences()];
+            this.vs = new double[data.numPreferences()];
+
+            data.getUidxWithPreferences().forEach(uidx -> {
+                IntIterator it = data.getUidxIidxs(uidx);
+                while (it.hasNext()) {
+                    offsets[block(uidx, it.nextInt()) + 1]++;
+                }
+            });
+            for (int b = 0; b < numBlocks * numBlocks; b++) {
+                offsets[b + 1] += offsets[b];
+            }
+
+            int[] cursors = offsets.clone();
+            data.getUidxWithPreferences().forEach(uidx -> {
+                IntIterator it = data.getUidxIidxs(uidx);
+                DoubleIterator vt = data.getUidxVs(uidx);
+                while (it.hasNext()) {
+                    int iidx = it.nextInt();
+                    int pos = cursors[block(uidx, iidx)]++;
+                    uidxs[pos] = uidx;
+                    iidxs[pos] = iidx;
+                    vs[pos] = vt.nextDouble();
+                }
+            });
+        }
+
+        private int block(int uidx, int iidx) {
+            return (uidx % numBlocks) * numBlocks + iidx % numBlocks;
+        }
+
+        void shuffle(int from, int to, SplittableRandom random) {
+            for (int i = to - 1; i > from; i--) {
+                int j = from + random.nextInt(i - from + 1);
+                int u = uidxs[i];
+                uidxs[i] = uidxs[j];
+                uidxs[j] = u;
+                int it = iidxs[i];
+                iidxs[i] = iidxs[j];
+                iidxs[j] = it;
+                double v = vs[i];
+                vs[i] = vs[j];
+                vs[j] = v;
+            }
+        }
+    }
+}
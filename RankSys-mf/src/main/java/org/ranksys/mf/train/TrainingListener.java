@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mf.train;
+
+import es.uam.eps.ir.ranksys.mf.Factorization;
+
+/**
+ * Listener of the iterations of a factorizer. See {@link TrainingListeners}
+ * for loss estimators, held-out metrics and early stopping.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ *
+ * @param <U> type of the users
+ * @param <I> type of the items
+ */
+@FunctionalInterface
+public interface TrainingListener<U, I> {
+
+    /**
+     * Called after each iteration (epoch) of the training.
+     *
+     * @param iter number of the iteration, starting at 1
+     * @param factorization factorization after the iteration
+     * @return true to continue training, false to stop
+     */
+    boolean iteration(int iter, Factorization<U, I> factorization);
+}
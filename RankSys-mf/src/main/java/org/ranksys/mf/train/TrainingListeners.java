@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mf.train;
+
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.fast.preference.SimpleFastPreferenceData;
+import es.uam.eps.ir.ranksys.mf.Factorization;
+import es.uam.eps.ir.ranksys.mf.Factorizer;
+import es.uam.eps.ir.ranksys.mf.rec.MFRecommender;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.ranksys.core.util.tuples.Tuple2id;
+
+import java.util.SplittableRandom;
+import java.util.function.ToDoubleFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.min;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+/**
+ * Training listeners and measures of the progress of the training of
+ * factorizers.
+ *
+ * Measures are functions of the factorization evaluated on a fixed sample of
+ * users, so that they cost a fraction of a full pass over the data.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class TrainingListeners {
+
+    private static final Logger LOG = Logger.getLogger(TrainingListeners.class.getName());
+
+    /**
+     * Loss of the factorizer restricted to the preferences of a sample of
+     * users. It is an estimate of the training loss up to a constant factor,
+     * which depends on how each factorizer normalizes its loss, and is
+     * therefore comparable between iterations.
+     *
+     * @param <U> type of the users
+     * @param <I> type of the items
+     * @param factorizer factorizer whose loss is estimated
+     * @param data training preference data
+     * @param numUsers number of sampled users
+     * @param seed random seed of the sample
+     * @return sampled loss measure
+     */
+    public static <U, I> ToDoubleFunction<Factorization<U, I>> sampledLoss(Factorizer<U, I> factorizer, FastPreferenceData<U, I> data, int numUsers, long seed) {
+        int[] uidxs = sampleUsers(data, numUsers, seed);
+        FastPreferenceData<U, I> sample = SimpleFastPreferenceData.load(IntStream.of(uidxs).boxed()
+                .flatMap(uidx -> data.getUidxPreferences(uidx)
+                        .map(iv -> tuple(data.uidx2user(uidx), data.iidx2item(iv.v1), iv.v2))), data, data);
+
+        return factorization -> factorizer.error(factorization, sample);
+    }
+
+    /**
+     * Recall at a cutoff of the recommendations of a MFRecommender on
+     * held-out preferences, averaged over a sample of the users with
+     * held-out preferences. Training items are not recommended. Training and
+     * held-out data must share the user and item indices.
+     *
+     * @param <U> type of the users
+     * @param <I> type of the items
+     * @param trainData training preference data
+     * @param testData held-out preference data
+     * @param cutoff length of the recommendations
+     * @param numUsers number of sampled users
+     * @param seed random seed of the sample
+     * @return held-out recall measure
+     */
+    public static <U, I> ToDoubleFunction<Factorization<U, I>> heldOutRecall(FastPreferenceData<U, I> trainData, FastPreferenceData<U, I> testData, int cutoff, int numUsers, long seed) {
+        int[] uidxs = sampleUsers(testData, numUsers, seed);
+
+        return factorization -> {
+            MFRecommender<U, I> recommender = new MFRecommender<>(trainData, trainData, factorization);
+
+            return IntStream.of(uidxs).parallel().mapToDouble(uidx -> {
+                IntSet trainIidxs = new IntOpenHashSet(trainData.getUidxIidxs(uidx));
+                IntSet testIidxs = new IntOpenHashSet(testData.getUidxIidxs(uidx));
+
+                int hits = 0;
+                for (Tuple2id iv : recommender.getRecommendation(uidx, cutoff, iidx -> !trainIidxs.contains(iidx)).getIidxs()) {
+                    if (testIidxs.contains(iv.v1)) {
+                        hits++;
+                    }
+                }
+
+                return hits / (double) testIidxs.size();
+            }).average().orElse(0.0);
+        };
+    }
+
+    /**
+     * Listener that logs a measure after every iteration.
+     *
+     * @param <U> type of the users
+     * @param <I> type of the items
+     * @param name name of the measure
+     * @param measure measure of the factorization
+     * @return logging listener
+     */
+    public static <U, I> TrainingListener<U, I> logging(String name, ToDoubleFunction<Factorization<U, I>> measure) {
+        return (iter, factorization) -> {
+            double value = measure.applyAsDouble(factorization);
+            LOG.log(Level.INFO, String.format("iteration n = %3d %s = %.6f", iter, name, value));
+            return true;
+        };
+    }
+
+    /**
+     * Listener that stops the training when a measure has not improved by
+     * more than a minimum amount for a number of iterations. The state of the
+     * listener is reset at the first iteration of every training. The
+     * factorization is left as it is after the last iteration, not restored
+     * to the best one.
+     *
+     * @param <U> type of the users
+     * @param <I> type of the items
+     * @param name name of the measure
+     * @param measure measure of the factorization
+     * @param minimize true if lower values of the measure are better, false otherwise
+     * @param patience number of iterations without improvement before stopping
+     * @param minDelta minimum change of the measure considered an improvement
+     * @return early stopping listener
+     */
+    public static <U, I> TrainingListener<U, I> earlyStopping(String name, ToDoubleFunction<Factorization<U, I>> measure, boolean minimize, int patience, double minDelta) {
+        return new TrainingListener<U, I>() {
+
+            private double best;
+            private int bestIter;
+
+            @Override
+            public boolean iteration(int iter, Factorization<U, I> factorization) {
+                double value = measure.applyAsDouble(factorization);
+                double gain = minimize ? -value : value;
+                if (iter == 1 || gain > best + minDelta) {
+                    best = gain;
+                    bestIter = iter;
+                }
+                LOG.log(Level.INFO, String.format("iteration n = %3d %s = %.6f", iter, name, value));
+
+                if (iter - bestIter >= patience) {
+                    LOG.log(Level.INFO, String.format("early stopping: %s did not improve since iteration %d", name, bestIter));
+                    return false;
+                }
+
+                return true;
+            }
+        };
+    }
+
+    private static int[] sampleUsers(FastPreferenceData<?, ?> data, int numUsers, long seed) {
+        int[] uidxs = data.getUidxWithPreferences().toArray();
+        SplittableRandom random = new SplittableRandom(seed);
+        int n = min(numUsers, uidxs.length);
+        for (int i = 0; i < n; i++) {
+            int j = i + random.nextInt(uidxs.length - i);
+            int uidx = uidxs[i];
+            uidxs[i] = uidxs[j];
+            uidxs[j] = uidx;
+        }
+
+        int[] sample = new int[n];
+        System.arraycopy(uidxs, 0, sample, 0, n);
+        return sample;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.ranksys.mf.als;
+
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.fast.preference.SimpleFastPreferenceData;
+import es.uam.eps.ir.ranksys.mf.Factorization;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import org.jooq.lambda.tuple.Tuple3;
+import static org.junit.Assert.assertArrayEquals;
+import org.junit.Test;
+import org.ranksys.mf.FlatDoubleMatrix2D;
+
+/**
+ * Test for the fold-in of ALSFactorizer subclasses.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class ALSFactorizerTest {
+
+    private static final int K = 4;
+
+    private final FastPreferenceData<Integer, Integer> data;
+
+    /**
+     * Constructor that initialises random implicit preferences of 30 users
+     * for 20 items.
+     */
+    public ALSFactorizerTest() {
+        Random random = new Random(1);
+        List<Tuple3<Integer, Integer, Double>> prefs = new ArrayList<>();
+        for (int u = 0; u < 30; u++) {
+            for (int i = 0; i < 20; i++) {
+                if (random.nextDouble() < 0.3) {
+                    prefs.add(tuple(u, i, 1.0 + random.nextInt(5)));
+                }
+            }
+        }
+        data = SimpleFastPreferenceData.load(prefs.stream(),
+                SimpleFastUserIndex.load(IntStream.range(0, 30).boxed()),
+                SimpleFastItemIndex.load(IntStream.range(0, 20).boxed()));
+    }
+
+    private static double[] row(FlatDoubleMatrix2D matrix, int row) {
+        return Arrays.copyOfRange(matrix.elements(), matrix.offset(row), matrix.offset(row) + matrix.columns());
+    }
+
+    /**
+     * Checks that folding in users after the item matrix has been written
+     * to, and marked as modified, gives the same vectors as a new factorizer,
+     * which has no Gram matrices kept from the factorization.
+     */
+    private void assertFoldInAfterModification(Supplier<ALSFactorizer<Integer, Integer>> factorizers) {
+        ALSFactorizer<Integer, Integer> factorizer = factorizers.get();
+        Factorization<Integer, Integer> factorization = factorizer.factorize(K, data);
+
+        FlatDoubleMatrix2D q = factorization.getItemMatrix();
+        for (int z = 0; z < K; z++) {
+            q.elements()[q.offset(3) + z] *= 2.0;
+        }
+        factorization.markModified();
+
+        // PZT starts from the current vectors, which are restored for the second fold-in
+        FlatDoubleMatrix2D p = factorization.getUserMatrix();
+        double[] start = row(p, 0);
+        factorizer.foldInUsers(factorization, data, new int[]{0, 1});
+        double[] cached = row(p, 0);
+        System.arraycopy(start, 0, p.elements(), p.offset(0), K);
+        factorizers.get().foldInUsers(factorization, data, new int[]{0});
+
+        assertArrayEquals(row(factorization.getUserMatrix(), 0), cached, 1e-9);
+    }
+
+    /**
+     * Tests the fold-in of HKVFactorizer after external modifications.
+     */
+    @Test
+    public void testHKVModified() {
+        assertFoldInAfterModification(() -> new HKVFactorizer<>(0.1, x -> 1 + 2 * x, 5));
+    }
+
+    /**
+     * Tests the fold-in of PZTFactorizer after external modifications.
+     */
+    @Test
+    public void testPZTModified() {
+        assertFoldInAfterModification(() -> new PZTFactorizer<>(0.1, x -> 1 + 2 * x, 5));
+    }
+}
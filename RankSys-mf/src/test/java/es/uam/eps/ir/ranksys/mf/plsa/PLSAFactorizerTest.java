@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.ranksys.mf.plsa;
+
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.fast.preference.SimpleFastPreferenceData;
+import es.uam.eps.ir.ranksys.mf.Factorization;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import org.jooq.lambda.tuple.Tuple3;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.ranksys.mf.FlatDoubleMatrix2D;
+
+/**
+ * Test for PLSAFactorizer.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class PLSAFactorizerTest {
+
+    private static final int K = 3;
+
+    private static FastPreferenceData<Integer, Integer> data(int numUsers, int numItems, List<Tuple3<Integer, Integer, Double>> prefs) {
+        return SimpleFastPreferenceData.load(prefs.stream(),
+                SimpleFastUserIndex.load(IntStream.range(0, numUsers).boxed()),
+                SimpleFastItemIndex.load(IntStream.range(0, numItems).boxed()));
+    }
+
+    private static void assertFinite(FlatDoubleMatrix2D matrix, int row) {
+        for (int z = 0; z < matrix.columns(); z++) {
+            double v = matrix.elements()[matrix.offset(row) + z];
+            assertTrue(v + " in row " + row, Double.isFinite(v) && v >= 0.0);
+        }
+    }
+
+    private static double sum(FlatDoubleMatrix2D matrix, int row) {
+        double sum = 0.0;
+        for (int z = 0; z < matrix.columns(); z++) {
+            sum += matrix.elements()[matrix.offset(row) + z];
+        }
+        return sum;
+    }
+
+    /**
+     * Tests the fold-in of users and items after growing the factorization,
+     * when there are preferences for the new items, whose vectors are zero.
+     */
+    @Test
+    public void testFoldInGrown() {
+        Random random = new Random(1);
+        List<Tuple3<Integer, Integer, Double>> prefs = new ArrayList<>();
+        for (int u = 0; u < 20; u++) {
+            for (int i = 0; i < 10; i++) {
+                if (random.nextDouble() < 0.5) {
+                    prefs.add(tuple(u, i, 1.0));
+                }
+            }
+        }
+
+        PLSAFactorizer<Integer, Integer> factorizer = new PLSAFactorizer<>(20);
+        Factorization<Integer, Integer> factorization = factorizer.factorize(K, data(20, 10, prefs));
+
+        prefs.add(tuple(0, 10, 1.0));
+        prefs.add(tuple(20, 0, 1.0));
+        prefs.add(tuple(20, 10, 1.0));
+        FastPreferenceData<Integer, Integer> grown = data(21, 11, prefs);
+
+        factorizer.foldInUsers(factorization, grown, new int[]{20});
+        assertEquals(21, factorization.getUserMatrix().rows());
+        for (int uidx = 0; uidx < 21; uidx++) {
+            assertFinite(factorization.getUserMatrix(), uidx);
+        }
+        assertTrue(sum(factorization.getUserMatrix(), 20) > 0.0);
+
+        factorizer.foldInItems(factorization, grown, new int[]{10});
+        assertEquals(11, factorization.getItemMatrix().rows());
+        for (int iidx = 0; iidx < 11; iidx++) {
+            assertFinite(factorization.getItemMatrix(), iidx);
+        }
+        assertTrue(sum(factorization.getItemMatrix(), 10) > 0.0);
+    }
+}
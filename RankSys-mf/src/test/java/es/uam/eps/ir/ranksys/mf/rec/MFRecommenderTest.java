@@ -20,6 +20,7 @@ import java.util.stream.IntStream;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.ranksys.core.util.tuples.Tuple2id;
+import org.ranksys.mf.QuantizedMatrix;
 import static org.ranksys.core.util.tuples.Tuples.tuple;
 
 /**
@@ -29,18 +30,22 @@ import static org.ranksys.core.util.tuples.Tuples.tuple;
  */
 public class MFRecommenderTest {
 
+    private final FastUserIndex<String> uIndex;
+    private final FastItemIndex<String> iIndex;
     private final MFRecommender<String, String> recommender;
+    private final MFRecommender<String, String> float16Recommender;
+    private final MFRecommender<String, String> int8Recommender;
 
     /**
      * Constructor that initialises some mock data.
      */
     public MFRecommenderTest() {
-        FastUserIndex<String> uIndex = new SimpleFastUserIndex<String>() {
+        uIndex = new SimpleFastUserIndex<String>() {
             {
                 add("0");
             }
         };
-        FastItemIndex<String> iIndex = new SimpleFastItemIndex<String>() {
+        iIndex = new SimpleFastItemIndex<String>() {
             {
                 add("0");
                 add("1");
@@ -67,6 +72,8 @@ public class MFRecommenderTest {
         };
 
         recommender = new MFRecommender<>(uIndex, iIndex, factorization);
+        float16Recommender = new MFRecommender<>(uIndex, iIndex, factorization, QuantizedMatrix.Precision.FLOAT16, 1.5);
+        int8Recommender = new MFRecommender<>(uIndex, iIndex, factorization, QuantizedMatrix.Precision.INT8, 1.5);
     }
 
     /**
@@ -87,6 +94,61 @@ public class MFRecommenderTest {
         assertEquals(expected, result);
     }
 
+    /**
+     * Tests the filter recommendation method with quantized scoring: the
+     * candidates are re-scored exactly.
+     */
+    @Test
+    public void testQuantizedFilter() {
+        int maxLength = 2;
+        IntPredicate filter = i -> i % 2 == 0;
+
+        List<Tuple2id> expected = Arrays.asList(
+                tuple(0, 6.1),
+                tuple(2, 4.1)
+        );
+
+        assertEquals(expected, float16Recommender.getRecommendation(0, maxLength, filter).getIidxs());
+        assertEquals(expected, int8Recommender.getRecommendation(0, maxLength, filter).getIidxs());
+    }
+
+    /**
+     * Tests that quantized scoring follows the modifications of the
+     * factorization: a changed item vector and a new item.
+     */
+    @Test
+    public void testQuantizedModified() {
+        DenseDoubleMatrix2D p = new DenseDoubleMatrix2D(new double[][]{
+            new double[]{0.1, 1.0}
+        });
+        DenseDoubleMatrix2D q = new DenseDoubleMatrix2D(new double[][]{
+            new double[]{1.0, 6.0},
+            new double[]{1.0, 5.0},
+            new double[]{1.0, 4.0},
+            new double[]{1.0, 3.0},
+            new double[]{1.0, 2.0},
+            new double[]{1.0, 1.0}
+        });
+        Factorization<String, String> factorization = new Factorization<>(uIndex, iIndex, p, q, 2);
+        MFRecommender<String, String> quantized = new MFRecommender<>(uIndex, iIndex, factorization, QuantizedMatrix.Precision.INT8, 1.5);
+
+        assertEquals(Arrays.asList(tuple(0, 6.1), tuple(1, 5.1)), quantized.getRecommendation(0, 2, i -> true).getIidxs());
+
+        FastItemIndex<String> grownIndex = new SimpleFastItemIndex<String>() {
+            {
+                iIndex.getAllItems().forEach(this::add);
+                add("6");
+            }
+        };
+        factorization.grow(uIndex, grownIndex);
+        factorization.getItemMatrix().setQuick(5, 1, 7.0);
+        factorization.getItemMatrix().setQuick(6, 0, 1.0);
+        factorization.getItemMatrix().setQuick(6, 1, 8.0);
+        factorization.markModified();
+
+        assertEquals(Arrays.asList(tuple(6, 8.1), tuple(5, 7.1)), quantized.getRecommendation(0, 2, i -> true).getIidxs());
+    }
+
     /**
      * Tests the candidates recommendation method.
      */
@@ -104,4 +166,21 @@ public class MFRecommenderTest {
         
         assertEquals(expected, result);
     }
+
+    /**
+     * Tests the array of candidates recommendation method.
+     */
+    @Test
+    public void testArrayCandidates() {
+        int[] candidates = {5, 1, 3};
+
+        List<Tuple2id> result = recommender.getRecommendation(0, candidates, 2).getIidxs();
+
+        List<Tuple2id> expected = Arrays.asList(
+                tuple(1, 5.1),
+                tuple(3, 3.1)
+        );
+
+        assertEquals(expected, result);
+    }
 }
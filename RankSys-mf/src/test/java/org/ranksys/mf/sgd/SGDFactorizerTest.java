@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mf.sgd;
+
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.fast.preference.SimpleFastPreferenceData;
+import es.uam.eps.ir.ranksys.mf.Factorization;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import org.jooq.lambda.tuple.Tuple3;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.ranksys.mf.FlatDoubleMatrix2D;
+
+/**
+ * Test for SGDFactorizer.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class SGDFactorizerTest {
+
+    private static final int K = 3;
+    private static final int NUM_USERS = 60;
+    private static final int NUM_ITEMS = 40;
+
+    private final FastPreferenceData<Integer, Integer> data;
+
+    /**
+     * Constructor that initialises a random sample of the ratings of a rank 3
+     * model with biases and noise.
+     */
+    public SGDFactorizerTest() {
+        Random random = new Random(1);
+        double[][] pu = new double[NUM_USERS][K + 1];
+        double[][] qi = new double[NUM_ITEMS][K + 1];
+        for (double[] v : pu) {
+            Arrays.setAll(v, k -> random.nextGaussian());
+        }
+        for (double[] v : qi) {
+            Arrays.setAll(v, k -> random.nextGaussian());
+        }
+
+        List<Tuple3<Integer, Integer, Double>> ratings = new ArrayList<>();
+        for (int u = 0; u < NUM_USERS; u++) {
+            for (int i = 0; i < NUM_ITEMS; i++) {
+                if (random.nextDouble() < 0.4) {
+                    double r = 3.0 + pu[u][K] + qi[i][K] + 0.1 * random.nextGaussian();
+                    for (int k = 0; k < K; k++) {
+                        r += pu[u][k] * qi[i][k];
+                    }
+                    ratings.add(tuple(u, i, r));
+                }
+            }
+        }
+
+        FastUserIndex<Integer> uIndex = SimpleFastUserIndex.load(IntStream.range(0, NUM_USERS).boxed());
+        FastItemIndex<Integer> iIndex = SimpleFastItemIndex.load(IntStream.range(0, NUM_ITEMS).boxed());
+        data = SimpleFastPreferenceData.load(ratings.stream(), uIndex, iIndex);
+    }
+
+    private static double[] values(FlatDoubleMatrix2D matrix) {
+        return Arrays.copyOf(matrix.elements(), matrix.rows() * matrix.columns());
+    }
+
+    /**
+     * Tests that the stratified schedule gives the same factorization for
+     * the same seed and number of blocks, and a different one for another
+     * seed.
+     */
+    @Test
+    public void testStratifiedDeterministic() {
+        LearningRateSchedule rate = LearningRateSchedule.constant(0.01);
+        Factorization<Integer, Integer> f1 = new SGDFactorizer<Integer, Integer>(0.02, 0.01, rate, 10, 1L, 3).factorize(K, data);
+        Factorization<Integer, Integer> f2 = new SGDFactorizer<Integer, Integer>(0.02, 0.01, rate, 10, 1L, 3).factorize(K, data);
+        Factorization<Integer, Integer> f3 = new SGDFactorizer<Integer, Integer>(0.02, 0.01, rate, 10, 2L, 3).factorize(K, data);
+
+        assertArrayEquals(values(f1.getUserMatrix()), values(f2.getUserMatrix()), 0.0);
+        assertArrayEquals(values(f1.getItemMatrix()), values(f2.getItemMatrix()), 0.0);
+        assertFalse(Arrays.equals(values(f1.getUserMatrix()), values(f3.getUserMatrix())));
+    }
+
+    /**
+     * Tests that the training error decreases in every epoch of the
+     * stratified schedule, and over the epochs of the Hogwild schedule.
+     */
+    @Test
+    public void testErrorDecreases() {
+        for (int numBlocks : new int[]{3, 0}) {
+            SGDFactorizer<Integer, Integer> factorizer = new SGDFactorizer<>(0.02, 0.01, LearningRateSchedule.constant(0.01), 30, 1L, numBlocks);
+            DoubleArrayList errors = new DoubleArrayList();
+            factorizer.addListener((iter, factorization) -> errors.add(factorizer.error(factorization, data)));
+            factorizer.factorize(K, data);
+
+            assertTrue(errors.getDouble(errors.size() - 1) < errors.getDouble(0) / 2);
+            if (numBlocks > 0) {
+                for (int t = 1; t < errors.size(); t++) {
+                    assertTrue(errors.getDouble(t) < errors.getDouble(t - 1));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.mf.train;
+
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.fast.preference.SimpleFastPreferenceData;
+import es.uam.eps.ir.ranksys.mf.Factorization;
+import es.uam.eps.ir.ranksys.mf.Factorizer;
+import es.uam.eps.ir.ranksys.mf.als.HKVFactorizer;
+import es.uam.eps.ir.ranksys.mf.plsa.PLSAFactorizer;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import org.jooq.lambda.tuple.Tuple3;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import org.junit.Test;
+import org.ranksys.mf.sgd.LearningRateSchedule;
+import org.ranksys.mf.sgd.SGDFactorizer;
+
+/**
+ * Test for TrainingListeners.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class TrainingListenersTest {
+
+    private static final int K = 3;
+    private static final int NUM_USERS = 30;
+    private static final int NUM_ITEMS = 20;
+
+    private final FastPreferenceData<Integer, Integer> data;
+
+    /**
+     * Constructor that initialises random ratings.
+     */
+    public TrainingListenersTest() {
+        Random random = new Random(1);
+        List<Tuple3<Integer, Integer, Double>> ratings = new ArrayList<>();
+        for (int u = 0; u < NUM_USERS; u++) {
+            for (int i = 0; i < NUM_ITEMS; i++) {
+                if (random.nextDouble() < 0.3) {
+                    ratings.add(tuple(u, i, 1.0 + random.nextInt(5)));
+                }
+            }
+        }
+
+        FastUserIndex<Integer> uIndex = SimpleFastUserIndex.load(IntStream.range(0, NUM_USERS).boxed());
+        FastItemIndex<Integer> iIndex = SimpleFastItemIndex.load(IntStream.range(0, NUM_ITEMS).boxed());
+        data = SimpleFastPreferenceData.load(ratings.stream(), uIndex, iIndex);
+    }
+
+    /**
+     * Runs a listener over a scripted sequence of values of its measure,
+     * returning the iteration at which it stops the training, or 0 if it
+     * does not.
+     */
+    private static int stopIteration(TrainingListener<Integer, Integer> listener, double[] script, double... values) {
+        for (int iter = 1; iter <= values.length; iter++) {
+            script[0] = values[iter - 1];
+            if (!listener.iteration(iter, null)) {
+                return iter;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Tests the iteration at which early stopping ends the training, for
+     * measures to minimize and to maximize, with and without a minimum
+     * improvement.
+     */
+    @Test
+    public void testEarlyStopping() {
+        double[] script = new double[1];
+        ToDoubleFunction<Factorization<Integer, Integer>> measure = factorization -> script[0];
+
+        assertEquals(6, stopIteration(TrainingListeners.earlyStopping("loss", measure, true, 2, 0.0), script,
+                5.0, 4.0, 4.5, 3.9, 3.95, 3.92, 3.0));
+        assertEquals(4, stopIteration(TrainingListeners.earlyStopping("loss", measure, true, 1, 0.0), script,
+                5.0, 4.0, 3.0, 3.0, 2.0));
+        assertEquals(3, stopIteration(TrainingListeners.earlyStopping("loss", measure, true, 2, 0.1), script,
+                5.0, 4.95, 4.9, 4.0));
+        assertEquals(0, stopIteration(TrainingListeners.earlyStopping("loss", measure, true, 2, 0.1), script,
+                5.0, 4.95, 4.8, 4.75, 4.6));
+        assertEquals(5, stopIteration(TrainingListeners.earlyStopping("recall", measure, false, 3, 0.0), script,
+                0.1, 0.2, 0.15, 0.2, 0.19, 0.5));
+    }
+
+    /**
+     * Tests that the state of early stopping is reset at the first
+     * iteration, so that a listener can be reused in another training.
+     */
+    @Test
+    public void testEarlyStoppingReset() {
+        double[] script = new double[1];
+        TrainingListener<Integer, Integer> listener = TrainingListeners.earlyStopping("loss", factorization -> script[0], true, 2, 0.0);
+
+        assertEquals(3, stopIteration(listener, script, 1.0, 2.0, 3.0));
+        assertEquals(0, stopIteration(listener, script, 5.0, 4.0, 3.5, 3.4, 3.3));
+    }
+
+    /**
+     * Tests that the sampled loss of all the users is the loss of the
+     * factorizer, and that samples are reproducible.
+     */
+    @Test
+    public void testSampledLoss() {
+        HKVFactorizer<Integer, Integer> factorizer = new HKVFactorizer<>(0.1, x -> 1 + x, 5);
+        Factorization<Integer, Integer> factorization = factorizer.factorize(K, data);
+        double loss = factorizer.error(factorization, data);
+
+        double all = TrainingListeners.sampledLoss(factorizer, data, NUM_USERS, 1L).applyAsDouble(factorization);
+        assertEquals(loss, all, 1e-9 * loss);
+
+        double sample1 = TrainingListeners.sampledLoss(factorizer, data, 10, 1L).applyAsDouble(factorization);
+        double sample2 = TrainingListeners.sampledLoss(factorizer, data, 10, 1L).applyAsDouble(factorization);
+        double sample3 = TrainingListeners.sampledLoss(factorizer, data, 10, 2L).applyAsDouble(factorization);
+        assertEquals(sample1, sample2, 0.0);
+        assertNotEquals(sample1, sample3, 0.0);
+    }
+
+    private void assertStops(Factorizer<Integer, Integer> factorizer) {
+        IntArrayList iters = new IntArrayList();
+        factorizer.addListener((iter, factorization) -> {
+            iters.add(iter);
+            return iter < 3;
+        });
+        factorizer.factorize(K, data);
+
+        assertEquals(Arrays.asList(1, 2, 3), iters);
+    }
+
+    /**
+     * Tests that a listener returning false ends the training of the ALS,
+     * PLSA and SGD factorizers at that iteration.
+     */
+    @Test
+    public void testStop() {
+        assertStops(new HKVFactorizer<>(0.1, x -> 1 + x, 10));
+        assertStops(new PLSAFactorizer<>(10));
+        assertStops(new SGDFactorizer<>(0.02, 0.01, LearningRateSchedule.constant(0.01), 10, 1L));
+    }
+}
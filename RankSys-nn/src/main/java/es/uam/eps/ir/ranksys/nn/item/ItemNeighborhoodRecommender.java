@@ -9,10 +9,16 @@
 package es.uam.eps.ir.ranksys.nn.item;
 
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.fast.preference.IdxPref;
 import es.uam.eps.ir.ranksys.rec.fast.FastRankingRecommender;
 import es.uam.eps.ir.ranksys.nn.item.neighborhood.ItemNeighborhood;
+import es.uam.eps.ir.ranksys.nn.neighborhood.CachedNeighborhood;
+import es.uam.eps.ir.ranksys.nn.neighborhood.Neighborhood;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
-import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import java.util.Iterator;
+import org.ranksys.rec.fast.ScoresAccumulator;
 
 import static java.lang.Math.pow;
 
@@ -49,6 +55,12 @@ public class ItemNeighborhoodRecommender<U, I> extends FastRankingRecommender<U,
      */
     protected final int q;
 
+    /**
+     * Cached neighborhood with pre-computed similarity weights, null if the
+     * neighborhood is not cached.
+     */
+    private final CachedNeighborhood weights;
+
     /**
      * Constructor.
      *
@@ -61,6 +73,9 @@ public class ItemNeighborhoodRecommender<U, I> extends FastRankingRecommender<U,
         this.data = data;
         this.neighborhood = neighborhood;
         this.q = q;
+
+        Neighborhood nb = neighborhood.neighborhood();
+        this.weights = nb instanceof CachedNeighborhood ? ((CachedNeighborhood) nb).pow(q) : null;
     }
 
     /**
@@ -71,16 +86,53 @@ public class ItemNeighborhoodRecommender<U, I> extends FastRankingRecommender<U,
      */
     @Override
     public Int2DoubleMap getScoresMap(int uidx) {
-        Int2DoubleOpenHashMap scoresMap = new Int2DoubleOpenHashMap();
-        scoresMap.defaultReturnValue(0.0);
-        data.getUidxPreferences(uidx)
-                .forEach(jp -> neighborhood.getNeighbors(jp.v1)
-                        .forEach(is -> {
-                            double w = pow(is.v2, q);
-                            scoresMap.addTo(is.v1, w * jp.v2);
-                        }));
+        return getScores(uidx, null).toMap();
+    }
 
-        return scoresMap;
+    /**
+     * Adds the scores of the items for a user, checking the budget of the
+     * accumulator after the neighbors of every item of the user.
+     *
+     * @param uidx index of the user whose scores are predicted
+     * @param w weight of the scores
+     * @param scores accumulator of the scores
+     */
+    @Override
+    public void addScores(int uidx, double w, ScoresAccumulator scores) {
+        if (weights != null) {
+            IntIterator jidxs = data.getUidxIidxs(uidx);
+            DoubleIterator jvs = data.getUidxVs(uidx);
+            while (jidxs.hasNext() && !scores.isExhausted()) {
+                int jidx = jidxs.nextInt();
+                double jv = w * jvs.nextDouble();
+                IntIterator iidxs = weights.getNeighborsIdxs(jidx);
+                DoubleIterator ws = weights.getNeighborsSims(jidx);
+                while (iidxs.hasNext()) {
+                    scores.add(iidxs.nextInt(), ws.nextDouble() * jv);
+                }
+            }
+        } else if (neighborhood.neighborhood().useIteratorsPreferentially()) {
+            Neighborhood nb = neighborhood.neighborhood();
+            IntIterator jidxs = data.getUidxIidxs(uidx);
+            DoubleIterator jvs = data.getUidxVs(uidx);
+            while (jidxs.hasNext() && !scores.isExhausted()) {
+                int jidx = jidxs.nextInt();
+                double jv = w * jvs.nextDouble();
+                IntIterator iidxs = nb.getNeighborsIdxs(jidx);
+                DoubleIterator sims = nb.getNeighborsSims(jidx);
+                while (iidxs.hasNext()) {
+                    scores.add(iidxs.nextInt(), pow(sims.nextDouble(), q) * jv);
+                }
+            }
+        } else {
+            Iterator<? extends IdxPref> jps = data.getUidxPreferences(uidx).iterator();
+            while (jps.hasNext() && !scores.isExhausted()) {
+                IdxPref jp = jps.next();
+                double jv = w * jp.v2;
+                neighborhood.getNeighbors(jp.v1)
+                        .forEach(is -> scores.add(is.v1, pow(is.v2, q) * jv));
+            }
+        }
     }
 
 }
@@ -10,11 +10,14 @@ package es.uam.eps.ir.ranksys.nn.item.neighborhood;
 import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
 import es.uam.eps.ir.ranksys.nn.item.sim.ItemSimilarity;
 import es.uam.eps.ir.ranksys.nn.neighborhood.CachedNeighborhood;
+import es.uam.eps.ir.ranksys.nn.neighborhood.FileNeighborhood;
 import es.uam.eps.ir.ranksys.nn.neighborhood.ThresholdNeighborhood;
 import es.uam.eps.ir.ranksys.nn.neighborhood.TopKNeighborhood;
 import org.jooq.lambda.tuple.Tuple2;
 import org.ranksys.core.util.tuples.Tuple2od;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.stream.Stream;
 
 import static org.ranksys.core.util.tuples.Tuples.tuple;
@@ -61,6 +64,21 @@ public class ItemNeighborhoods {
         return new ItemNeighborhood<>(neighborhood, new CachedNeighborhood(neighborhood.numItems(), neighborhood.neighborhood()));
     }
 
+    /**
+     * File-backed item neighborhood. Calculates the neighborhood with bounded
+     * memory and stores it in a file, from which it is read on demand.
+     *
+     * @param neighborhood item neighborhood
+     * @param file         output file
+     * @param budget       approximate number of bytes of neighbors kept in memory while building
+     * @param <I>          item type
+     * @return item neighborhood
+     * @throws IOException when the file cannot be written
+     */
+    public static <I> ItemNeighborhood<I> file(ItemNeighborhood<I> neighborhood, File file, long budget) throws IOException {
+        return new ItemNeighborhood<>(neighborhood, FileNeighborhood.build(neighborhood.numItems(), neighborhood.neighborhood(), file, budget));
+    }
+
     /**
      * Cached item neighborhood. Caches a pre-calculated set of neighborhoods.
      *
@@ -10,6 +10,7 @@ package es.uam.eps.ir.ranksys.nn.item.sim;
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
 import es.uam.eps.ir.ranksys.fast.preference.TransposedPreferenceData;
 import es.uam.eps.ir.ranksys.nn.sim.Similarities;
+import es.uam.eps.ir.ranksys.nn.sim.SimilarityTransform;
 
 /**
  * Static methods for constructing item similarities.
@@ -79,4 +80,43 @@ public class ItemSimilarities {
         return new ItemSimilarity<>(preferences, Similarities.logLikelihood(new TransposedPreferenceData<>(preferences), dense));
     }
 
+    /**
+     * Vector cosine item similarity with a post-transform by number of
+     * co-occurrences, such as shrinkage or significance weighting.
+     *
+     * @param preferences preference data
+     * @param dense       true for array-based calculations, false to map-based
+     * @param transform   post-transform by number of co-occurrences
+     * @param <I>         item type
+     * @return item similarity
+     */
+    public static <I> ItemSimilarity<I> vectorCosine(FastPreferenceData<?, I> preferences, boolean dense, SimilarityTransform transform) {
+        return new ItemSimilarity<>(preferences, Similarities.vectorCosine(new TransposedPreferenceData<>(preferences), dense, transform));
+    }
+
+    /**
+     * Pearson correlation item similarity.
+     *
+     * @param preferences preference data
+     * @param dense       true for array-based calculations, false to map-based
+     * @param transform   post-transform by number of co-occurrences, null for none
+     * @param <I>         item type
+     * @return item similarity
+     */
+    public static <I> ItemSimilarity<I> pearson(FastPreferenceData<?, I> preferences, boolean dense, SimilarityTransform transform) {
+        return new ItemSimilarity<>(preferences, Similarities.pearson(new TransposedPreferenceData<>(preferences), dense, transform));
+    }
+
+    /**
+     * Adjusted cosine item similarity.
+     *
+     * @param preferences preference data
+     * @param dense       true for array-based calculations, false to map-based
+     * @param transform   post-transform by number of co-occurrences, null for none
+     * @param <I>         item type
+     * @return item similarity
+     */
+    public static <I> ItemSimilarity<I> adjustedCosine(FastPreferenceData<?, I> preferences, boolean dense, SimilarityTransform transform) {
+        return new ItemSimilarity<>(preferences, Similarities.adjustedCosine(new TransposedPreferenceData<>(preferences), dense, transform));
+    }
 }
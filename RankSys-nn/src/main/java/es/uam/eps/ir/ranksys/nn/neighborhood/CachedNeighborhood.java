@@ -9,23 +9,36 @@
 package es.uam.eps.ir.ranksys.nn.neighborhood;
 
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.doubles.DoubleIterators;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntIterators;
 import static java.util.stream.IntStream.range;
 import java.util.stream.Stream;
 import static java.util.stream.Stream.empty;
+import org.ranksys.core.util.iterators.ArrayDoubleIterator;
+import org.ranksys.core.util.iterators.ArrayIntIterator;
 import org.ranksys.core.util.tuples.Tuple2id;
 import org.ranksys.core.util.tuples.Tuple2io;
 import static org.ranksys.core.util.tuples.Tuples.tuple;
 
 /**
- * Cached neighborhood. Stores user neighborhoods.
+ * Cached neighborhood. Stores user neighborhoods in primitive arrays.
  *
  * @author Saúl Vargas (saul.vargas@uam.es)
  */
 public class CachedNeighborhood implements Neighborhood {
 
-    private final IntArrayList[] idxla;
-    private final DoubleArrayList[] simla;
+    /**
+     * Indices of the neighbors, by user/item.
+     */
+    protected final int[][] idxsa;
+
+    /**
+     * Similarities of the neighbors, by user/item.
+     */
+    protected final double[][] simsa;
 
     /**
      * Constructor that calculates and caches neighborhoods.
@@ -35,8 +48,8 @@ public class CachedNeighborhood implements Neighborhood {
      */
     public CachedNeighborhood(int n, Neighborhood neighborhood) {
 
-        this.idxla = new IntArrayList[n];
-        this.simla = new DoubleArrayList[n];
+        this.idxsa = new int[n][];
+        this.simsa = new double[n][];
 
         range(0, n).parallel().forEach(idx -> {
             IntArrayList idxl = new IntArrayList();
@@ -45,8 +58,8 @@ public class CachedNeighborhood implements Neighborhood {
                 idxl.add(is.v1);
                 siml.add(is.v2);
             });
-            idxla[idx] = idxl;
-            simla[idx] = siml;
+            idxsa[idx] = idxl.toIntArray();
+            simsa[idx] = siml.toDoubleArray();
         });
     }
 
@@ -58,8 +71,8 @@ public class CachedNeighborhood implements Neighborhood {
      */
     public CachedNeighborhood(int n, Stream<Tuple2io<Stream<Tuple2id>>> neighborhoods) {
 
-        this.idxla = new IntArrayList[n];
-        this.simla = new DoubleArrayList[n];
+        this.idxsa = new int[n][];
+        this.simsa = new double[n][];
 
         neighborhoods.forEach(un -> {
             int idx = un.v1;
@@ -69,11 +82,49 @@ public class CachedNeighborhood implements Neighborhood {
                 idxl.add(is.v1);
                 siml.add(is.v2);
             });
-            idxla[idx] = idxl;
-            simla[idx] = siml;
+            idxsa[idx] = idxl.toIntArray();
+            simsa[idx] = siml.toDoubleArray();
         });
     }
 
+    /**
+     * Constructor that caches neighborhoods already stored in arrays.
+     *
+     * @param idxsa array of neighbor indices, by user/item
+     * @param simsa array of neighbor similarities, by user/item
+     */
+    protected CachedNeighborhood(int[][] idxsa, double[][] simsa) {
+        this.idxsa = idxsa;
+        this.simsa = simsa;
+    }
+
+    /**
+     * Returns a cached neighborhood whose similarities are raised to the
+     * q-th power. Neighbor indices are shared with this neighborhood.
+     *
+     * @param q exponent of the similarity
+     * @return neighborhood with pre-computed similarity weights
+     */
+    public CachedNeighborhood pow(int q) {
+        if (q == 1) {
+            return this;
+        }
+
+        double[][] weightsa = new double[simsa.length][];
+        range(0, simsa.length).parallel()
+                .filter(idx -> simsa[idx] != null)
+                .forEach(idx -> {
+                    double[] sims = simsa[idx];
+                    double[] weights = new double[sims.length];
+                    for (int i = 0; i < sims.length; i++) {
+                        weights[i] = Math.pow(sims[i], q);
+                    }
+                    weightsa[idx] = weights;
+                });
+
+        return new CachedNeighborhood(idxsa, weightsa);
+    }
+
     /**
      * Returns the neighborhood of a user/index.
      *
@@ -85,12 +136,33 @@ public class CachedNeighborhood implements Neighborhood {
         if (idx < 0) {
             return empty();
         }
-        IntArrayList idxl = idxla[idx];
-        DoubleArrayList siml = simla[idx];
-        if (idxl == null || siml == null) {
+        int[] idxs = idxsa[idx];
+        double[] sims = simsa[idx];
+        if (idxs == null || sims == null) {
             return empty();
         }
-        return range(0, idxl.size()).mapToObj(i -> tuple(idxl.getInt(i), siml.getDouble(i)));
+        return range(0, idxs.length).mapToObj(i -> tuple(idxs[i], sims[i]));
+    }
+
+    @Override
+    public IntIterator getNeighborsIdxs(int idx) {
+        if (idx < 0 || idxsa[idx] == null) {
+            return IntIterators.EMPTY_ITERATOR;
+        }
+        return new ArrayIntIterator(idxsa[idx]);
+    }
+
+    @Override
+    public DoubleIterator getNeighborsSims(int idx) {
+        if (idx < 0 || simsa[idx] == null) {
+            return DoubleIterators.EMPTY_ITERATOR;
+        }
+        return new ArrayDoubleIterator(simsa[idx]);
+    }
+
+    @Override
+    public boolean useIteratorsPreferentially() {
+        return true;
     }
 
 }
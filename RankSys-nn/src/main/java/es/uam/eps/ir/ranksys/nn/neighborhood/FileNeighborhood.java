@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.ranksys.nn.neighborhood;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.doubles.DoubleIterators;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntIterators;
+import org.ranksys.core.util.iterators.ArrayDoubleIterator;
+import org.ranksys.core.util.iterators.ArrayIntIterator;
+import org.ranksys.core.util.tuples.Tuple2id;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.stream.IntStream.range;
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+
+/**
+ * Neighborhood stored in a binary file and read on demand, for populations
+ * whose neighborhoods do not fit in memory.
+ *
+ * The file starts with the number of users/items n and n + 1 offsets; the
+ * neighbors of each user/item follow, first their indices and then their
+ * similarities. Use {@link #build} to compute a neighborhood into such a file
+ * with bounded memory.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class FileNeighborhood implements Neighborhood, Closeable {
+
+    private static final Logger LOG = Logger.getLogger(FileNeighborhood.class.getName());
+
+    private static final int ENTRY_BYTES = Integer.BYTES + Double.BYTES;
+    private static final int ROW_OVERHEAD_BYTES = 64;
+    private static final int BATCH_SIZE = 1024;
+
+    private final FileChannel channel;
+    private final int n;
+    private final ThreadLocal<Row> lastRow = new ThreadLocal<>();
+
+    /**
+     * Constructor. Opens a neighborhood file previously written by
+     * {@link #build}.
+     *
+     * @param file neighborhood file
+     * @throws IOException when the file cannot be opened
+     */
+    public FileNeighborhood(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), READ);
+        this.n = read(0, Integer.BYTES).getInt();
+    }
+
+    /**
+     * Returns the number of users/items in the neighborhood.
+     *
+     * @return number of users/items
+     */
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public Stream<Tuple2id> getNeighbors(int idx) {
+        if (idx < 0) {
+            return Stream.empty();
+        }
+        ByteBuffer row = readRow(idx);
+        int size = row.capacity() / ENTRY_BYTES;
+
+        return range(0, size)
+                .mapToObj(i -> tuple(row.getInt(i * Integer.BYTES), row.getDouble(size * Integer.BYTES + i * Double.BYTES)));
+    }
+
+    @Override
+    public IntIterator getNeighborsIdxs(int idx) {
+        if (idx < 0) {
+            return IntIterators.EMPTY_ITERATOR;
+        }
+        ByteBuffer row = readRow(idx);
+        int[] idxs = new int[row.capacity() / ENTRY_BYTES];
+        row.asIntBuffer().get(idxs);
+
+        return new ArrayIntIterator(idxs);
+    }
+
+    @Override
+    public DoubleIterator getNeighborsSims(int idx) {
+        if (idx < 0) {
+            return DoubleIterators.EMPTY_ITERATOR;
+        }
+        ByteBuffer row = readRow(idx);
+        double[] sims = new double[row.capacity() / ENTRY_BYTES];
+        row.position(sims.length * Integer.BYTES);
+        row.slice().asDoubleBuffer().get(sims);
+
+        return new ArrayDoubleIterator(sims);
+    }
+
+    @Override
+    public boolean useIteratorsPreferentially() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads the row of a user/item. The last row read by every thread is
+     * kept, so that the indices and similarities of a neighborhood, which are
+     * usually requested one after the other, are read only once.
+     */
+    private ByteBuffer readRow(int idx) {
+        Row row = lastRow.get();
+        if (row == null || row.idx != idx) {
+            ByteBuffer offsets = read(Integer.BYTES + (long) idx * Long.BYTES, 2 * Long.BYTES);
+            long from = offsets.getLong();
+            long to = offsets.getLong();
+
+            row = new Row(idx, read(from, (int) (to - from)));
+            lastRow.set(row);
+        }
+
+        return row.buffer.duplicate();
+    }
+
+    private static final class Row {
+
+        private final int idx;
+        private final ByteBuffer buffer;
+
+        Row(int idx, ByteBuffer buffer) {
+            this.idx = idx;
+            this.buffer = buffer;
+        }
+    }
+
+    private ByteBuffer read(long position, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("unexpected end of neighborhood file");
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        buffer.flip();
+
+        return buffer;
+    }
+
+    /**
+     * Computes a neighborhood and stores it in a file. Neighborhoods are
+     * computed in parallel by ranges of users/items, which are spilled to
+     * segment files whenever the buffered neighbors exceed the memory budget.
+     * The budget is checked after every user/item, so a segment exceeds it by
+     * at most one neighborhood, and the ranges shrink as a segment fills up to
+     * limit the neighborhoods that are computed and discarded. The segments
+     * are then merged into the final file and deleted.
+     *
+     * @param n number of users/items
+     * @param neighborhood neighborhood to be computed
+     * @param file output file
+     * @param budget approximate number of bytes of neighbors buffered in memory
+     * @return neighborhood backed by the output file
+     * @throws IOException when the file or the segments cannot be written
+     */
+    public static FileNeighborhood build(int n, Neighborhood neighborhood, File file, long budget) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        List<File> segments = new ArrayList<>();
+
+        try {
+            int from = 0;
+            while (from < n) {
+                File segment = File.createTempFile("neighborhood-", ".seg", dir);
+                segments.add(segment);
+                from = writeSegment(from, n, neighborhood, segment, budget);
+                LOG.log(Level.FINE, String.format("segment %d written up to idx %d", segments.size(), from));
+            }
+
+            merge(n, segments, file);
+        } finally {
+            segments.forEach(File::delete);
+        }
+
+        return new FileNeighborhood(file);
+    }
+
+    private static int writeSegment(int from, int n, Neighborhood neighborhood, File segment, long budget) throws IOException {
+        List<int[]> idxsl = new ArrayList<>();
+        List<double[]> simsl = new ArrayList<>();
+        long bytes = 0;
+
+        int to = from;
+        int batchSize = min(BATCH_SIZE, max(1, ForkJoinPool.getCommonPoolParallelism()));
+        while (to < n && (to == from || bytes < budget)) {
+            int batchFrom = to;
+            int batchTo = min(n, to + batchSize);
+            int[][] idxsa = new int[batchTo - batchFrom][];
+            double[][] simsa = new double[batchTo - batchFrom][];
+
+            range(batchFrom, batchTo).parallel().forEach(idx -> {
+                IntArrayList idxl = new IntArrayList();
+                DoubleArrayList siml = new DoubleArrayList();
+                neighborhood.getNeighbors(idx).forEach(is -> {
+                    idxl.add(is.v1);
+                    siml.add(is.v2);
+                });
+                idxsa[idx - batchFrom] = idxl.toIntArray();
+                simsa[idx - batchFrom] = siml.toDoubleArray();
+            });
+
+            // rows past the budget are left for the next segment
+            for (int i = 0; i < idxsa.length && (to == from || bytes < budget); i++) {
+                idxsl.add(idxsa[i]);
+                simsl.add(simsa[i]);
+                bytes += ROW_OVERHEAD_BYTES + (long) idxsa[i].length * ENTRY_BYTES;
+                to++;
+            }
+
+            // size the next batch to the rows that are expected to fit in the budget
+            double rowBytes = bytes / (double) (to - from);
+            batchSize = (int) min(BATCH_SIZE, max(1, ceil((budget - bytes) / rowBytes)));
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment)))) {
+            out.writeInt(to - from);
+            for (int[] idxs : idxsl) {
+                out.writeInt(idxs.length);
+            }
+            for (int r = 0; r < idxsl.size(); r++) {
+                for (int idx : idxsl.get(r)) {
+                    out.writeInt(idx);
+                }
+                for (double sim : simsl.get(r)) {
+                    out.writeDouble(sim);
+                }
+            }
+        }
+
+        return to;
+    }
+
+    private static void merge(int n, List<File> segments, File file) throws IOException {
+        long offset = Integer.BYTES + (n + 1L) * Long.BYTES;
+
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(n);
+            out.writeLong(offset);
+            for (File segment : segments) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+                    int rows = in.readInt();
+                    for (int r = 0; r < rows; r++) {
+                        offset += (long) in.readInt() * ENTRY_BYTES;
+                        out.writeLong(offset);
+                    }
+                }
+            }
+            out.flush();
+
+            FileChannel target = fos.getChannel();
+            for (File segment : segments) {
+                try (FileChannel source = FileChannel.open(segment.toPath(), READ)) {
+                    ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+                    source.read(header, 0);
+                    int rows = header.getInt(0);
+                    long position = Integer.BYTES + (long) rows * Integer.BYTES;
+                    long size = source.size();
+                    while (position < size) {
+                        position += source.transferTo(position, size - position, target);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -8,7 +8,11 @@
  */
 package es.uam.eps.ir.ranksys.nn.neighborhood;
 
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
 import java.util.stream.Stream;
+import org.ranksys.core.util.iterators.StreamDoubleIterator;
+import org.ranksys.core.util.iterators.StreamIntIterator;
 import org.ranksys.core.util.tuples.Tuple2id;
 
 /**
@@ -26,4 +30,36 @@ public interface Neighborhood {
      * @return stream of user/item-similarity pairs.
      */
     Stream<Tuple2id> getNeighbors(int idx);
+
+    /**
+     * Returns the indices of the neighbors of a user/item. The iteration order
+     * is the same as in {@link #getNeighborsSims(int)}.
+     *
+     * @param idx user/index whose neighborhood is calculated
+     * @return iterator of the indices of the neighbors
+     */
+    default IntIterator getNeighborsIdxs(int idx) {
+        return new StreamIntIterator(getNeighbors(idx).mapToInt(Tuple2id::v1));
+    }
+
+    /**
+     * Returns the similarities of the neighbors of a user/item. The iteration
+     * order is the same as in {@link #getNeighborsIdxs(int)}.
+     *
+     * @param idx user/index whose neighborhood is calculated
+     * @return iterator of the similarities of the neighbors
+     */
+    default DoubleIterator getNeighborsSims(int idx) {
+        return new StreamDoubleIterator(getNeighbors(idx).mapToDouble(Tuple2id::v2));
+    }
+
+    /**
+     * Use methods returning IntIterator or DoubleIterator over streams of
+     * Tuple2id?
+     *
+     * @return yes/no
+     */
+    default boolean useIteratorsPreferentially() {
+        return false;
+    }
 }
@@ -8,6 +8,7 @@
 package es.uam.eps.ir.ranksys.nn.sim;
 
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
+import es.uam.eps.ir.ranksys.nn.sim.VectorSimilarity.Centering;
 
 import static java.lang.Math.pow;
 import static java.lang.Math.sqrt;
@@ -69,6 +70,60 @@ public class Similarities {
         };
     }
 
+    /**
+     * Vector cosine similarity with a post-transform by number of
+     * co-occurrences, such as shrinkage or significance weighting.
+     *
+     * @param preferences preference data
+     * @param dense       true for array-based calculations, false to map-based
+     * @param transform   post-transform by number of co-occurrences
+     * @return similarity
+     */
+    public static VectorSimilarity vectorCosine(FastPreferenceData<?, ?> preferences, boolean dense, SimilarityTransform transform) {
+        return new VectorSimilarity(preferences, dense, Centering.NONE, transform) {
+            @Override
+            protected double sim(double product, double norm2A, double norm2B) {
+                return product / sqrt(norm2A * norm2B);
+            }
+        };
+    }
+
+    /**
+     * Pearson correlation, computed as the cosine of the profiles centered by
+     * their means.
+     *
+     * @param preferences preference data
+     * @param dense       true for array-based calculations, false to map-based
+     * @param transform   post-transform by number of co-occurrences, null for none
+     * @return similarity
+     */
+    public static VectorSimilarity pearson(FastPreferenceData<?, ?> preferences, boolean dense, SimilarityTransform transform) {
+        return new VectorSimilarity(preferences, dense, Centering.PROFILE, transform) {
+            @Override
+            protected double sim(double product, double norm2A, double norm2B) {
+                return product == 0.0 ? 0.0 : product / sqrt(norm2A * norm2B);
+            }
+        };
+    }
+
+    /**
+     * Adjusted cosine similarity, the cosine of the profiles after centering
+     * the preferences by the mean of the other dimension.
+     *
+     * @param preferences preference data
+     * @param dense       true for array-based calculations, false to map-based
+     * @param transform   post-transform by number of co-occurrences, null for none
+     * @return similarity
+     */
+    public static VectorSimilarity adjustedCosine(FastPreferenceData<?, ?> preferences, boolean dense, SimilarityTransform transform) {
+        return new VectorSimilarity(preferences, dense, Centering.OTHER, transform) {
+            @Override
+            protected double sim(double product, double norm2A, double norm2B) {
+                return product == 0.0 ? 0.0 : product / sqrt(norm2A * norm2B);
+            }
+        };
+    }
+
     /**
      * Vector Jaccard similarity.
      *
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.ranksys.nn.sim;
+
+import static java.lang.Math.min;
+
+/**
+ * Post-transform of a similarity value that depends on the number of
+ * co-occurrences (co-rated items or users) of the pair. Co-occurrences are
+ * counted by {@link VectorSimilarity} in the same pass as the inner products.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+@FunctionalInterface
+public interface SimilarityTransform {
+
+    /**
+     * Transforms a similarity value.
+     *
+     * @param sim similarity value
+     * @param n   number of co-occurrences of the pair
+     * @return transformed similarity value
+     */
+    double apply(double sim, int n);
+
+    /**
+     * Applies another transform to the output of this one.
+     *
+     * @param after transform to be applied afterwards
+     * @return composed transform
+     */
+    default SimilarityTransform andThen(SimilarityTransform after) {
+        return (sim, n) -> after.apply(apply(sim, n), n);
+    }
+
+    /**
+     * Shrinkage towards zero of similarities supported by few co-occurrences:
+     * sim * n / (n + beta).
+     *
+     * @param beta shrinkage constant
+     * @return shrinkage transform
+     */
+    static SimilarityTransform shrinkage(double beta) {
+        return (sim, n) -> sim * n / (n + beta);
+    }
+
+    /**
+     * Significance weighting of Herlocker et al.: sim * min(n, gamma) / gamma.
+     *
+     * @param gamma number of co-occurrences above which no penalty is applied
+     * @return significance weighting transform
+     */
+    static SimilarityTransform significanceWeighting(int gamma) {
+        return (sim, n) -> sim * min(n, gamma) / (double) gamma;
+    }
+}
@@ -9,10 +9,11 @@
 package es.uam.eps.ir.ranksys.nn.sim;
 
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
-import es.uam.eps.ir.ranksys.fast.preference.IdxPref;
+import es.uam.eps.ir.ranksys.fast.preference.TransposedPreferenceData;
 import it.unimi.dsi.fastutil.doubles.DoubleIterator;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
 import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntIterator;
 import org.ranksys.core.util.tuples.Tuple2id;
 
@@ -24,11 +25,33 @@ import static org.ranksys.core.util.tuples.Tuples.tuple;
 
 /**
  * Vector similarity. Based on the inner product of item/user profiles as vectors.
+ * Optionally, the preference values can be centered (by user/item mean) and
+ * the similarity values post-transformed by the number of co-occurrences of
+ * each pair, both computed in the same pass as the inner products.
  *
  * @author Saúl Vargas (saul.vargas@uam.es)
  */
 public abstract class VectorSimilarity implements Similarity {
 
+    /**
+     * Centering of the preference values before computing inner products.
+     */
+    public enum Centering {
+
+        /**
+         * Raw preference values.
+         */
+        NONE,
+        /**
+         * Values centered by the mean of the profile they belong to (Pearson).
+         */
+        PROFILE,
+        /**
+         * Values centered by the mean of the other dimension (adjusted cosine).
+         */
+        OTHER
+    }
+
     /**
      * User-item preferences.
      */
@@ -49,6 +72,15 @@ public abstract class VectorSimilarity implements Similarity {
      */
     protected final double[] norm2Array;
 
+    /**
+     * Post-transform of similarities by number of co-occurrences, null if
+     * co-occurrences are not counted.
+     */
+    protected final SimilarityTransform transform;
+
+    private final double[] uMeans;
+    private final double[] iMeans;
+
     /**
      * Constructor. Uses maps for internal calculation.
      *
@@ -56,8 +88,23 @@ public abstract class VectorSimilarity implements Similarity {
      * @param dense true for array-based calculations, false to map-based
      */
     public VectorSimilarity(FastPreferenceData<?, ?> data, boolean dense) {
+        this(data, dense, Centering.NONE, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param data      preference data
+     * @param dense     true for array-based calculations, false to map-based
+     * @param centering centering of the preference values
+     * @param transform post-transform by number of co-occurrences, null for none
+     */
+    public VectorSimilarity(FastPreferenceData<?, ?> data, boolean dense, Centering centering, SimilarityTransform transform) {
         this.data = data;
         this.dense = dense;
+        this.transform = transform;
+        this.uMeans = centering == Centering.PROFILE ? getUMeans(data) : null;
+        this.iMeans = centering == Centering.OTHER ? getUMeans(new TransposedPreferenceData<>(data)) : null;
         if (dense) {
             this.norm2Map = null;
             this.norm2Array = new double[data.numUsers()];
@@ -70,23 +117,97 @@ public abstract class VectorSimilarity implements Similarity {
         }
     }
 
+    private static double[] getUMeans(FastPreferenceData<?, ?> data) {
+        double[] means = new double[data.numUsers()];
+        data.getUidxWithPreferences().forEach(uidx -> {
+            double sum = 0.0;
+            DoubleIterator vs = data.getUidxVs(uidx);
+            while (vs.hasNext()) {
+                sum += vs.nextDouble();
+            }
+            means[uidx] = sum / data.numItems(uidx);
+        });
+
+        return means;
+    }
+
+    private double value(int uidx, int iidx, double v) {
+        if (uMeans != null) {
+            return v - uMeans[uidx];
+        } else if (iMeans != null) {
+            return v - iMeans[iidx];
+        } else {
+            return v;
+        }
+    }
+
+    private double norm2(int idx) {
+        return dense ? norm2Array[idx] : norm2Map.get(idx);
+    }
+
+    private double transformedSim(double product, double norm2A, double norm2B, int n) {
+        double sim = sim(product, norm2A, norm2B);
+
+        return transform == null ? sim : transform.apply(sim, n);
+    }
+
     @Override
     public IntToDoubleFunction similarity(int idx1) {
-        Int2DoubleOpenHashMap map = new Int2DoubleOpenHashMap();
-        data.getUidxPreferences(idx1).forEach(iv -> map.put(iv.v1, iv.v2));
+        double norm2A = norm2(idx1);
 
-        double norm2A = norm2Map.get(idx1);
+        if (dense) {
+            double[] profile = new double[data.numItems()];
+            boolean[] rated = new boolean[data.numItems()];
+            data.getUidxPreferences(idx1).forEach(iv -> {
+                profile[iv.v1] = value(idx1, iv.v1, iv.v2);
+                rated[iv.v1] = true;
+            });
 
-        return idx2 -> {
-            double product = data.getUidxPreferences(idx2)
-                    .mapToDouble(iv -> iv.v2 * map.get(iv.v1))
-                    .sum();
+            // a gather-dot of the row of idx2 with the profile, but rows are
+            // only exposed as iterators: copying them into arrays for the
+            // kernel costs another pass, and is not faster than this loop
+            return idx2 -> {
+                double product = 0.0;
+                int n = 0;
+                IntIterator iidxs = data.getUidxIidxs(idx2);
+                DoubleIterator ivs = data.getUidxVs(idx2);
+                while (iidxs.hasNext()) {
+                    int iidx = iidxs.nextInt();
+                    double iv = ivs.nextDouble();
+                    if (rated[iidx]) {
+                        product += profile[iidx] * value(idx2, iidx, iv);
+                        n++;
+                    }
+                }
+
+                return transformedSim(product, norm2A, norm2(idx2), n);
+            };
+        } else {
+            Int2DoubleOpenHashMap map = new Int2DoubleOpenHashMap();
+            data.getUidxPreferences(idx1).forEach(iv -> map.put(iv.v1, value(idx1, iv.v1, iv.v2)));
+
+            return idx2 -> {
+                double product = 0.0;
+                int n = 0;
+                IntIterator iidxs = data.getUidxIidxs(idx2);
+                DoubleIterator ivs = data.getUidxVs(idx2);
+                while (iidxs.hasNext()) {
+                    int iidx = iidxs.nextInt();
+                    double iv = ivs.nextDouble();
+                    if (map.containsKey(iidx)) {
+                        product += map.get(iidx) * value(idx2, iidx, iv);
+                        n++;
+                    }
+                }
 
-            return sim(product, norm2A, norm2Map.get(idx2));
-        };
+                return transformedSim(product, norm2A, norm2(idx2), n);
+            };
+        }
     }
 
-    private Int2DoubleMap getProductMap(int uidx) {
+    // products with all the other profiles, scattered into a map or an array
+    // row by row of the transposed data; there is no kernel for scatters
+    private Int2DoubleMap getProductMap(int uidx, Int2IntOpenHashMap countMap) {
         Int2DoubleOpenHashMap productMap = new Int2DoubleOpenHashMap();
         productMap.defaultReturnValue(0.0);
 
@@ -95,17 +216,28 @@ public abstract class VectorSimilarity implements Similarity {
             DoubleIterator ivs = data.getUidxVs(uidx);
             while (iidxs.hasNext()) {
                 int iidx = iidxs.nextInt();
-                double iv = ivs.nextDouble();
+                double iv = value(uidx, iidx, ivs.nextDouble());
                 IntIterator vidxs = data.getIidxUidxs(iidx);
                 DoubleIterator vvs = data.getIidxVs(iidx);
                 while (vidxs.hasNext()) {
-                    productMap.addTo(vidxs.nextInt(), iv * vvs.nextDouble());
+                    int vidx = vidxs.nextInt();
+                    productMap.addTo(vidx, iv * value(vidx, iidx, vvs.nextDouble()));
+                    if (countMap != null) {
+                        countMap.addTo(vidx, 1);
+                    }
                 }
             }
         } else {
             data.getUidxPreferences(uidx)
-                    .forEach(ip -> data.getIidxPreferences(ip.v1)
-                            .forEach(up -> productMap.addTo(up.v1, ip.v2 * up.v2)));
+                    .forEach(ip -> {
+                        double iv = value(uidx, ip.v1, ip.v2);
+                        data.getIidxPreferences(ip.v1).forEach(up -> {
+                            productMap.addTo(up.v1, iv * value(up.v1, ip.v1, up.v2));
+                            if (countMap != null) {
+                                countMap.addTo(up.v1, 1);
+                            }
+                        });
+                    });
         }
 
         productMap.remove(uidx);
@@ -113,7 +245,7 @@ public abstract class VectorSimilarity implements Similarity {
         return productMap;
     }
 
-    private double[] getProductArray(int uidx) {
+    private double[] getProductArray(int uidx, int[] countArray) {
         double[] productArray = new double[data.numUsers()];
 
         if (data.useIteratorsPreferentially()) {
@@ -121,36 +253,51 @@ public abstract class VectorSimilarity implements Similarity {
             DoubleIterator ivs = data.getUidxVs(uidx);
             while (iidxs.hasNext()) {
                 int iidx = iidxs.nextInt();
-                double iv = ivs.nextDouble();
+                double iv = value(uidx, iidx, ivs.nextDouble());
                 IntIterator vidxs = data.getIidxUidxs(iidx);
                 DoubleIterator vvs = data.getIidxVs(iidx);
                 while (vidxs.hasNext()) {
-                    productArray[vidxs.nextInt()] += iv * vvs.nextDouble();
+                    int vidx = vidxs.nextInt();
+                    productArray[vidx] += iv * value(vidx, iidx, vvs.nextDouble());
+                    if (countArray != null) {
+                        countArray[vidx]++;
+                    }
                 }
             }
         } else {
             data.getUidxPreferences(uidx)
-                    .forEach(ip -> data.getIidxPreferences(ip.v1)
-                            .forEach(up -> productArray[up.v1] += ip.v2 * up.v2));
+                    .forEach(ip -> {
+                        double iv = value(uidx, ip.v1, ip.v2);
+                        data.getIidxPreferences(ip.v1).forEach(up -> {
+                            productArray[up.v1] += iv * value(up.v1, ip.v1, up.v2);
+                            if (countArray != null) {
+                                countArray[up.v1]++;
+                            }
+                        });
+                    });
         }
 
         productArray[uidx] = 0.0;
+        if (countArray != null) {
+            countArray[uidx] = 0;
+        }
 
         return productArray;
     }
 
     private double getNorm2(int uidx) {
         if (data.useIteratorsPreferentially()) {
+            IntIterator iidxs = data.getUidxIidxs(uidx);
             DoubleIterator ivs = data.getUidxVs(uidx);
             double sum = 0;
-            while (ivs.hasNext()) {
-                double iv = ivs.nextDouble();
+            while (iidxs.hasNext()) {
+                double iv = value(uidx, iidxs.nextInt(), ivs.nextDouble());
                 sum += iv * iv;
             }
             return sum;
         } else {
             return data.getUidxPreferences(uidx)
-                    .mapToDouble(IdxPref::v2)
+                    .mapToDouble(iv -> value(uidx, iv.v1, iv.v2))
                     .map(x -> x * x)
                     .sum();
         }
@@ -161,19 +308,30 @@ public abstract class VectorSimilarity implements Similarity {
         if (dense) {
             double norm2A = norm2Array[idx1];
 
-            double[] productArray = getProductArray(idx1);
-            return range(0, productArray.length)
-                    .filter(idx2 -> productArray[idx2] != 0.0)
-                    .mapToObj(idx2 -> tuple(idx2, sim(productArray[idx2], norm2A, norm2Array[idx2])));
+            if (transform == null) {
+                double[] productArray = getProductArray(idx1, null);
+                return range(0, productArray.length)
+                        .filter(idx2 -> productArray[idx2] != 0.0)
+                        .mapToObj(idx2 -> tuple(idx2, sim(productArray[idx2], norm2A, norm2Array[idx2])));
+            } else {
+                int[] countArray = new int[data.numUsers()];
+                double[] productArray = getProductArray(idx1, countArray);
+                return range(0, productArray.length)
+                        .filter(idx2 -> countArray[idx2] > 0)
+                        .mapToObj(idx2 -> tuple(idx2, transformedSim(productArray[idx2], norm2A, norm2Array[idx2], countArray[idx2])));
+            }
         } else {
             double norm2A = norm2Map.get(idx1);
 
-            return getProductMap(idx1).int2DoubleEntrySet().stream()
+            Int2IntOpenHashMap countMap = transform == null ? null : new Int2IntOpenHashMap();
+            return getProductMap(idx1, countMap).int2DoubleEntrySet().stream()
                     .map(e -> {
                         int idx2 = e.getIntKey();
                         double product = e.getDoubleValue();
                         double norm2B = norm2Map.get(idx2);
-                        return tuple(idx2, sim(product, norm2A, norm2B));
+                        return tuple(idx2, countMap == null
+                                ? sim(product, norm2A, norm2B)
+                                : transformedSim(product, norm2A, norm2B, countMap.get(idx2)));
                     });
         }
     }
@@ -10,9 +10,15 @@ package es.uam.eps.ir.ranksys.nn.user;
 
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
 import es.uam.eps.ir.ranksys.rec.fast.FastRankingRecommender;
+import es.uam.eps.ir.ranksys.nn.neighborhood.CachedNeighborhood;
+import es.uam.eps.ir.ranksys.nn.neighborhood.Neighborhood;
 import es.uam.eps.ir.ranksys.nn.user.neighborhood.UserNeighborhood;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
-import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import java.util.Iterator;
+import org.ranksys.core.util.tuples.Tuple2id;
+import org.ranksys.rec.fast.ScoresAccumulator;
 import static java.lang.Math.pow;
 
 /**
@@ -49,6 +55,12 @@ public class UserNeighborhoodRecommender<U, I> extends FastRankingRecommender<U,
      */
     protected final int q;
 
+    /**
+     * Cached neighborhood with pre-computed similarity weights, null if the
+     * neighborhood is not cached.
+     */
+    private final CachedNeighborhood weights;
+
     /**
      * Constructor.
      *
@@ -61,6 +73,9 @@ public class UserNeighborhoodRecommender<U, I> extends FastRankingRecommender<U,
         this.data = data;
         this.neighborhood = neighborhood;
         this.q = q;
+
+        Neighborhood nb = neighborhood.neighborhood();
+        this.weights = nb instanceof CachedNeighborhood ? ((CachedNeighborhood) nb).pow(q) : null;
     }
 
     /**
@@ -71,16 +86,50 @@ public class UserNeighborhoodRecommender<U, I> extends FastRankingRecommender<U,
      */
     @Override
     public Int2DoubleMap getScoresMap(int uidx) {
-        Int2DoubleOpenHashMap scoresMap = new Int2DoubleOpenHashMap();
-        scoresMap.defaultReturnValue(0.0);
-        neighborhood.getNeighbors(uidx).forEach(vs -> {
-            double w = pow(vs.v2, q);
-            data.getUidxPreferences(vs.v1).forEach(iv -> {
-                double p = w * iv.v2;
-                scoresMap.addTo(iv.v1, p);
-            });
-        });
+        return getScores(uidx, null).toMap();
+    }
+
+    /**
+     * Adds the scores of the items for a user, checking the budget of the
+     * accumulator after every neighbor.
+     *
+     * @param uidx index of the user whose scores are predicted
+     * @param w weight of the scores
+     * @param scores accumulator of the scores
+     */
+    @Override
+    public void addScores(int uidx, double w, ScoresAccumulator scores) {
+        if (weights != null) {
+            IntIterator vidxs = weights.getNeighborsIdxs(uidx);
+            DoubleIterator ws = weights.getNeighborsSims(uidx);
+            while (vidxs.hasNext() && !scores.isExhausted()) {
+                addScores(scores, vidxs.nextInt(), w * ws.nextDouble());
+            }
+        } else if (neighborhood.neighborhood().useIteratorsPreferentially()) {
+            Neighborhood nb = neighborhood.neighborhood();
+            IntIterator vidxs = nb.getNeighborsIdxs(uidx);
+            DoubleIterator sims = nb.getNeighborsSims(uidx);
+            while (vidxs.hasNext() && !scores.isExhausted()) {
+                addScores(scores, vidxs.nextInt(), w * pow(sims.nextDouble(), q));
+            }
+        } else {
+            Iterator<Tuple2id> vs = neighborhood.getNeighbors(uidx).iterator();
+            while (vs.hasNext() && !scores.isExhausted()) {
+                Tuple2id v = vs.next();
+                addScores(scores, v.v1, w * pow(v.v2, q));
+            }
+        }
+    }
 
-        return scoresMap;
+    private void addScores(ScoresAccumulator scores, int vidx, double w) {
+        if (data.useIteratorsPreferentially()) {
+            IntIterator iidxs = data.getUidxIidxs(vidx);
+            DoubleIterator ivs = data.getUidxVs(vidx);
+            while (iidxs.hasNext()) {
+                scores.add(iidxs.nextInt(), w * ivs.nextDouble());
+            }
+        } else {
+            data.getUidxPreferences(vidx).forEach(iv -> scores.add(iv.v1, w * iv.v2));
+        }
     }
 }
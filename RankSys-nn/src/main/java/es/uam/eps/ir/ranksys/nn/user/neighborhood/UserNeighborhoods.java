@@ -9,12 +9,15 @@ package es.uam.eps.ir.ranksys.nn.user.neighborhood;
 
 import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
 import es.uam.eps.ir.ranksys.nn.neighborhood.CachedNeighborhood;
+import es.uam.eps.ir.ranksys.nn.neighborhood.FileNeighborhood;
 import es.uam.eps.ir.ranksys.nn.neighborhood.ThresholdNeighborhood;
 import es.uam.eps.ir.ranksys.nn.neighborhood.TopKNeighborhood;
 import es.uam.eps.ir.ranksys.nn.user.sim.UserSimilarity;
 import org.jooq.lambda.tuple.Tuple2;
 import org.ranksys.core.util.tuples.Tuple2od;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.stream.Stream;
 
 import static org.ranksys.core.util.tuples.Tuples.tuple;
@@ -61,6 +64,21 @@ public class UserNeighborhoods {
         return new UserNeighborhood<>(neighborhood, new CachedNeighborhood(neighborhood.numUsers(), neighborhood.neighborhood()));
     }
 
+    /**
+     * File-backed user neighborhood. Calculates the neighborhood with bounded
+     * memory and stores it in a file, from which it is read on demand.
+     *
+     * @param neighborhood user neighborhood
+     * @param file         output file
+     * @param budget       approximate number of bytes of neighbors kept in memory while building
+     * @param <U>          user type
+     * @return user neighborhood
+     * @throws IOException when the file cannot be written
+     */
+    public static <U> UserNeighborhood<U> file(UserNeighborhood<U> neighborhood, File file, long budget) throws IOException {
+        return new UserNeighborhood<>(neighborhood, FileNeighborhood.build(neighborhood.numUsers(), neighborhood.neighborhood(), file, budget));
+    }
+
     /**
      * Cached user neighborhood. Caches a pre-calculated set of neighborhoods.
      *
@@ -9,6 +9,7 @@ package es.uam.eps.ir.ranksys.nn.user.sim;
 
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
 import es.uam.eps.ir.ranksys.nn.sim.Similarities;
+import es.uam.eps.ir.ranksys.nn.sim.SimilarityTransform;
 
 /**
  * Static methods for constructing user similarities.
@@ -78,4 +79,43 @@ public class UserSimilarities {
         return new UserSimilarity<>(preferences, Similarities.logLikelihood(preferences, dense));
     }
 
+    /**
+     * Vector cosine user similarity with a post-transform by number of
+     * co-occurrences, such as shrinkage or significance weighting.
+     *
+     * @param preferences preference data
+     * @param dense       true for array-based calculations, false to map-based
+     * @param transform   post-transform by number of co-occurrences
+     * @param <U>         user type
+     * @return user similarity
+     */
+    public static <U> UserSimilarity<U> vectorCosine(FastPreferenceData<U, ?> preferences, boolean dense, SimilarityTransform transform) {
+        return new UserSimilarity<>(preferences, Similarities.vectorCosine(preferences, dense, transform));
+    }
+
+    /**
+     * Pearson correlation user similarity.
+     *
+     * @param preferences preference data
+     * @param dense       true for array-based calculations, false to map-based
+     * @param transform   post-transform by number of co-occurrences, null for none
+     * @param <U>         user type
+     * @return user similarity
+     */
+    public static <U> UserSimilarity<U> pearson(FastPreferenceData<U, ?> preferences, boolean dense, SimilarityTransform transform) {
+        return new UserSimilarity<>(preferences, Similarities.pearson(preferences, dense, transform));
+    }
+
+    /**
+     * Adjusted cosine user similarity.
+     *
+     * @param preferences preference data
+     * @param dense       true for array-based calculations, false to map-based
+     * @param transform   post-transform by number of co-occurrences, null for none
+     * @param <U>         user type
+     * @return user similarity
+     */
+    public static <U> UserSimilarity<U> adjustedCosine(FastPreferenceData<U, ?> preferences, boolean dense, SimilarityTransform transform) {
+        return new UserSimilarity<>(preferences, Similarities.adjustedCosine(preferences, dense, transform));
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.ranksys.nn.neighborhood;
+
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import java.io.File;
+import java.io.IOException;
+import static java.util.stream.IntStream.range;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ranksys.core.util.tuples.Tuple2id;
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+
+/**
+ * Test for FileNeighborhood.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class FileNeighborhoodTest {
+
+    private static final int N = 3000;
+
+    /**
+     * Folder for the neighborhood file and its segments.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Neighborhood neighborhood = idx -> range(0, idx % 7)
+            .mapToObj(j -> tuple((idx * 31 + j * 17) % N, 1.0 / (1 + idx + j)));
+
+    private void assertSame(CachedNeighborhood expected, FileNeighborhood actual) {
+        assertEquals(N, actual.size());
+        for (int idx = 0; idx < N; idx++) {
+            int[] idxs = expected.getNeighbors(idx).mapToInt(Tuple2id::v1).toArray();
+            double[] sims = expected.getNeighbors(idx).mapToDouble(Tuple2id::v2).toArray();
+
+            assertArrayEquals(idxs, actual.getNeighbors(idx).mapToInt(Tuple2id::v1).toArray());
+            assertArrayEquals(sims, actual.getNeighbors(idx).mapToDouble(Tuple2id::v2).toArray(), 0.0);
+
+            IntIterator idxsIt = actual.getNeighborsIdxs(idx);
+            DoubleIterator simsIt = actual.getNeighborsSims(idx);
+            for (int j = 0; j < idxs.length; j++) {
+                assertEquals(idxs[j], idxsIt.nextInt());
+                assertEquals(sims[j], simsIt.nextDouble(), 0.0);
+            }
+            assertFalse(idxsIt.hasNext());
+            assertFalse(simsIt.hasNext());
+        }
+    }
+
+    private void assertBuild(long budget) throws IOException {
+        File file = new File(folder.getRoot(), "neighborhood-" + budget + ".bin");
+
+        try (FileNeighborhood built = FileNeighborhood.build(N, neighborhood, file, budget)) {
+            assertSame(new CachedNeighborhood(N, neighborhood), built);
+        }
+        assertEquals(0, folder.getRoot().list((dir, name) -> name.endsWith(".seg")).length);
+    }
+
+    /**
+     * Tests a neighborhood built in a single segment.
+     */
+    @Test
+    public void testSingleSegment() throws IOException {
+        assertBuild(Long.MAX_VALUE);
+    }
+
+    /**
+     * Tests that unknown users/items, with index -1, have no neighbors, and
+     * that the iterators are preferred over the stream.
+     */
+    @Test
+    public void testUnknown() throws IOException {
+        try (FileNeighborhood built = FileNeighborhood.build(N, neighborhood, folder.newFile(), Long.MAX_VALUE)) {
+            assertEquals(0, built.getNeighbors(-1).count());
+            assertFalse(built.getNeighborsIdxs(-1).hasNext());
+            assertFalse(built.getNeighborsSims(-1).hasNext());
+            assertTrue(built.useIteratorsPreferentially());
+        }
+    }
+
+    /**
+     * Tests neighborhoods built in many segments, with budgets that are
+     * exhausted in the middle of a batch, and with a budget that only fits
+     * one neighborhood per segment.
+     */
+    @Test
+    public void testMultipleSegments() throws IOException {
+        assertBuild(4096);
+        assertBuild(100_000);
+        assertBuild(1);
+    }
+}
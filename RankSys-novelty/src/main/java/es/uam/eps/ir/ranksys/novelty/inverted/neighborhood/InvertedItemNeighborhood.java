@@ -23,7 +23,8 @@ import es.uam.eps.ir.ranksys.nn.item.neighborhood.ItemNeighborhood;
 public class InvertedItemNeighborhood<I> extends ItemNeighborhood<I> {
 
     /**
-     * Constructor.
+     * Constructor. If the original neighborhood is cached, both the original
+     * and the inverted neighborhoods share a single similarity pass.
      *
      * @param neighborhood original neighborhood to be inverted
      */
@@ -8,30 +8,35 @@
  */
 package es.uam.eps.ir.ranksys.novelty.inverted.neighborhood;
 
+import es.uam.eps.ir.ranksys.nn.neighborhood.CachedNeighborhood;
 import es.uam.eps.ir.ranksys.nn.neighborhood.Neighborhood;
-import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntIterator;
 
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.function.IntPredicate;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
-import org.ranksys.core.util.tuples.Tuple2id;
-
-import static org.ranksys.core.util.tuples.Tuples.tuple;
+import static it.unimi.dsi.fastutil.Arrays.quickSort;
 
 /**
  * Inverted neighborhood.
  * <p>
  * S. Vargas and P. Castells. Improving sales diversity by recommending
  * users to items.
+ * <p>
+ * The inversion is built in two parallel phases: first the in-degree of every
+ * user/item is counted, then the exactly-sized neighbor arrays are filled by
+ * means of atomic per-row cursors. If the original neighborhood is not already
+ * materialized (see {@link Neighborhood#useIteratorsPreferentially()}), it is
+ * cached during the construction so that similarities are calculated only
+ * once. Passing a {@link CachedNeighborhood} allows to keep both the forward
+ * and the inverted neighborhoods from a single similarity pass.
  *
  * @author Saúl Vargas (saul.vargas@uam.es)
  */
-public class InvertedNeighborhood implements Neighborhood {
-
-    private final IntArrayList[] idxla;
-    private final DoubleArrayList[] simla;
+public class InvertedNeighborhood extends CachedNeighborhood {
 
     /**
      * Constructor.
@@ -42,38 +47,63 @@ public class InvertedNeighborhood implements Neighborhood {
      *                     neighborhood
      */
     public InvertedNeighborhood(int n, Neighborhood neighborhood, IntPredicate filter) {
-        this.idxla = new IntArrayList[n];
-        this.simla = new DoubleArrayList[n];
+        super(new int[n][], new double[n][]);
+
+        Neighborhood forward = neighborhood.useIteratorsPreferentially() ? neighborhood : new CachedNeighborhood(n, neighborhood);
+
+        boolean[] inverted = new boolean[n];
+        IntStream.range(0, n).parallel().forEach(idx -> inverted[idx] = filter.test(idx));
+
+        AtomicIntegerArray counts = new AtomicIntegerArray(n);
+        IntStream.range(0, n).parallel().forEach(idx -> {
+            IntIterator nidxs = forward.getNeighborsIdxs(idx);
+            while (nidxs.hasNext()) {
+                int nidx = nidxs.nextInt();
+                if (inverted[nidx]) {
+                    counts.incrementAndGet(nidx);
+                }
+            }
+        });
 
-        IntStream.range(0, n).parallel().filter(filter).forEach(idx -> {
-            this.idxla[idx] = new IntArrayList();
-            this.simla[idx] = new DoubleArrayList();
+        IntStream.range(0, n).parallel().filter(idx -> inverted[idx]).forEach(idx -> {
+            idxsa[idx] = new int[counts.get(idx)];
+            simsa[idx] = new double[counts.get(idx)];
         });
 
-        IntStream.range(0, n).parallel()
-                .mapToObj(idx -> tuple(idx, neighborhood.getNeighbors(idx)))
-                .forEachOrdered(in -> {
-                    int idx = in.v1;
-                    in.v2.forEach(is -> {
-                        if (this.idxla[is.v1] != null) {
-                            this.idxla[is.v1].add(idx);
-                            this.simla[is.v1].add(is.v2);
-                        }
-                    });
-                });
+        AtomicIntegerArray cursors = new AtomicIntegerArray(n);
+        IntStream.range(0, n).parallel().forEach(idx -> {
+            IntIterator nidxs = forward.getNeighborsIdxs(idx);
+            DoubleIterator nsims = forward.getNeighborsSims(idx);
+            while (nidxs.hasNext()) {
+                int nidx = nidxs.nextInt();
+                double nsim = nsims.nextDouble();
+                if (inverted[nidx]) {
+                    int i = cursors.getAndIncrement(nidx);
+                    idxsa[nidx][i] = idx;
+                    simsa[nidx][i] = nsim;
+                }
+            }
+        });
+
+        IntStream.range(0, n).parallel().filter(idx -> inverted[idx]).forEach(this::sortRow);
     }
 
-    /**
-     * Returns the neighborhood of a user/index.
-     *
-     * @param idx user/index whose neighborhood is calculated
-     * @return stream of user/item-similarity pairs.
-     */
-    @Override
-    public Stream<Tuple2id> getNeighbors(int idx) {
-        IntArrayList idxl = idxla[idx];
-        DoubleArrayList siml = simla[idx];
-        return IntStream.range(0, idxl.size()).mapToObj(i -> tuple(idxl.getInt(i), siml.getDouble(i)));
+    private void sortRow(int idx) {
+        int[] idxs = idxsa[idx];
+        double[] sims = simsa[idx];
+        quickSort(0, idxs.length, new AbstractIntComparator() {
+            @Override
+            public int compare(int i, int j) {
+                return Integer.compare(idxs[i], idxs[j]);
+            }
+        }, (i, j) -> {
+            int ti = idxs[i];
+            idxs[i] = idxs[j];
+            idxs[j] = ti;
+            double ts = sims[i];
+            sims[i] = sims[j];
+            sims[j] = ts;
+        });
     }
 
 }
@@ -25,7 +25,8 @@ import java.util.function.Predicate;
 public class InvertedUserNeighborhood<U> extends UserNeighborhood<U> {
 
     /**
-     * Constructor.
+     * Constructor. If the original neighborhood is cached, both the original
+     * and the inverted neighborhoods share a single similarity pass.
      *
      * @param neighborhood original neighborhood to be inverted
      * @param filter determines which users require inverted neighborhoods
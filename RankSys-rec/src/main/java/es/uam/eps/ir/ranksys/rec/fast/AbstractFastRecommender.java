@@ -133,9 +133,22 @@ public abstract class AbstractFastRecommender<U, I> extends AbstractRecommender<
 
     @Override
     public FastRecommendation getRecommendation(int uidx, IntStream candidates) {
-        IntSet set = new IntOpenHashSet();
-        candidates.forEach(set::add);
+        return getRecommendation(uidx, candidates.toArray(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Candidates ranking. By default, it is a filter recommendation that only
+     * lets the candidates pass.
+     *
+     * @param uidx item of the user to be issued a recommendation
+     * @param candidates indices of the candidate items, without duplicates
+     * @param maxLength maximum length of recommendation
+     * @return a recommendation list
+     */
+    @Override
+    public FastRecommendation getRecommendation(int uidx, int[] candidates, int maxLength) {
+        IntSet set = new IntOpenHashSet(candidates);
 
-        return getRecommendation(uidx, set::contains);
+        return getRecommendation(uidx, maxLength, set::contains);
     }
 }
@@ -13,17 +13,26 @@ import es.uam.eps.ir.ranksys.fast.FastRecommendation;
 import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
 import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.ObjectSet;
 import static java.lang.Math.min;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.IntPredicate;
 import static java.util.stream.Collectors.toList;
 import org.ranksys.core.util.tuples.Tuple2id;
+import org.ranksys.rec.fast.ScoresAccumulator;
+import org.ranksys.rec.fast.ScoringBudget;
 
 /**
  * Recommender for top-n recommendations. It selects and orders the items whose
  * predicted scores are among the n greatest.
  *
+ * The scores of a user are accumulated in a dense or a sparse
+ * {@link ScoresAccumulator}, according to the average fraction of the
+ * catalogue scored in the previous recommendations.
+ *
  * @author Saúl Vargas (saul.vargas@uam.es)
  * 
  * @param <U> type of the users
@@ -31,6 +40,9 @@ import org.ranksys.core.util.tuples.Tuple2id;
  */
 public abstract class FastRankingRecommender<U, I> extends AbstractFastRecommender<U, I> {
 
+    private final AtomicLong numScorings;
+    private final AtomicLong numScored;
+
     /**
      * Constructor.
      *
@@ -39,31 +51,103 @@ public abstract class FastRankingRecommender<U, I> extends AbstractFastRecommend
      */
     public FastRankingRecommender(FastUserIndex<U> uIndex, FastItemIndex<I> iIndex) {
         super(uIndex, iIndex);
+        this.numScorings = new AtomicLong(0L);
+        this.numScored = new AtomicLong(0L);
     }
 
     @Override
     public FastRecommendation getRecommendation(int uidx, int maxLength, IntPredicate filter) {
+        return getRecommendation(uidx, maxLength, filter, null);
+    }
+
+    /**
+     * Returns a recommendation for a user within a scoring budget. If the
+     * budget is exhausted, the recommendation contains the best items among
+     * those scored so far and is flagged as partial.
+     *
+     * Recommenders overriding {@link #addScores(int, double, ScoresAccumulator)}
+     * check the budget between units of work; those that only implement
+     * {@link #getScoresMap(int)} always score all items.
+     *
+     * @param uidx index of the user
+     * @param maxLength maximum length of recommendation
+     * @param filter filter to decide which items might be recommended
+     * @param budget scoring budget, which counts the partial recommendations,
+     * null for no budget
+     * @return a (possibly partial) recommendation list
+     */
+    public FastRecommendation getRecommendation(int uidx, int maxLength, IntPredicate filter, ScoringBudget budget) {
+        if (uidx == -1) {
+            return new FastRecommendation(uidx, new ArrayList<>(0));
+        }
+
+        return getRecommendation(uidx, maxLength, filter, budget, getScores(uidx, budget));
+    }
+
+    /**
+     * Accumulates the scores of the items for a user, in a dense
+     * accumulator if the previous users had, on average, a large enough
+     * fraction of the catalogue scored.
+     *
+     * @param uidx index of the user whose scores are predicted
+     * @param budget scoring budget, null for no budget
+     * @return accumulated scores
+     */
+    protected ScoresAccumulator getScores(int uidx, ScoringBudget budget) {
+        long n = numScorings.get();
+        double fill = n == 0 ? 0.0 : numScored.get() / (n * (double) numItems());
+
+        ScoresAccumulator scores = ScoresAccumulator.forFill(numItems(), fill, budget);
+        addScores(uidx, 1.0, scores);
+
+        numScorings.incrementAndGet();
+        numScored.addAndGet(scores.size());
+
+        return scores;
+    }
+
+    /**
+     * Candidates ranking. Only the scores of the candidates are accumulated,
+     * and all of them are ranked without further filtering.
+     *
+     * @param uidx item of the user to be issued a recommendation
+     * @param candidates indices of the candidate items, without duplicates
+     * @param maxLength maximum length of recommendation
+     * @return a recommendation list
+     */
+    @Override
+    public FastRecommendation getRecommendation(int uidx, int[] candidates, int maxLength) {
         if (uidx == -1) {
             return new FastRecommendation(uidx, new ArrayList<>(0));
         }
 
-        Int2DoubleMap scoresMap = getScoresMap(uidx);
+        ScoresAccumulator scores = ScoresAccumulator.candidates(candidates);
+        addScores(uidx, 1.0, scores);
+
+        return getRecommendation(uidx, maxLength, iidx -> true, null, scores);
+    }
+
+    private FastRecommendation getRecommendation(int uidx, int maxLength, IntPredicate filter, ScoringBudget budget, ScoresAccumulator scores) {
+        boolean partial = scores.isPartial();
 
-        final IntDoubleTopN topN = new IntDoubleTopN(min(maxLength, scoresMap.size()));
-        scoresMap.int2DoubleEntrySet().forEach(e -> {
-            int iidx = e.getIntKey();
-            double score = e.getDoubleValue();
+        final IntDoubleTopN topN = new IntDoubleTopN(min(maxLength, scores.size()));
+        for (int j = 0; j < scores.size(); j++) {
+            int iidx = scores.key(j);
             if (filter.test(iidx)) {
-                topN.add(iidx, score);
+                topN.add(iidx, scores.value(j));
             }
-        });
+        }
 
         topN.sort();
 
         List<Tuple2id> items = topN.reverseStream()
                 .collect(toList());
 
-        return new FastRecommendation(uidx, items);
+        if (budget != null) {
+            budget.record(partial);
+        }
+
+        return new FastRecommendation(uidx, items, partial);
     }
 
     /**
@@ -73,4 +157,25 @@ public abstract class FastRankingRecommender<U, I> extends AbstractFastRecommend
      * @return a map of item-score pairs
      */
     public abstract Int2DoubleMap getScoresMap(int uidx);
+
+    /**
+     * Adds the scores of the items for a user, multiplied by a weight, to an
+     * accumulator. By default the scores are read from
+     * {@link #getScoresMap(int)}; recommenders that compute their scores by
+     * accumulation override it to skip the intermediate map.
+     *
+     * @param uidx index of the user whose scores are predicted
+     * @param w weight of the scores
+     * @param scores accumulator of the scores
+     */
+    public void addScores(int uidx, double w, ScoresAccumulator scores) {
+        ObjectSet<Int2DoubleMap.Entry> entries = getScoresMap(uidx).int2DoubleEntrySet();
+        ObjectIterator<Int2DoubleMap.Entry> it = entries instanceof Int2DoubleMap.FastEntrySet
+                ? ((Int2DoubleMap.FastEntrySet) entries).fastIterator()
+                : entries.iterator();
+        while (it.hasNext()) {
+            Int2DoubleMap.Entry e = it.next();
+            scores.add(e.getIntKey(), w * e.getDoubleValue());
+        }
+    }
 }
@@ -12,6 +12,9 @@ import es.uam.eps.ir.ranksys.rec.Recommender;
 import es.uam.eps.ir.ranksys.fast.FastRecommendation;
 import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
 import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
 import java.util.function.IntPredicate;
 import java.util.stream.IntStream;
 
@@ -75,4 +78,34 @@ public interface FastRecommender<U, I> extends Recommender<U, I>, FastUserIndex<
      */
     FastRecommendation getRecommendation(int uidx, IntStream candidates);
 
+    /**
+     * Candidates ranking. Create a list of up to maxLength items among an
+     * array of candidates, which recommenders score directly rather than
+     * filtering the whole catalogue.
+     *
+     * @param uidx item of the user to be issued a recommendation
+     * @param candidates indices of the candidate items, without duplicates
+     * @param maxLength maximum length of recommendation
+     * @return a recommendation list
+     */
+    FastRecommendation getRecommendation(int uidx, int[] candidates, int maxLength);
+
+    /**
+     * Batch filter recommendation. Generates the recommendations of a block of
+     * users at once, which recommenders may override to share work among
+     * them. By default, one recommendation is generated per user.
+     *
+     * @param uidxs indices of the users to be issued a recommendation
+     * @param maxLength maximum length of recommendation
+     * @param filters (fast) filter of each user index
+     * @return a (fast) recommendation list for each user, in the same order
+     */
+    default List<FastRecommendation> getRecommendations(int[] uidxs, int maxLength, IntFunction<IntPredicate> filters) {
+        List<FastRecommendation> recommendations = new ArrayList<>(uidxs.length);
+        for (int uidx : uidxs) {
+            recommendations.add(getRecommendation(uidx, maxLength, filters.apply(uidx)));
+        }
+
+        return recommendations;
+    }
 }
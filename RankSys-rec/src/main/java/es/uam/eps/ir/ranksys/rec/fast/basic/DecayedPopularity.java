@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.ranksys.rec.fast.basic;
+
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.copySign;
+import static java.lang.Math.exp;
+import static java.lang.Math.log;
+import static java.lang.Math.pow;
+
+/**
+ * Time-decayed popularity of items, updated incrementally with timestamped
+ * events. The popularity of an item at time t is the sum over its events of
+ * w g(t_e - L) / g(t - L), where w and t_e are the weight and time of an event,
+ * L is a landmark time and g a non-decreasing function. Since the numerators do
+ * not depend on t, every event is added once and never revisited.
+ *
+ * G. Cormode, V. Shkapenyuk, D. Srivastava and B. Xu. Forward Decay: A
+ * Practical Time Decay Model for Streaming Systems. ICDE 2009.
+ *
+ * With g(x) = exp(lambda x) the decay is exponential; the landmark is then
+ * moved forward, rescaling the sums, before the weights overflow, and the
+ * popularity is computed in log space, as g(t - L) may still overflow when
+ * queried long after the last event. With g(x) = x^beta the decay is
+ * polynomial, relative to the age of the events since the landmark, and
+ * events prior to the landmark are rejected.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class DecayedPopularity {
+
+    private static final double MAX_EXPONENT = 500.0;
+
+    private final double[] sums;
+    private final double lambda;
+    private final double beta;
+    private long landmark;
+    private long last;
+
+    private DecayedPopularity(int numItems, double lambda, double beta, long landmark) {
+        this.sums = new double[numItems];
+        this.lambda = lambda;
+        this.beta = beta;
+        this.landmark = landmark;
+        this.last = landmark;
+    }
+
+    /**
+     * Creates an exponentially decayed popularity, where the weight of an
+     * event halves every halfLife units of time.
+     *
+     * @param numItems number of items
+     * @param halfLife half-life of the events, in the units of the timestamps
+     * @return exponentially decayed popularity
+     */
+    public static DecayedPopularity exponential(int numItems, double halfLife) {
+        return new DecayedPopularity(numItems, log(2) / halfLife, Double.NaN, Long.MIN_VALUE);
+    }
+
+    /**
+     * Creates a polynomially decayed popularity, where the weight of an event
+     * at time t_e, observed at time t, is ((t_e - L) / (t - L))^beta.
+     *
+     * @param numItems number of items
+     * @param landmark landmark time L, prior to all events
+     * @param beta exponent of the decay, 0 for plain counts
+     * @return polynomially decayed popularity
+     */
+    public static DecayedPopularity polynomial(int numItems, long landmark, double beta) {
+        return new DecayedPopularity(numItems, Double.NaN, beta, landmark);
+    }
+
+    /**
+     * Adds an event of unit weight.
+     *
+     * @param iidx index of the item
+     * @param time time of the event
+     */
+    public void add(int iidx, long time) {
+        add(iidx, time, 1.0);
+    }
+
+    /**
+     * Adds a weighted event. Events may arrive out of order.
+     *
+     * @param iidx index of the item
+     * @param time time of the event
+     * @param w weight of the event
+     * @throws IllegalArgumentException if the decay is polynomial and the
+     * event is prior to the landmark
+     */
+    public void add(int iidx, long time, double w) {
+        if (Double.isNaN(beta)) {
+            if (landmark == Long.MIN_VALUE || lambda * (time - landmark) > MAX_EXPONENT) {
+                rescale(time);
+            }
+        } else {
+            checkLandmark(time);
+        }
+        sums[iidx] += w * g(time);
+        if (time > last) {
+            last = time;
+        }
+    }
+
+    private double g(long time) {
+        if (Double.isNaN(beta)) {
+            return exp(lambda * (time - landmark));
+        } else {
+            return pow(time - landmark, beta);
+        }
+    }
+
+    private void checkLandmark(long time) {
+        if (time < landmark) {
+            throw new IllegalArgumentException("time " + time + " prior to the landmark " + landmark);
+        }
+    }
+
+    private void rescale(long time) {
+        if (landmark != Long.MIN_VALUE) {
+            double f = exp(-lambda * (time - landmark));
+            for (int iidx = 0; iidx < sums.length; iidx++) {
+                sums[iidx] *= f;
+            }
+        }
+        landmark = time;
+    }
+
+    /**
+     * Returns the time of the most recent event.
+     *
+     * @return time of the most recent event
+     */
+    public long getLastTime() {
+        return last;
+    }
+
+    /**
+     * Returns the popularity of the items at a given time.
+     *
+     * @param time time, not prior to the landmark for a polynomial decay
+     * @return popularity of the items, indexed by item
+     * @throws IllegalArgumentException if the decay is polynomial and the
+     * time is prior to the landmark
+     */
+    public double[] getPopularity(long time) {
+        double[] popularity = new double[sums.length];
+        if (Double.isNaN(beta)) {
+            double logNorm = lambda * (time - landmark);
+            for (int iidx = 0; iidx < sums.length; iidx++) {
+                if (sums[iidx] != 0.0) {
+                    popularity[iidx] = copySign(exp(log(abs(sums[iidx])) - logNorm), sums[iidx]);
+                }
+            }
+        } else {
+            checkLandmark(time);
+            double norm = g(time);
+            if (norm > 0) {
+                for (int iidx = 0; iidx < sums.length; iidx++) {
+                    popularity[iidx] = sums[iidx] / norm;
+                }
+            }
+        }
+
+        return popularity;
+    }
+
+    /**
+     * Returns the popularity of the items at the time of the most recent
+     * event.
+     *
+     * @return popularity of the items, indexed by item
+     */
+    public double[] getPopularity() {
+        return getPopularity(last);
+    }
+
+    /**
+     * Creates a recommender of the currently most popular items.
+     *
+     * @param <U> type of the users
+     * @param <I> type of the items
+     * @param uIndex fast user index
+     * @param iIndex fast item index
+     * @return popularity recommender
+     */
+    public <U, I> PopularityRecommender<U, I> recommender(FastUserIndex<U> uIndex, FastItemIndex<I> iIndex) {
+        return new PopularityRecommender<>(uIndex, iIndex, getPopularity());
+    }
+}
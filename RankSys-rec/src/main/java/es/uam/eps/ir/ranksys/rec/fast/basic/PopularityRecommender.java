@@ -10,12 +10,17 @@ package es.uam.eps.ir.ranksys.rec.fast.basic;
 
 import es.uam.eps.ir.ranksys.fast.preference.FastPreferenceData;
 import es.uam.eps.ir.ranksys.fast.FastRecommendation;
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import es.uam.eps.ir.ranksys.fast.utils.topn.IntDoubleTopN;
 import es.uam.eps.ir.ranksys.rec.fast.AbstractFastRecommender;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
 import static java.lang.Math.min;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.IntPredicate;
-import static java.util.stream.Collectors.toList;
-import static java.util.Comparator.comparingDouble;
 import org.ranksys.core.util.tuples.Tuple2id;
 import static org.ranksys.core.util.tuples.Tuples.tuple;
 
@@ -23,6 +28,10 @@ import static org.ranksys.core.util.tuples.Tuples.tuple;
  * Popularity-based recommender. Non-personalized recommender that returns the
  * most popular items according to the preference data provided.
  *
+ * The items are sorted by decreasing popularity once, so that a
+ * recommendation scans them in order and stops as soon as enough items pass
+ * the filter.
+ *
  * @author Saúl Vargas (saul.vargas@uam.es)
  * 
  * @param <U> type of the users
@@ -30,7 +39,9 @@ import static org.ranksys.core.util.tuples.Tuples.tuple;
  */
 public class PopularityRecommender<U, I> extends AbstractFastRecommender<U, I> {
 
-    private final List<Tuple2id> popList;
+    private final int[] iidxs;
+    private final Tuple2id[] popList;
+    private final int[] ranks;
 
     /**
      * Constructor.
@@ -38,22 +49,85 @@ public class PopularityRecommender<U, I> extends AbstractFastRecommender<U, I> {
      * @param data preference data
      */
     public PopularityRecommender(FastPreferenceData<U, I> data) {
-        super(data, data);
+        this(data, data, data.getAllIidx()
+                .mapToDouble(iidx -> data.numUsers(iidx))
+                .toArray());
+    }
 
-        popList = data.getIidxWithPreferences()
-                .mapToObj(iidx -> tuple(iidx, (double) data.numUsers(iidx)))
-                .sorted(comparingDouble(Tuple2id::v2).reversed())
-                .collect(toList());
+    /**
+     * Constructor for arbitrary popularity scores, such as time-decayed
+     * counts. Only items with positive popularity are recommended.
+     *
+     * @param uIndex fast user index
+     * @param iIndex fast item index
+     * @param popularity popularity of the items, indexed by item
+     */
+    public PopularityRecommender(FastUserIndex<U> uIndex, FastItemIndex<I> iIndex, double[] popularity) {
+        super(uIndex, iIndex);
+
+        int n = 0;
+        int[] sorted = new int[popularity.length];
+        for (int iidx = 0; iidx < popularity.length; iidx++) {
+            if (popularity[iidx] > 0) {
+                sorted[n++] = iidx;
+            }
+        }
+        IntArrays.quickSort(sorted, 0, n, new AbstractIntComparator() {
+            @Override
+            public int compare(int iidx1, int iidx2) {
+                int c = Double.compare(popularity[iidx2], popularity[iidx1]);
+                return c != 0 ? c : Integer.compare(iidx1, iidx2);
+            }
+        });
+
+        this.iidxs = new int[n];
+        this.popList = new Tuple2id[n];
+        this.ranks = new int[popularity.length];
+        Arrays.fill(ranks, -1);
+        for (int j = 0; j < n; j++) {
+            iidxs[j] = sorted[j];
+            popList[j] = tuple(sorted[j], popularity[sorted[j]]);
+            ranks[sorted[j]] = j;
+        }
     }
 
     @Override
     public FastRecommendation getRecommendation(int uidx, int maxLength, IntPredicate filter) {
-        
-        List<Tuple2id> items = popList.stream()
-                .filter(is -> filter.test(is.v1))
-                .limit(min(maxLength, popList.size()))
-                .collect(toList());
-        
+        int n = min(maxLength, iidxs.length);
+        List<Tuple2id> items = new ArrayList<>(n);
+        for (int j = 0; j < iidxs.length && items.size() < n; j++) {
+            if (filter.test(iidxs[j])) {
+                items.add(popList[j]);
+            }
+        }
+
+        return new FastRecommendation(uidx, items);
+    }
+
+    /**
+     * Candidates ranking. The candidates are sorted by their precomputed
+     * positions in the popularity ranking.
+     *
+     * @param uidx item of the user to be issued a recommendation
+     * @param candidates indices of the candidate items, without duplicates
+     * @param maxLength maximum length of recommendation
+     * @return a recommendation list
+     */
+    @Override
+    public FastRecommendation getRecommendation(int uidx, int[] candidates, int maxLength) {
+        IntDoubleTopN topN = new IntDoubleTopN(min(maxLength, candidates.length));
+        for (int iidx : candidates) {
+            if (iidx >= 0 && iidx < ranks.length && ranks[iidx] >= 0) {
+                topN.add(ranks[iidx], -ranks[iidx]);
+            }
+        }
+        topN.sort();
+
+        List<Tuple2id> items = new ArrayList<>(topN.size());
+        for (int k = topN.size() - 1; k >= 0; k--) {
+            items.add(popList[topN.getKey(k)]);
+        }
+
         return new FastRecommendation(uidx, items);
     }
 }
@@ -21,7 +21,6 @@ import java.util.List;
 import java.util.Random;
 import java.util.function.IntPredicate;
 import static java.util.stream.Collectors.toList;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.ranksys.core.util.tuples.Tuple2od;
 import static java.util.Collections.shuffle;
@@ -89,9 +88,17 @@ public class RandomRecommender<U, I> extends AbstractFastRecommender<U, I> {
     }
 
     @Override
-    public FastRecommendation getRecommendation(int uidx, IntStream candidates) {
-        List<Tuple2id> items = candidates.mapToObj(iidx -> tuple(iidx, NaN)).collect(toList());
-        Collections.shuffle(items, random);
+    public FastRecommendation getRecommendation(int uidx, int[] candidates, int maxLength) {
+        int[] shuffled = candidates.clone();
+        int N = min(maxLength, shuffled.length);
+        List<Tuple2id> items = new ArrayList<>(N);
+        for (int i = 0; i < N; i++) {
+            int j = i + random.nextInt(shuffled.length - i);
+            int iidx = shuffled[j];
+            shuffled[j] = shuffled[i];
+            shuffled[i] = iidx;
+            items.add(tuple(iidx, NaN));
+        }
 
         return new FastRecommendation(uidx, items);
     }
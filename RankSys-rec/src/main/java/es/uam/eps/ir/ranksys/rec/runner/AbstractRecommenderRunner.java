@@ -15,6 +15,7 @@ import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -49,4 +50,19 @@ public abstract class AbstractRecommenderRunner<U, I> implements RecommenderRunn
     protected void run(Function<U, Recommendation<U, I>> recProvider, Consumer<Recommendation<U, I>> consumer) {
         users.parallelStream().forEach(user -> consumer.accept(recProvider.apply(user)));
     }
+
+    /**
+     * Prints the recommendations, which are generated for blocks of users.
+     *
+     * @param blockSize maximum number of users in a block
+     * @param recProvider function that provides the recommendations of a block of users by calling a recommender
+     * @param consumer recommendation consumer
+     */
+    protected void run(int blockSize, Function<List<U>, List<Recommendation<U, I>>> recProvider, Consumer<Recommendation<U, I>> consumer) {
+        int numBlocks = (users.size() + blockSize - 1) / blockSize;
+        IntStream.range(0, numBlocks).parallel().forEach(b -> {
+            List<U> block = users.subList(b * blockSize, Math.min(users.size(), (b + 1) * blockSize));
+            recProvider.apply(block).forEach(consumer);
+        });
+    }
 }
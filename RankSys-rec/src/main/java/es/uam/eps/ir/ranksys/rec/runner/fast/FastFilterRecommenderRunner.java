@@ -36,6 +36,7 @@ public class FastFilterRecommenderRunner<U, I> extends AbstractRecommenderRunner
     private final FastItemIndex<I> itemIndex;
     private final Function<U, IntPredicate> userFilter;
     private final int maxLength;
+    private final int blockSize;
 
     /**
      * Constructor.
@@ -47,22 +48,49 @@ public class FastFilterRecommenderRunner<U, I> extends AbstractRecommenderRunner
      * @param maxLength maximum length of the recommendation lists, 0 for no limit
      */
     public FastFilterRecommenderRunner(FastUserIndex<U> userIndex, FastItemIndex<I> itemIndex, Stream<U> users, Function<U, IntPredicate> userFilter, int maxLength) {
+        this(userIndex, itemIndex, users, userFilter, maxLength, 1);
+    }
+
+    /**
+     * Constructor. Users are fed to the recommender in blocks, see
+     * {@link FastRecommender#getRecommendations(int[], int, java.util.function.IntFunction)}.
+     *
+     * @param userIndex fast user index
+     * @param itemIndex fast item index
+     * @param users target users
+     * @param userFilter item filter provider for each user
+     * @param maxLength maximum length of the recommendation lists, 0 for no limit
+     * @param blockSize number of users per block, 1 for one user at a time
+     */
+    public FastFilterRecommenderRunner(FastUserIndex<U> userIndex, FastItemIndex<I> itemIndex, Stream<U> users, Function<U, IntPredicate> userFilter, int maxLength, int blockSize) {
         super(users);
         this.userIndex = userIndex;
         this.itemIndex = itemIndex;
         this.userFilter = userFilter;
         this.maxLength = maxLength;
+        this.blockSize = blockSize;
     }
 
     @Override
     public void run(Recommender<U, I> recommender, Consumer<Recommendation<U, I>> consumer) {
-        run(user -> {
-            FastRecommendation rec = ((FastRecommender<U, I>) recommender).getRecommendation(userIndex.user2uidx(user), maxLength, userFilter.apply(user));
-            
-            return new Recommendation<>(userIndex.uidx2user(rec.getUidx()), rec.getIidxs().stream()
-                    .map(itemIndex::iidx2item)
-                    .collect(toList()));
-        }, consumer);
+        FastRecommender<U, I> fastRecommender = (FastRecommender<U, I>) recommender;
+
+        if (blockSize > 1) {
+            run(blockSize, block -> {
+                int[] uidxs = block.stream().mapToInt(userIndex::user2uidx).toArray();
+                return fastRecommender.getRecommendations(uidxs, maxLength, uidx -> userFilter.apply(userIndex.uidx2user(uidx))).stream()
+                        .map(this::toRecommendation)
+                        .collect(toList());
+            }, consumer);
+        } else {
+            run(user -> toRecommendation(fastRecommender.getRecommendation(userIndex.user2uidx(user), maxLength, userFilter.apply(user))), consumer);
+        }
+    }
+
+    private Recommendation<U, I> toRecommendation(FastRecommendation rec) {
+        return new Recommendation<>(userIndex.uidx2user(rec.getUidx()), rec.getIidxs().stream()
+                .map(itemIndex::iidx2item)
+                .collect(toList()));
     }
 
 }
@@ -1,4 +1,4 @@
-/* 
+/*
  * Copyright (C) 2015 RankSys http://ranksys.org
  *
  * This Source Code Form is subject to the terms of the Mozilla Public
@@ -8,15 +8,28 @@
 package org.ranksys.rec.fast;
 
 import es.uam.eps.ir.ranksys.rec.fast.FastRankingRecommender;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
 import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
-import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.sqrt;
 
 /**
  * Ensemble of recommenders, performs a linear combination of the scores
  * given by several recommenders.
- * 
- * TODO: add normalization of scores prior to aggregation.
+ *
+ * Without normalization the members add their weighted scores directly into
+ * a single accumulator. Otherwise, or when the members are evaluated in
+ * parallel, every member fills its own accumulator, which is normalized and
+ * then added to the combination.
+ *
+ * The members share the budget of the accumulator: in the first case the
+ * members following the exhaustion of the budget are skipped, in the second
+ * one each member counts its own work against the budget.
  *
  * @author Saúl Vargas (Saul.Vargas@glasgow.ac.uk)
  * @param <U> user type
@@ -24,22 +37,70 @@ import java.util.Map.Entry;
  */
 public class FastEnsembleRecommender<U, I> extends FastRankingRecommender<U, I> {
 
-    private final Iterable<Entry<FastRankingRecommender<U, I>, Double>> recommenders;
+    /**
+     * Normalization of the scores of each member prior to aggregation.
+     */
+    public enum Normalization {
+
+        /**
+         * Scores are combined as they are.
+         */
+        NONE,
+        /**
+         * Scores are linearly mapped to [0, 1].
+         */
+        MIN_MAX,
+        /**
+         * Scores are standardized to zero mean and unit variance.
+         */
+        Z_SCORE,
+        /**
+         * Scores are replaced by 1 - r / n, where r is the 0-based rank of
+         * the item among the n items scored by the member.
+         */
+        RANK
+    }
+
+    private final List<FastRankingRecommender<U, I>> members;
+    private final double[] weights;
+    private final Normalization normalization;
+    private final boolean parallel;
 
     /**
-     * Constructor.
+     * Constructor. Scores are not normalized and members are evaluated
+     * sequentially.
      *
      * @param recommenders a sequence of recommender-weight pairs
      */
     public FastEnsembleRecommender(Iterable<Entry<FastRankingRecommender<U, I>, Double>> recommenders) {
+        this(recommenders, Normalization.NONE, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param recommenders a sequence of recommender-weight pairs
+     * @param normalization normalization of the scores of the members
+     * @param parallel whether to evaluate the members for a user in parallel
+     */
+    public FastEnsembleRecommender(Iterable<Entry<FastRankingRecommender<U, I>, Double>> recommenders, Normalization normalization, boolean parallel) {
         super(getFirst(recommenders), getFirst(recommenders));
-        this.recommenders = recommenders;
+
+        this.members = new ArrayList<>();
+        List<Double> ws = new ArrayList<>();
+        for (Entry<FastRankingRecommender<U, I>, Double> rw : recommenders) {
+            members.add(rw.getKey());
+            ws.add(rw.getValue());
+        }
+        this.weights = ws.stream().mapToDouble(w -> w).toArray();
+        this.normalization = normalization;
+        this.parallel = parallel;
     }
 
     private static <U, I> FastRankingRecommender<U, I> getFirst(Iterable<Entry<FastRankingRecommender<U, I>, Double>> recommenders) {
         return recommenders.iterator().next().getKey();
     }
-    
+
     /**
      * Returns a map of item-score pairs.
      *
@@ -48,14 +109,93 @@ public class FastEnsembleRecommender<U, I> extends FastRankingRecommender<U, I>
      */
     @Override
     public Int2DoubleMap getScoresMap(int uidx) {
-        Int2DoubleOpenHashMap scoresMap = new Int2DoubleOpenHashMap();
-        for (Entry<FastRankingRecommender<U, I>, Double> rw : recommenders) {
-            double w = rw.getValue();
-            rw.getKey().getScoresMap(uidx).int2DoubleEntrySet()
-                    .forEach(e -> scoresMap.addTo(e.getIntKey(), w * e.getDoubleValue()));
+        return getScores(uidx, null).toMap();
+    }
+
+    @Override
+    public void addScores(int uidx, double w, ScoresAccumulator scores) {
+        if (normalization == Normalization.NONE && !parallel) {
+            for (int m = 0; m < members.size() && !scores.isExhausted(); m++) {
+                members.get(m).addScores(uidx, w * weights[m], scores);
+            }
+            return;
+        }
+
+        ScoresAccumulator[] memberScores = new ScoresAccumulator[members.size()];
+        IntStream ms = IntStream.range(0, members.size());
+        if (parallel) {
+            ms = ms.parallel();
+        }
+        ms.forEach(m -> {
+            ScoresAccumulator s = scores.fork();
+            members.get(m).addScores(uidx, 1.0, s);
+            normalize(s);
+            memberScores[m] = s;
+        });
+
+        for (int m = 0; m < members.size(); m++) {
+            scores.addAll(memberScores[m], w * weights[m]);
+        }
+    }
+
+    private void normalize(ScoresAccumulator s) {
+        int n = s.size();
+        if (n == 0) {
+            return;
+        }
+
+        switch (normalization) {
+            case MIN_MAX: {
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j < n; j++) {
+                    min = Math.min(min, s.value(j));
+                    max = Math.max(max, s.value(j));
+                }
+                double range = max - min;
+                for (int j = 0; j < n; j++) {
+                    s.setValue(j, range > 0 ? (s.value(j) - min) / range : 1.0);
+                }
+                break;
+            }
+            case Z_SCORE: {
+                double sum = 0.0;
+                double sum2 = 0.0;
+                for (int j = 0; j < n; j++) {
+                    sum += s.value(j);
+                    sum2 += s.value(j) * s.value(j);
+                }
+                double mean = sum / n;
+                double sd = sqrt(Math.max(0.0, sum2 / n - mean * mean));
+                for (int j = 0; j < n; j++) {
+                    s.setValue(j, sd > 0 ? (s.value(j) - mean) / sd : 0.0);
+                }
+                break;
+            }
+            case RANK: {
+                int[] order = new int[n];
+                for (int j = 0; j < n; j++) {
+                    order[j] = j;
+                }
+                IntArrays.quickSort(order, new AbstractIntComparator() {
+                    @Override
+                    public int compare(int j1, int j2) {
+                        return Double.compare(s.value(j2), s.value(j1));
+                    }
+                });
+                double[] ranked = new double[n];
+                for (int r = 0; r < n; r++) {
+                    ranked[order[r]] = 1.0 - r / (double) n;
+                }
+                for (int j = 0; j < n; j++) {
+                    s.setValue(j, ranked[j]);
+                }
+                break;
+            }
+            case NONE:
+            default:
+                break;
         }
-        
-        return scoresMap;
     }
 
 }
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.rec.fast;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Accumulator of item scores. The scores of the items are stored
+ * contiguously in the order in which the items were first added, so that
+ * they can be iterated and transformed without boxing. Items are mapped to
+ * their positions either by an array over the whole catalogue (dense), the
+ * fastest option when many items are scored, or by a hash map (sparse). A
+ * sparse accumulator may also be restricted to a set of candidate items,
+ * ignoring the scores of the rest.
+ *
+ * An accumulator may be given a {@link ScoringBudget}, whose time starts to
+ * run when the accumulator is created. Recommenders check
+ * {@link #isExhausted()} between units of work and stop scoring when it
+ * returns true, so that the accumulated scores are partial.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class ScoresAccumulator {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final double DENSE_FILL = 0.05;
+    private static final int NONE = -1;
+    private static final int EXCLUDED = -2;
+
+    private final int[] slots;
+    private final Int2IntOpenHashMap slotMap;
+    private final int[] candidates;
+    private final ScoringBudget budget;
+    private final long start;
+    private int[] keys;
+    private double[] values;
+    private int size;
+    private long work;
+    private boolean exhausted;
+
+    private ScoresAccumulator(int[] slots, Int2IntOpenHashMap slotMap, int[] candidates, ScoringBudget budget, long start) {
+        this.slots = slots;
+        this.slotMap = slotMap;
+        this.candidates = candidates;
+        this.budget = budget;
+        this.start = start;
+        this.keys = new int[INITIAL_CAPACITY];
+        this.values = new double[INITIAL_CAPACITY];
+        this.size = 0;
+        this.work = 0;
+        this.exhausted = false;
+    }
+
+    /**
+     * Creates a dense accumulator.
+     *
+     * @param numItems number of items of the catalogue
+     * @return dense accumulator
+     */
+    public static ScoresAccumulator dense(int numItems) {
+        return dense(numItems, null);
+    }
+
+    /**
+     * Creates a dense accumulator with a budget.
+     *
+     * @param numItems number of items of the catalogue
+     * @param budget scoring budget, null for no budget
+     * @return dense accumulator
+     */
+    public static ScoresAccumulator dense(int numItems, ScoringBudget budget) {
+        int[] slots = new int[numItems];
+        Arrays.fill(slots, NONE);
+        return new ScoresAccumulator(slots, null, null, budget, System.nanoTime());
+    }
+
+    /**
+     * Creates a dense or a sparse accumulator, depending on the expected
+     * fraction of the catalogue to be scored. Dense accumulators pay for
+     * an array over the whole catalogue, but add scores faster than sparse
+     * ones; they are chosen from a fill of 5% upwards.
+     *
+     * @param numItems number of items of the catalogue
+     * @param expectedFill expected fraction of the items to be scored
+     * @param budget scoring budget, null for no budget
+     * @return dense or sparse accumulator
+     */
+    public static ScoresAccumulator forFill(int numItems, double expectedFill, ScoringBudget budget) {
+        return expectedFill >= DENSE_FILL ? dense(numItems, budget) : sparse(budget);
+    }
+
+    /**
+     * Creates a sparse accumulator.
+     *
+     * @return sparse accumulator
+     */
+    public static ScoresAccumulator sparse() {
+        return sparse(null);
+    }
+
+    /**
+     * Creates a sparse accumulator with a budget.
+     *
+     * @param budget scoring budget, null for no budget
+     * @return sparse accumulator
+     */
+    public static ScoresAccumulator sparse(ScoringBudget budget) {
+        return new ScoresAccumulator(null, sparseSlots(null), null, budget, System.nanoTime());
+    }
+
+    /**
+     * Creates a sparse accumulator restricted to some candidate items.
+     *
+     * @param candidates indices of the candidate items
+     * @return sparse accumulator of the scores of the candidates
+     */
+    public static ScoresAccumulator candidates(int[] candidates) {
+        return candidates(candidates, null);
+    }
+
+    /**
+     * Creates a sparse accumulator restricted to some candidate items, with a
+     * budget.
+     *
+     * @param candidates indices of the candidate items
+     * @param budget scoring budget, null for no budget
+     * @return sparse accumulator of the scores of the candidates
+     */
+    public static ScoresAccumulator candidates(int[] candidates, ScoringBudget budget) {
+        return new ScoresAccumulator(null, sparseSlots(candidates), candidates, budget, System.nanoTime());
+    }
+
+    /**
+     * Creates a sparse accumulator with the same candidates and budget,
+     * whose time is already running, and an independent work count. The
+     * exhaustion of the budget in the new accumulator is passed on by
+     * {@link #addAll(ScoresAccumulator, double)}.
+     *
+     * @return sparse accumulator
+     */
+    public ScoresAccumulator fork() {
+        return new ScoresAccumulator(null, sparseSlots(candidates), candidates, budget, start);
+    }
+
+    private static Int2IntOpenHashMap sparseSlots(int[] candidates) {
+        if (candidates == null) {
+            Int2IntOpenHashMap slotMap = new Int2IntOpenHashMap();
+            slotMap.defaultReturnValue(NONE);
+            return slotMap;
+        }
+
+        Int2IntOpenHashMap slotMap = new Int2IntOpenHashMap(candidates.length);
+        slotMap.defaultReturnValue(EXCLUDED);
+        for (int iidx : candidates) {
+            slotMap.put(iidx, NONE);
+        }
+        return slotMap;
+    }
+
+    /**
+     * Adds a value to the score of an item, starting from zero. It has no
+     * effect if the item is not a candidate.
+     *
+     * @param iidx index of the item
+     * @param v value
+     */
+    public void add(int iidx, double v) {
+        work++;
+        int j = slots != null ? slots[iidx] : slotMap.get(iidx);
+        if (j == EXCLUDED) {
+            return;
+        }
+        if (j == NONE) {
+            j = size++;
+            if (j == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * j);
+                values = Arrays.copyOf(values, 2 * j);
+            }
+            keys[j] = iidx;
+            values[j] = 0.0;
+            if (slots != null) {
+                slots[iidx] = j;
+            } else {
+                slotMap.put(iidx, j);
+            }
+        }
+        values[j] += v;
+    }
+
+    /**
+     * Adds the scores of another accumulator multiplied by a weight.
+     *
+     * @param other accumulator
+     * @param w weight
+     */
+    public void addAll(ScoresAccumulator other, double w) {
+        for (int j = 0; j < other.size; j++) {
+            add(other.keys[j], w * other.values[j]);
+        }
+        exhausted |= other.exhausted;
+    }
+
+    /**
+     * Checks whether the budget of the accumulator has been exhausted. Once
+     * it returns true, it always does.
+     *
+     * @return true if the budget is exhausted, false otherwise or if there is
+     * no budget
+     */
+    public boolean isExhausted() {
+        if (budget == null || exhausted) {
+            return exhausted;
+        }
+        if (work >= budget.getMaxWork() || System.nanoTime() - start >= budget.getMaxNanos()) {
+            exhausted = true;
+        }
+
+        return exhausted;
+    }
+
+    /**
+     * Returns whether the budget was found to be exhausted, that is, whether
+     * the accumulated scores are partial.
+     *
+     * @return true if the scores are partial, false otherwise
+     */
+    public boolean isPartial() {
+        return exhausted;
+    }
+
+    /**
+     * Returns whether the items are mapped by an array over the whole
+     * catalogue.
+     *
+     * @return true if dense, false if sparse
+     */
+    public boolean isDense() {
+        return slots != null;
+    }
+
+    /**
+     * Returns the number of scored items.
+     *
+     * @return number of scored items
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the j-th scored item.
+     *
+     * @param j position, from 0 to size() - 1
+     * @return index of the item
+     */
+    public int key(int j) {
+        return keys[j];
+    }
+
+    /**
+     * Returns the score of the j-th scored item.
+     *
+     * @param j position, from 0 to size() - 1
+     * @return score
+     */
+    public double value(int j) {
+        return values[j];
+    }
+
+    /**
+     * Replaces the score of the j-th scored item.
+     *
+     * @param j position, from 0 to size() - 1
+     * @param v new score
+     */
+    public void setValue(int j, double v) {
+        values[j] = v;
+    }
+
+    /**
+     * Returns a map of item-score pairs with the accumulated scores.
+     *
+     * @return a map of item-score pairs
+     */
+    public Int2DoubleMap toMap() {
+        Int2DoubleOpenHashMap map = new Int2DoubleOpenHashMap(size);
+        map.defaultReturnValue(0.0);
+        for (int j = 0; j < size; j++) {
+            map.put(keys[j], values[j]);
+        }
+
+        return map;
+    }
+}
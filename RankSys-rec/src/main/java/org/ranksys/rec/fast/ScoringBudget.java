@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.rec.fast;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Budget of the scoring of a recommendation: a maximum time and a maximum
+ * work, measured as the number of scores added to an accumulator. When a
+ * budget is exhausted, recommenders stop scoring and recommend the best items
+ * found so far, flagging the recommendation as partial.
+ *
+ * A budget is shared by all the recommendations that use it, counting how
+ * many of them were partial.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class ScoringBudget {
+
+    private final long maxNanos;
+    private final long maxWork;
+    private final AtomicLong numRecommendations;
+    private final AtomicLong numPartial;
+
+    /**
+     * Constructor.
+     *
+     * @param maxNanos maximum time in nanoseconds, Long.MAX_VALUE for no limit
+     * @param maxWork maximum number of added scores, Long.MAX_VALUE for no
+     * limit
+     */
+    public ScoringBudget(long maxNanos, long maxWork) {
+        this.maxNanos = maxNanos;
+        this.maxWork = maxWork;
+        this.numRecommendations = new AtomicLong(0L);
+        this.numPartial = new AtomicLong(0L);
+    }
+
+    /**
+     * Creates a time budget.
+     *
+     * @param time maximum time
+     * @param unit unit of the time
+     * @return time budget
+     */
+    public static ScoringBudget time(long time, TimeUnit unit) {
+        return new ScoringBudget(unit.toNanos(time), Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a work budget.
+     *
+     * @param maxWork maximum number of added scores
+     * @return work budget
+     */
+    public static ScoringBudget work(long maxWork) {
+        return new ScoringBudget(Long.MAX_VALUE, maxWork);
+    }
+
+    /**
+     * Returns the maximum time in nanoseconds.
+     *
+     * @return maximum time in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Returns the maximum number of added scores.
+     *
+     * @return maximum number of added scores
+     */
+    public long getMaxWork() {
+        return maxWork;
+    }
+
+    /**
+     * Records the outcome of a recommendation.
+     *
+     * @param partial whether the budget was exhausted
+     */
+    public void record(boolean partial) {
+        numRecommendations.incrementAndGet();
+        if (partial) {
+            numPartial.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of recommendations issued with this budget.
+     *
+     * @return number of recommendations
+     */
+    public long getNumRecommendations() {
+        return numRecommendations.get();
+    }
+
+    /**
+     * Returns the number of recommendations that exhausted this budget.
+     *
+     * @return number of partial recommendations
+     */
+    public long getNumPartial() {
+        return numPartial.get();
+    }
+
+    /**
+     * Returns the fraction of recommendations that exhausted this budget.
+     *
+     * @return fraction of partial recommendations, 0 if there were none
+     */
+    public double getPartialRate() {
+        long n = numRecommendations.get();
+        return n == 0 ? 0.0 : numPartial.get() / (double) n;
+    }
+
+    /**
+     * Resets the counts of recommendations.
+     */
+    public void reset() {
+        numRecommendations.set(0);
+        numPartial.set(0);
+    }
+}
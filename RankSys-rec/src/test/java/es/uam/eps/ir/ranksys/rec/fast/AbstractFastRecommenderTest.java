@@ -180,6 +180,23 @@ public class AbstractFastRecommenderTest {
         assertEquals(expected, result);
     }
 
+    /**
+     * Test the fast array of candidates recommendation method.
+     */
+    @Test
+    public void testFastArrayCandidates() {
+        int[] candidates = {5, 1, 3};
+        
+        List<Tuple2id> result = recommender.getRecommendation(0, candidates, 2).getIidxs();
+
+        List<Tuple2id> expected = Arrays.asList(
+                tuple(1, 5.0),
+                tuple(3, 3.0)
+        );
+        
+        assertEquals(expected, result);
+    }
+
     /**
      * Test the standard filter recommendation method.
      */
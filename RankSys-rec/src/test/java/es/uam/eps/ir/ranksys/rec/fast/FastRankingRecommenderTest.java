@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.ranksys.rec.fast;
+
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.ranksys.core.util.tuples.Tuple2id;
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+
+/**
+ * Test for FastRankingRecommender.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class FastRankingRecommenderTest {
+
+    private static final int NUM_USERS = 10;
+    private static final int NUM_ITEMS = 100;
+
+    private final FastRankingRecommender<Integer, Integer> recommender;
+
+    /**
+     * Constructor, with a mock recommender that scores a random half of the
+     * items of every user.
+     */
+    public FastRankingRecommenderTest() {
+        recommender = new FastRankingRecommender<Integer, Integer>(
+                SimpleFastUserIndex.load(IntStream.range(0, NUM_USERS).boxed()),
+                SimpleFastItemIndex.load(IntStream.range(0, NUM_ITEMS).boxed())) {
+            @Override
+            public Int2DoubleMap getScoresMap(int uidx) {
+                Random random = new Random(uidx);
+                Int2DoubleOpenHashMap scoresMap = new Int2DoubleOpenHashMap();
+                for (int iidx = 0; iidx < NUM_ITEMS; iidx++) {
+                    if (random.nextBoolean()) {
+                        scoresMap.put(iidx, random.nextInt(20));
+                    }
+                }
+                return scoresMap;
+            }
+        };
+    }
+
+    /**
+     * Tests that the candidates ranking matches the filter recommendation,
+     * with ties and candidates that are not scored.
+     */
+    @Test
+    public void testCandidates() {
+        Random random = new Random(1);
+        for (int uidx = 0; uidx < NUM_USERS; uidx++) {
+            int[] candidates = IntStream.range(0, NUM_ITEMS)
+                    .filter(iidx -> random.nextDouble() < 0.3)
+                    .toArray();
+            IntSet set = new IntOpenHashSet(candidates);
+
+            for (int maxLength : new int[]{1, 5, candidates.length, Integer.MAX_VALUE}) {
+                List<Tuple2id> expected = recommender.getRecommendation(uidx, maxLength, set::contains).getIidxs();
+                List<Tuple2id> result = recommender.getRecommendation(uidx, candidates, maxLength).getIidxs();
+
+                assertEquals(expected, result);
+            }
+        }
+    }
+
+    /**
+     * Tests the candidates ranking of a few candidates, in any order.
+     */
+    @Test
+    public void testCandidatesOrder() {
+        FastRankingRecommender<Integer, Integer> fixed = new FastRankingRecommender<Integer, Integer>(
+                SimpleFastUserIndex.load(IntStream.range(0, 1).boxed()),
+                SimpleFastItemIndex.load(IntStream.range(0, 6).boxed())) {
+            @Override
+            public Int2DoubleMap getScoresMap(int uidx) {
+                Int2DoubleOpenHashMap scoresMap = new Int2DoubleOpenHashMap();
+                scoresMap.put(0, 1.0);
+                scoresMap.put(1, 3.0);
+                scoresMap.put(2, 2.0);
+                scoresMap.put(4, 5.0);
+                return scoresMap;
+            }
+        };
+
+        List<Tuple2id> result = fixed.getRecommendation(0, new int[]{5, 2, 0, 1}, 2).getIidxs();
+
+        assertEquals(Arrays.asList(tuple(1, 3.0), tuple(2, 2.0)), result);
+    }
+
+    /**
+     * Tests the candidates ranking of an unknown user.
+     */
+    @Test
+    public void testCandidatesUnknownUser() {
+        assertEquals(0, recommender.getRecommendation(-1, new int[]{0, 1, 2}, 10).getIidxs().size());
+    }
+}
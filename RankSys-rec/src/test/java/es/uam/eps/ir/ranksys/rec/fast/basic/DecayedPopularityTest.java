@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.ranksys.rec.fast.basic;
+
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import static java.lang.Math.pow;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.ranksys.core.util.tuples.Tuple2id;
+
+/**
+ * Test for DecayedPopularity.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class DecayedPopularityTest {
+
+    private static final int NUM_ITEMS = 5;
+
+    private static void assertRelative(double[] expected, double[] result) {
+        assertEquals(expected.length, result.length);
+        for (int iidx = 0; iidx < expected.length; iidx++) {
+            assertTrue(Arrays.toString(result), Double.isFinite(result[iidx]));
+            assertEquals(expected[iidx], result[iidx], 1e-9 * expected[iidx]);
+        }
+    }
+
+    /**
+     * Tests the exponential decay against the weights of the events
+     * computed one by one, with events out of order and spanning several
+     * moves of the landmark.
+     */
+    @Test
+    public void testExponential() {
+        double halfLife = 10.0;
+        DecayedPopularity popularity = DecayedPopularity.exponential(NUM_ITEMS, halfLife);
+
+        Random random = new Random(1);
+        long[] times = new long[200];
+        int[] iidxs = new int[times.length];
+        double[] ws = new double[times.length];
+        for (int j = 0; j < times.length; j++) {
+            times[j] = 100 * j + random.nextInt(200);
+            iidxs[j] = random.nextInt(NUM_ITEMS);
+            ws[j] = 1.0 + random.nextInt(3);
+            popularity.add(iidxs[j], times[j], ws[j]);
+        }
+
+        long last = popularity.getLastTime();
+        assertEquals(Arrays.stream(times).max().getAsLong(), last);
+        for (long time : new long[]{last, last + 50, last + 8000}) {
+            double[] expected = new double[NUM_ITEMS];
+            for (int j = 0; j < times.length; j++) {
+                expected[iidxs[j]] += ws[j] * pow(2, -(time - times[j]) / halfLife);
+            }
+            assertRelative(expected, popularity.getPopularity(time));
+        }
+    }
+
+    /**
+     * Tests the exponential decay queried more than 709 / lambda after the
+     * landmark, where exp(lambda (t - L)) overflows.
+     */
+    @Test
+    public void testExponentialLongAfter() {
+        DecayedPopularity popularity = DecayedPopularity.exponential(2, 1.0);
+        popularity.add(0, 0);
+        popularity.add(1, 700);
+
+        double[] expected = {pow(2, -1030), pow(2, -330)};
+        assertRelative(expected, popularity.getPopularity(1030));
+    }
+
+    /**
+     * Tests the polynomial decay against the weights of the events computed
+     * one by one.
+     */
+    @Test
+    public void testPolynomial() {
+        long landmark = 1000;
+        double beta = 2.0;
+        DecayedPopularity popularity = DecayedPopularity.polynomial(NUM_ITEMS, landmark, beta);
+
+        Random random = new Random(1);
+        long[] times = new long[100];
+        int[] iidxs = new int[times.length];
+        for (int j = 0; j < times.length; j++) {
+            times[j] = landmark + random.nextInt(10000);
+            iidxs[j] = random.nextInt(NUM_ITEMS);
+            popularity.add(iidxs[j], times[j]);
+        }
+
+        long last = popularity.getLastTime();
+        for (long time : new long[]{last, last + 5000}) {
+            double[] expected = new double[NUM_ITEMS];
+            for (int j = 0; j < times.length; j++) {
+                expected[iidxs[j]] += pow((times[j] - landmark) / (double) (time - landmark), beta);
+            }
+            assertRelative(expected, popularity.getPopularity(time));
+        }
+    }
+
+    /**
+     * Tests that the polynomial decay rejects events prior to the landmark,
+     * whose weights would be NaN.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testPolynomialPriorToLandmark() {
+        DecayedPopularity popularity = DecayedPopularity.polynomial(NUM_ITEMS, 1000, 0.5);
+        popularity.add(0, 999);
+    }
+
+    /**
+     * Tests that the recommender ranks the items by decayed popularity,
+     * leaving out items without events.
+     */
+    @Test
+    public void testRecommender() {
+        DecayedPopularity popularity = DecayedPopularity.exponential(NUM_ITEMS, 10.0);
+        popularity.add(0, 0);
+        popularity.add(0, 1);
+        popularity.add(2, 50);
+        popularity.add(3, 40);
+        popularity.add(4, 40);
+
+        PopularityRecommender<Integer, Integer> recommender = popularity.recommender(
+                SimpleFastUserIndex.load(IntStream.range(0, 1).boxed()),
+                SimpleFastItemIndex.load(IntStream.range(0, NUM_ITEMS).boxed()));
+        List<Tuple2id> result = recommender.getRecommendation(0, Integer.MAX_VALUE, iidx -> true).getIidxs();
+
+        assertEquals(4, result.size());
+        assertEquals(2, result.get(0).v1);
+        assertEquals(3, result.get(1).v1);
+        assertEquals(4, result.get(2).v1);
+        assertEquals(0, result.get(3).v1);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.ranksys.rec.fast.basic;
+
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.ranksys.core.util.tuples.Tuple2id;
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+
+/**
+ * Test for PopularityRecommender.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class PopularityRecommenderTest {
+
+    private static final int NUM_ITEMS = 100;
+
+    private final FastUserIndex<Integer> uIndex;
+    private final FastItemIndex<Integer> iIndex;
+
+    /**
+     * Constructor.
+     */
+    public PopularityRecommenderTest() {
+        uIndex = SimpleFastUserIndex.load(IntStream.range(0, 1).boxed());
+        iIndex = SimpleFastItemIndex.load(IntStream.range(0, NUM_ITEMS).boxed());
+    }
+
+    /**
+     * Tests that the candidates ranking matches the filter recommendation,
+     * with ties and items without popularity.
+     */
+    @Test
+    public void testCandidates() {
+        Random random = new Random(1);
+        double[] popularity = new double[NUM_ITEMS];
+        for (int iidx = 0; iidx < NUM_ITEMS; iidx++) {
+            popularity[iidx] = random.nextInt(10);
+        }
+        PopularityRecommender<Integer, Integer> recommender = new PopularityRecommender<>(uIndex, iIndex, popularity);
+
+        for (int n = 0; n < 10; n++) {
+            int[] candidates = IntStream.range(0, NUM_ITEMS)
+                    .filter(iidx -> random.nextDouble() < 0.3)
+                    .toArray();
+            IntSet set = new IntOpenHashSet(candidates);
+
+            for (int maxLength : new int[]{1, 5, candidates.length, Integer.MAX_VALUE}) {
+                List<Tuple2id> expected = recommender.getRecommendation(0, maxLength, set::contains).getIidxs();
+                List<Tuple2id> result = recommender.getRecommendation(0, candidates, maxLength).getIidxs();
+
+                assertEquals(expected, result);
+            }
+        }
+    }
+
+    /**
+     * Tests the candidates ranking of a few candidates, in any order.
+     */
+    @Test
+    public void testCandidatesOrder() {
+        double[] popularity = {1.0, 3.0, 3.0, 0.0, 5.0, 2.0};
+        PopularityRecommender<Integer, Integer> recommender = new PopularityRecommender<>(uIndex,
+                SimpleFastItemIndex.load(IntStream.range(0, popularity.length).boxed()), popularity);
+
+        List<Tuple2id> result = recommender.getRecommendation(0, new int[]{3, 5, 2, 0, 1}, 3).getIidxs();
+
+        assertEquals(Arrays.asList(tuple(1, 3.0), tuple(2, 3.0), tuple(5, 2.0)), result);
+    }
+
+    /**
+     * Tests that the filter recommendation breaks ties by item index and
+     * leaves out items without popularity.
+     */
+    @Test
+    public void testTies() {
+        double[] popularity = {1.0, 3.0, 0.0, 3.0, 2.0, 3.0};
+        PopularityRecommender<Integer, Integer> recommender = new PopularityRecommender<>(uIndex,
+                SimpleFastItemIndex.load(IntStream.range(0, popularity.length).boxed()), popularity);
+
+        List<Tuple2id> result = recommender.getRecommendation(0, Integer.MAX_VALUE, iidx -> true).getIidxs();
+
+        assertEquals(Arrays.asList(tuple(1, 3.0), tuple(3, 3.0), tuple(5, 3.0), tuple(4, 2.0), tuple(0, 1.0)), result);
+    }
+
+    /**
+     * Tests that the filter recommendation stops scanning the ranking as
+     * soon as enough items pass the filter.
+     */
+    @Test
+    public void testEarlyExit() {
+        double[] popularity = new double[NUM_ITEMS];
+        for (int iidx = 0; iidx < NUM_ITEMS; iidx++) {
+            popularity[iidx] = NUM_ITEMS - iidx;
+        }
+        PopularityRecommender<Integer, Integer> recommender = new PopularityRecommender<>(uIndex, iIndex, popularity);
+
+        int[] tested = new int[1];
+        List<Tuple2id> result = recommender.getRecommendation(0, 3, iidx -> {
+            tested[0]++;
+            return iidx % 2 == 1;
+        }).getIidxs();
+
+        assertEquals(Arrays.asList(tuple(1, 99.0), tuple(3, 97.0), tuple(5, 95.0)), result);
+        assertEquals(6, tested[0]);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package es.uam.eps.ir.ranksys.rec.fast.basic;
+
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import java.util.List;
+import java.util.stream.IntStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.ranksys.core.util.tuples.Tuple2id;
+
+/**
+ * Test for RandomRecommender.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class RandomRecommenderTest {
+
+    private static final int NUM_ITEMS = 100;
+
+    private final RandomRecommender<Integer, Integer> recommender;
+
+    /**
+     * Constructor.
+     */
+    public RandomRecommenderTest() {
+        recommender = new RandomRecommender<>(
+                SimpleFastUserIndex.load(IntStream.range(0, 1).boxed()),
+                SimpleFastItemIndex.load(IntStream.range(0, NUM_ITEMS).boxed()));
+    }
+
+    /**
+     * Tests that the candidates ranking returns distinct candidates, as
+     * many as the maximum length allows, without modifying the candidates.
+     */
+    @Test
+    public void testCandidates() {
+        int[] candidates = {7, 3, 42, 99, 0, 15, 8};
+        int[] copy = candidates.clone();
+        IntSet set = new IntOpenHashSet(candidates);
+
+        for (int maxLength : new int[]{1, 3, candidates.length, Integer.MAX_VALUE}) {
+            List<Tuple2id> result = recommender.getRecommendation(0, candidates, maxLength).getIidxs();
+
+            assertEquals(Math.min(maxLength, candidates.length), result.size());
+            IntSet seen = new IntOpenHashSet();
+            for (Tuple2id iv : result) {
+                assertTrue(set.contains(iv.v1));
+                assertTrue(seen.add(iv.v1));
+                assertTrue(Double.isNaN(iv.v2));
+            }
+        }
+
+        assertArrayEquals(copy, candidates);
+    }
+
+    /**
+     * Tests that every candidate can be ranked first.
+     */
+    @Test
+    public void testCandidatesShuffled() {
+        int[] candidates = {7, 3, 42, 99};
+        IntSet first = new IntOpenHashSet();
+        for (int n = 0; n < 1000; n++) {
+            first.add(recommender.getRecommendation(0, candidates, 1).getIidxs().get(0).v1);
+        }
+
+        assertEquals(candidates.length, first.size());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.rec.fast;
+
+import es.uam.eps.ir.ranksys.fast.FastRecommendation;
+import es.uam.eps.ir.ranksys.fast.index.FastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.FastUserIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastItemIndex;
+import es.uam.eps.ir.ranksys.fast.index.SimpleFastUserIndex;
+import es.uam.eps.ir.ranksys.rec.fast.FastRankingRecommender;
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.ranksys.core.util.tuples.Tuple2id;
+import static org.ranksys.core.util.tuples.Tuples.tuple;
+import org.ranksys.rec.fast.FastEnsembleRecommender.Normalization;
+
+/**
+ * Test for FastEnsembleRecommender
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class FastEnsembleRecommenderTest {
+
+    private final List<Entry<FastRankingRecommender<String, String>, Double>> recommenders;
+
+    /**
+     * Constructor that initialises two mock recommenders.
+     */
+    public FastEnsembleRecommenderTest() {
+        FastUserIndex<String> uIndex = new SimpleFastUserIndex<String>() {
+            {
+                add("0");
+            }
+        };
+        FastItemIndex<String> iIndex = new SimpleFastItemIndex<String>() {
+            {
+                add("0");
+                add("1");
+                add("2");
+                add("3");
+            }
+        };
+
+        recommenders = Arrays.asList(
+                new SimpleEntry<>(mock(uIndex, iIndex, new int[]{0, 1, 2}, new double[]{3.0, 2.0, 1.0}), 1.0),
+                new SimpleEntry<>(mock(uIndex, iIndex, new int[]{1, 3}, new double[]{40.0, 20.0}), 0.5)
+        );
+    }
+
+    private static FastRankingRecommender<String, String> mock(FastUserIndex<String> uIndex, FastItemIndex<String> iIndex, int[] iidxs, double[] scores) {
+        return new FastRankingRecommender<String, String>(uIndex, iIndex) {
+            @Override
+            public Int2DoubleMap getScoresMap(int uidx) {
+                Int2DoubleOpenHashMap scoresMap = new Int2DoubleOpenHashMap();
+                for (int j = 0; j < iidxs.length; j++) {
+                    scoresMap.put(iidxs[j], scores[j]);
+                }
+                return scoresMap;
+            }
+        };
+    }
+
+    /**
+     * Tests the linear combination of raw scores, sequential and parallel.
+     */
+    @Test
+    public void testNone() {
+        List<Tuple2id> expected = Arrays.asList(
+                tuple(1, 22.0),
+                tuple(3, 10.0),
+                tuple(0, 3.0),
+                tuple(2, 1.0)
+        );
+
+        assertEquals(expected, new FastEnsembleRecommender<>(recommenders).getRecommendation(0).getIidxs());
+        assertEquals(expected, new FastEnsembleRecommender<>(recommenders, Normalization.NONE, true).getRecommendation(0).getIidxs());
+    }
+
+    /**
+     * Tests that the recommendations do not change when, after the first
+     * user has filled the catalogue, the scores are accumulated densely.
+     */
+    @Test
+    public void testDenseFill() {
+        FastEnsembleRecommender<String, String> recommender = new FastEnsembleRecommender<>(recommenders);
+
+        FastRecommendation sparse = recommender.getRecommendation(0, 10, iidx -> true, null);
+        FastRecommendation dense = recommender.getRecommendation(0, 10, iidx -> true, null);
+
+        assertEquals(sparse.getIidxs(), dense.getIidxs());
+        assertEquals(4, recommender.getScoresMap(0).size());
+    }
+
+    /**
+     * Tests the combination of min-max normalised scores.
+     */
+    @Test
+    public void testMinMax() {
+        Int2DoubleMap result = new FastEnsembleRecommender<>(recommenders, Normalization.MIN_MAX, false).getScoresMap(0);
+
+        assertEquals(4, result.size());
+        assertEquals(1.0, result.get(0), 1e-9);
+        assertEquals(1.0, result.get(1), 1e-9);
+        assertEquals(0.0, result.get(2), 1e-9);
+        assertEquals(0.0, result.get(3), 1e-9);
+    }
+
+    /**
+     * Tests the combination of rank-normalised scores.
+     */
+    @Test
+    public void testRank() {
+        List<Tuple2id> expected = Arrays.asList(
+                tuple(1, 2.0 / 3 + 0.5),
+                tuple(0, 1.0),
+                tuple(2, 1.0 / 3),
+                tuple(3, 0.25)
+        );
+
+        List<Tuple2id> result = new FastEnsembleRecommender<>(recommenders, Normalization.RANK, true).getRecommendation(0).getIidxs();
+
+        assertEquals(expected.size(), result.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).v1, result.get(i).v1);
+            assertEquals(expected.get(i).v2, result.get(i).v2, 1e-9);
+        }
+    }
+
+    /**
+     * Tests that the members after the exhaustion of a work budget are
+     * skipped and the recommendation is flagged as partial.
+     */
+    @Test
+    public void testBudget() {
+        FastEnsembleRecommender<String, String> recommender = new FastEnsembleRecommender<>(recommenders);
+        ScoringBudget budget = ScoringBudget.work(3);
+
+        FastRecommendation partial = recommender.getRecommendation(0, 10, iidx -> true, budget);
+        FastRecommendation complete = recommender.getRecommendation(0, 10, iidx -> true, ScoringBudget.work(5));
+
+        assertTrue(partial.isPartial());
+        assertEquals(Arrays.asList(tuple(0, 3.0), tuple(1, 2.0), tuple(2, 1.0)), partial.getIidxs());
+        assertFalse(complete.isPartial());
+        assertEquals(4, complete.getIidxs().size());
+        assertEquals(1, budget.getNumRecommendations());
+        assertEquals(1, budget.getNumPartial());
+    }
+}
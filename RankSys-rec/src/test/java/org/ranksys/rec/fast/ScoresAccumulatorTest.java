@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 RankSys http://ranksys.org
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.ranksys.rec.fast;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test for ScoresAccumulator.
+ *
+ * @author Saúl Vargas (Saul@VargasSandoval.es)
+ */
+public class ScoresAccumulatorTest {
+
+    private static void fill(ScoresAccumulator scores) {
+        scores.add(3, 1.0);
+        scores.add(0, 2.0);
+        scores.add(3, 0.5);
+        scores.add(7, -1.0);
+    }
+
+    /**
+     * Tests that dense and sparse accumulators keep the same scores in the
+     * same order.
+     */
+    @Test
+    public void testDenseSparse() {
+        ScoresAccumulator dense = ScoresAccumulator.dense(10);
+        ScoresAccumulator sparse = ScoresAccumulator.sparse();
+        fill(dense);
+        fill(sparse);
+
+        assertEquals(3, dense.size());
+        assertEquals(sparse.size(), dense.size());
+        for (int j = 0; j < dense.size(); j++) {
+            assertEquals(sparse.key(j), dense.key(j));
+            assertEquals(sparse.value(j), dense.value(j), 0.0);
+        }
+        assertEquals(3, dense.key(0));
+        assertEquals(1.5, dense.value(0), 0.0);
+
+        dense.addAll(sparse, 2.0);
+        Int2DoubleMap map = dense.toMap();
+        assertEquals(4.5, map.get(3), 0.0);
+        assertEquals(6.0, map.get(0), 0.0);
+        assertEquals(-3.0, map.get(7), 0.0);
+    }
+
+    /**
+     * Tests that the scores of the items that are not candidates are
+     * ignored.
+     */
+    @Test
+    public void testCandidates() {
+        ScoresAccumulator scores = ScoresAccumulator.candidates(new int[]{0, 7, 9});
+        fill(scores);
+
+        assertEquals(2, scores.size());
+        assertEquals(0, scores.key(0));
+        assertEquals(7, scores.key(1));
+        assertEquals(0.0, scores.toMap().get(3), 0.0);
+    }
+
+    /**
+     * Tests the choice between dense and sparse accumulators by the
+     * expected fill of the catalogue.
+     */
+    @Test
+    public void testForFill() {
+        assertFalse(ScoresAccumulator.forFill(1000, 0.0, null).isDense());
+        assertFalse(ScoresAccumulator.forFill(1000, 0.01, null).isDense());
+        assertTrue(ScoresAccumulator.forFill(1000, 0.5, null).isDense());
+        assertFalse(ScoresAccumulator.dense(1000).fork().isDense());
+    }
+}